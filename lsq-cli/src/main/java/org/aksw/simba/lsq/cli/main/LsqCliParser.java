@@ -62,6 +62,32 @@ public class LsqCliParser {
     
     protected OptionSpec<Long> queryDelayInMsOs;
     protected OptionSpec<String> httpUserAgentOs;
+    protected OptionSpec<Integer> workerThreadsOs;
+    protected OptionSpec<Integer> parseThreadsOs;
+    protected OptionSpec<Integer> analyzeThreadsOs;
+    protected OptionSpec<Integer> executeThreadsOs;
+    protected OptionSpec<Integer> stageQueueSizeOs;
+    protected OptionSpec<Integer> readerThreadsOs;
+    protected OptionSpec<Integer> concurrentInputFilesOs;
+    protected OptionSpec<Long> checkpointIntervalOs;
+    protected OptionSpec<Void> resumeOs;
+    protected OptionSpec<Void> followOs;
+    protected OptionSpec<Long> flushIntervalOs;
+    protected OptionSpec<Integer> sampleOs;
+    protected OptionSpec<String> sampleByOs;
+    protected OptionSpec<Long> seedOs;
+    protected OptionSpec<String> preFilterOs;
+    protected OptionSpec<Void> noPreFilterOs;
+    protected OptionSpec<Long> offsetOs;
+    protected OptionSpec<Long> limitOs;
+    protected OptionSpec<Long> logParseFailuresOs;
+    protected OptionSpec<Void> groupOs;
+    protected OptionSpec<File> structuralCacheOs;
+    protected OptionSpec<Long> seenQueriesOs;
+    protected OptionSpec<Integer> seenQueryHashBitsOs;
+    protected OptionSpec<Void> legacyQueryIdsOs;
+    protected OptionSpec<Void> canonicalizeOs;
+    protected OptionSpec<Long> structuralCacheSizeOs;
     
 
     
@@ -85,7 +111,7 @@ public class LsqCliParser {
     public void initOptionSpecs() {
 
         inputOs = parser
-        		.nonOptions("File(s) containing input data")
+        		.nonOptions("File(s) containing input data; directories and globs such as 'logs/*.gz' are expanded to the files they contain")
                 //.acceptsAll(Arrays.asList("f", "file"), "File containing input data")
                 //.withRequiredArg()
                 //.ofType(File.class)
@@ -98,9 +124,8 @@ public class LsqCliParser {
                 ;
 
         logFormatOs = parser
-                .acceptsAll(Arrays.asList("m", "format"), "Format of the input data. Available options: " + logFmtRegistry.keySet())
+                .acceptsAll(Arrays.asList("m", "format"), "Format of the input data; probed on a sample of each input if omitted. Available options: " + logFmtRegistry.keySet())
                 .withOptionalArg()
-                .defaultsTo("combined")
                 ;
 
         outFormatOs = parser
@@ -134,7 +159,7 @@ public class LsqCliParser {
                 ;
 
         headOs = parser
-                .acceptsAll(Arrays.asList("h", "head"), "Only process n entries starting from the top")
+                .acceptsAll(Arrays.asList("h", "head"), "Only process n entries starting from the top. Lines dropped by the pre-filter (see --prefilter) are not counted, so n refers to the lines that may carry a query; use --no-prefilter to count all lines.")
                 .withRequiredArg()
                 .ofType(Long.class)
                 ;
@@ -211,6 +236,156 @@ public class LsqCliParser {
                 .defaultsTo("Linked Sparql Queries (LSQ) client. User agent not set.")
                 ;
 
+        workerThreadsOs = parser
+                .acceptsAll(Arrays.asList("j", "threads"), "Number of threads for processing log entries. The output order is the same as with a single thread.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(1)
+                ;
+
+        parseThreadsOs = parser
+                .acceptsAll(Arrays.asList("parse-threads"), "Number of threads for extracting and parsing queries. Setting any of the stage options enables the staged pipeline which supersedes --threads.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                ;
+
+        analyzeThreadsOs = parser
+                .acceptsAll(Arrays.asList("analyze-threads"), "Number of threads for computing structural features (CPU bound stage of the staged pipeline)")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                ;
+
+        executeThreadsOs = parser
+                .acceptsAll(Arrays.asList("exec-threads"), "Number of threads for benchmarking queries (I/O bound stage of the staged pipeline)")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                ;
+
+        stageQueueSizeOs = parser
+                .acceptsAll(Arrays.asList("queue-size"), "Maximum number of items handed over between two stages of the staged pipeline. Defaults to four times the number of threads of the receiving stage.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                ;
+
+        readerThreadsOs = parser
+                .acceptsAll(Arrays.asList("reader-threads"), "Number of threads for parsing line based log files. Files are split into chunks at line boundaries; sequence ids are the same as with a single thread. Compressed (gzip, bzip2, zstd) input is decompressed with this number of threads.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(1)
+                ;
+
+        concurrentInputFilesOs = parser
+                .acceptsAll(Arrays.asList("concurrent-files"), "Maximum number of input files that are open and read concurrently. Records are emitted in the order of the files; directories and globs are expanded in the order of their file names.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(1)
+                ;
+
+        checkpointIntervalOs = parser
+                .acceptsAll(Arrays.asList("checkpoint-interval"), "Write a checkpoint after every given number of records to <output>.checkpoint; requires --output")
+                .withRequiredArg()
+                .ofType(Long.class)
+                ;
+
+        resumeOs = parser
+                .acceptsAll(Arrays.asList("resume"), "Resume a run after the last checkpoint of its output file; the inputs must be the same")
+                ;
+
+        followOs = parser
+                .acceptsAll(Arrays.asList("follow"), "Follow a live log file like 'tail -F': process its content and then the lines appended to it, surviving rotation and truncation. Requires a single line based input file; records are processed sequentially.")
+                ;
+
+        flushIntervalOs = parser
+                .acceptsAll(Arrays.asList("flush-interval"), "Flush the output at least every given number of milliseconds; defaults to 1000 with --follow")
+                .withRequiredArg()
+                .ofType(Long.class)
+                ;
+
+        sampleOs = parser
+                .acceptsAll(Arrays.asList("sample"), "Process only a uniform random sample of the given number of log records, drawn in a single pass over all inputs. The sample is held in memory.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                ;
+
+        sampleByOs = parser
+                .acceptsAll(Arrays.asList("sample-by"), "Stratify the sample: draw --sample records per host, query (distinct query string), month, day or hour")
+                .withRequiredArg()
+                ;
+
+        seedOs = parser
+                .acceptsAll(Arrays.asList("seed"), "Seed for sampling; the same seed yields the same sample")
+                .withRequiredArg()
+                .ofType(Long.class)
+                .defaultsTo(0l)
+                ;
+
+        preFilterOs = parser
+                .acceptsAll(Arrays.asList("prefilter"), "Only parse lines of line based logs that contain any of the given patterns (case insensitive); may be given multiple times. Defaults to 'query=' for web server logs and to the keywords of query forms and update operations for the sparql formats.")
+                .withRequiredArg()
+                ;
+
+        noPreFilterOs = parser
+                .acceptsAll(Arrays.asList("no-prefilter"), "Parse all lines of line based logs")
+                ;
+
+        offsetOs = parser
+                .acceptsAll(Arrays.asList("offset"), "Skip the given number of lines of the input; sequence ids remain the line numbers within the file. Uncompressed files with an up-to-date line index (see MainLsqBuildLineIndex) are read from the line directly, other inputs are scanned. Requires a single input.")
+                .withRequiredArg()
+                .ofType(Long.class)
+                ;
+
+        limitOs = parser
+                .acceptsAll(Arrays.asList("limit"), "Read at most the given number of lines of the input, starting at --offset. Requires a single input.")
+                .withRequiredArg()
+                .ofType(Long.class)
+                ;
+
+        logParseFailuresOs = parser
+                .acceptsAll(Arrays.asList("log-parse-failures"), "Number of lines of each input that failed to parse to log. Failures are counted per field regardless, and summarized once an input has been read.")
+                .withRequiredArg()
+                .ofType(Long.class)
+                .defaultsTo(10l)
+                ;
+
+        groupOs = parser
+                .acceptsAll(Arrays.asList("group"), "Read the whole input first and group its entries by query, such that each distinct query is analyzed and executed once with all of its remote executions attached. Holds all entries in memory; cannot be combined with --follow or checkpointing.")
+                ;
+
+        seenQueriesOs = parser
+                .acceptsAll(Arrays.asList("seen-queries"), "Expected number of distinct queries, used to size the set of executed queries. The set grows beyond it as needed, at about 32 bytes (128 bit hashes) or 16 bytes (64 bit hashes) per query.")
+                .withRequiredArg()
+                .ofType(Long.class)
+                .defaultsTo(LsqConfigImpl.DEFAULT_SEEN_QUERY_CACHE_SIZE)
+                ;
+
+        seenQueryHashBitsOs = parser
+                .acceptsAll(Arrays.asList("seen-query-hash-bits"), "Bits of the hashes by which executed queries are remembered, 64 or 128. With 64 bits, a query is wrongly considered executed with a probability of about n / 2^64 for n distinct queries.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(128)
+                ;
+
+        legacyQueryIdsOs = parser
+                .acceptsAll(Arrays.asList("legacy-query-ids"), "Derive query ids from the first 8 hex characters of the md5 hash of queries, as in earlier versions, instead of 16 hex characters of their murmur3 hash. Legacy ids are only 32 bits long and may collide on large logs.")
+                ;
+
+        canonicalizeOs = parser
+                .acceptsAll(Arrays.asList("canonicalize"), "Execute queries that only differ in variable names, prefixes, whitespace or the order of triple patterns and filters only once. Each query is annotated with the hash of its canonical form, which links it to the other texts of the same query; the rate of duplicates is logged at the end. Only the first text of a canonical form in the input is executed: The queries of the other texts get no local execution of their own and are related to it only via their shared canonical hash.")
+                ;
+
+        structuralCacheOs = parser
+                .acceptsAll(Arrays.asList("structural-cache"), "File in which the structural features of queries are cached across runs. The cache is cleared when it was written with different structural features or a different vocabulary.")
+                .withRequiredArg()
+                .ofType(File.class)
+                ;
+
+        structuralCacheSizeOs = parser
+                .acceptsAll(Arrays.asList("structural-cache-size"), "Bound on the size of the structural feature cache in MB (at most 2047). When the bound is exceeded, the least recently used entries are evicted on the next start.")
+                .withRequiredArg()
+                .ofType(Long.class)
+                .defaultsTo(1024l)
+                ;
+
 
 //        reuseLogIri = parser
 //                .acceptsAll(Arrays.asList("b", "base"), "Base URI for URI generation")
@@ -286,6 +461,7 @@ public class LsqCliParser {
 
 
         config.setLogFmtRegistry(logFmtRegistry);
+        config.setLineLogFmtRegistry(LsqUtils.createDefaultLineLogFmtRegistry());
         config.setOutBaseIri(baseUri);
         config.setExperimentIri(expBaseUri);
 
@@ -297,7 +473,7 @@ public class LsqCliParser {
 
         // By default, reuse log iris if the format is rdf; unless it is explicitly overridden ...
         boolean reuseLogIris = !options.has(logIriAsBaseIriOs)
-                ? logFormatOs.value(options).equals("rdf")
+                ? LsqUtils.rdfLogFormats.containsKey(logFormatOs.value(options))
                 : true;//logIriAsBaseIriOs.value(options);
 
         String queryIdPatternStr = queryIdPatternOs.value(options);
@@ -335,6 +511,34 @@ public class LsqCliParser {
         config.setDelayInMs(delayInMs);
         String userAgent = httpUserAgentOs.value(options);
         config.setHttpUserAgent(userAgent);
+
+        config.setWorkerThreads(workerThreadsOs.value(options));
+        config
+            .setParseThreads(parseThreadsOs.value(options))
+            .setAnalyzeThreads(analyzeThreadsOs.value(options))
+            .setExecuteThreads(executeThreadsOs.value(options))
+            .setStageQueueSize(stageQueueSizeOs.value(options))
+            .setReaderThreads(readerThreadsOs.value(options))
+            .setConcurrentInputFiles(concurrentInputFilesOs.value(options))
+            .setCheckpointInterval(checkpointIntervalOs.value(options))
+            .setResume(options.has(resumeOs))
+            .setFollow(options.has(followOs))
+            .setFlushInterval(flushIntervalOs.value(options))
+            .setSampleSize(sampleOs.value(options))
+            .setSampleBy(sampleByOs.value(options))
+            .setSampleSeed(seedOs.value(options))
+            .setPreFilter(!options.has(noPreFilterOs))
+            .setPreFilterPatterns(options.has(preFilterOs) ? preFilterOs.values(options) : null)
+            .setLineOffset(offsetOs.value(options))
+            .setLineLimit(limitOs.value(options))
+            .setMaxLoggedParseFailures(logParseFailuresOs.value(options))
+            .setGroupByQuery(options.has(groupOs))
+            .setSeenQueryCacheSize(seenQueriesOs.value(options))
+            .setSeenQueryHashBits(seenQueryHashBitsOs.value(options))
+            .setLegacyQueryIds(options.has(legacyQueryIdsOs))
+            .setCanonicalizeQueries(options.has(canonicalizeOs))
+            .setStructuralFeatureCacheFile(structuralCacheOs.value(options))
+            .setStructuralFeatureCacheMaxSize(structuralCacheSizeOs.value(options) * 1024l * 1024l);
         
         return config;
     }
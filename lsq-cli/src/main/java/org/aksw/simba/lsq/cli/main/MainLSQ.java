@@ -1,14 +1,26 @@
 package org.aksw.simba.lsq.cli.main;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
 import java.util.stream.Stream;
 
 import org.aksw.jena_sparql_api.core.SparqlServiceReference;
 import org.aksw.jena_sparql_api.utils.DatasetDescriptionUtils;
+import org.aksw.simba.lsq.core.LsqCheckpoint;
+import org.aksw.simba.lsq.core.LsqCheckpointer;
 import org.aksw.simba.lsq.core.LsqConfigImpl;
 import org.aksw.simba.lsq.core.LsqProcessor;
 import org.aksw.simba.lsq.core.LsqUtils;
+import org.aksw.simba.lsq.core.SinkMicroBatch;
 import org.aksw.simba.lsq.util.NestedResource;
 import org.aksw.simba.lsq.vocab.PROV;
 import org.apache.jena.atlas.lib.Sink;
@@ -72,9 +84,74 @@ public class MainLSQ
         // The main setup work is done in LsqUtils following.
         // It follows a classic batch processing approach:
         // Create a reader, a processor and a writer
-        Stream<Resource> itemReader = LsqUtils.createReader(config);
+        // Checkpoints require an output file which can be synced and truncated
+        Long checkpointInterval = config.getCheckpointInterval();
+        boolean isCheckpointing = checkpointInterval != null || config.isResume();
+        File outFile = config.getOutFile();
+        if(isCheckpointing && outFile == null) {
+            throw new RuntimeException("Checkpointing and resuming require an output file");
+        }
+        // Grouping emits queries only after the whole input has been read, hence there is no progress to checkpoint
+        if(isCheckpointing && config.isGroupByQuery()) {
+            throw new RuntimeException("Checkpointing and resuming cannot be combined with grouping by query");
+        }
+
+        Path checkpointFile = outFile == null ? null : Paths.get(outFile.getPath() + ".checkpoint");
+        LsqCheckpoint resumeFrom = null;
+        if(config.isResume()) {
+            if(Files.exists(checkpointFile)) {
+                resumeFrom = LsqCheckpoint.load(checkpointFile);
+                logger.info("Resuming from checkpoint " + checkpointFile + ": " + resumeFrom);
+
+                // The seen queries are keyed by either their canonical form or their text; the keys of the other setting never match
+                if(resumeFrom.isCanonicalizeQueries() != config.isCanonicalizeQueries()) {
+                    throw new RuntimeException("The checkpoint was written " + (resumeFrom.isCanonicalizeQueries() ? "with" : "without")
+                            + " --canonicalize; resume with the same setting");
+                }
+
+                // The logged query ids only match the ids of the same scheme
+                if(resumeFrom.isLegacyQueryIds() != config.isLegacyQueryIds()) {
+                    throw new RuntimeException("The checkpoint was written " + (resumeFrom.isLegacyQueryIds() ? "with" : "without")
+                            + " --legacy-query-ids; resume with the same setting");
+                }
+            } else {
+                logger.warn("No checkpoint found at " + checkpointFile + "; starting from the beginning");
+            }
+        }
+
+        Stream<Resource> itemReader = LsqUtils.createReader(config, resumeFrom);
         LsqProcessor itemProcessor = LsqUtils.createProcessor(config);
-        Sink<Resource> itemWriter = LsqUtils.createWriter(config);
+
+        FileOutputStream out = isCheckpointing ? LsqCheckpointer.openOutput(outFile, resumeFrom) : null;
+        Sink<Resource> itemWriter = out != null
+                ? LsqUtils.createWriter(config, new PrintStream(new BufferedOutputStream(out)))
+                : LsqUtils.createWriter(config);
+
+        // When following a live log, results are flushed with bounded latency rather than when the buffer fills up
+        Long flushInterval = config.getFlushInterval();
+        if(flushInterval == null && config.isFollow()) {
+            flushInterval = 1000l;
+        }
+        if(flushInterval != null) {
+            itemWriter = new SinkMicroBatch<>(itemWriter, flushInterval);
+        }
+
+        LsqCheckpointer checkpointer = null;
+        Stream<Resource> trackedReader = itemReader;
+        if(isCheckpointing) {
+            List<String> inputs = LsqUtils.expandInputResources(config.getInQueryLogFiles());
+            checkpointer = new LsqCheckpointer(checkpointFile, checkpointInterval == null ? Long.MAX_VALUE : checkpointInterval,
+                    inputs, config.isCanonicalizeQueries(), config.isLegacyQueryIds(), resumeFrom, out, itemWriter::flush);
+
+            if(resumeFrom != null) {
+                LsqCheckpointer.loadSeenQueries(checkpointFile, resumeFrom, itemProcessor.getSeenQueries());
+                LsqCheckpointer.loadQueryIds(checkpointFile, resumeFrom, itemProcessor.getQueryIdRegistry());
+            }
+
+            itemProcessor.setSeenQueryListener(checkpointer::onQuerySeen);
+            itemProcessor.setQueryIdListener(checkpointer::onQueryIdRegistered);
+            trackedReader = checkpointer.track(itemReader);
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> itemReader.close()));
 
@@ -92,7 +169,7 @@ public class MainLSQ
         Resource expRes = expBaseRes.get();   //we do not need to nest the expStartStr
 
         // Report start / end times of the RDFization if requested
-        if(config.isEmitProcessMetadata()) {
+        if(config.isEmitProcessMetadata() && resumeFrom == null) {
             itemWriter.send(
                    expRes.inModel(ModelFactory.createDefaultModel())
                        //  .addProperty(PROV.wasAssociatedWith, expBaseRes.get())
@@ -102,10 +179,32 @@ public class MainLSQ
 
         //RDFDataMgr.write(out, expModel, outFormat);
 
-        itemReader
-            .map(itemProcessor)
-            .filter(x -> x != null)
-            .forEach(itemWriter::send);
+        try(Stream<Resource> itemStream = LsqUtils.process(config, trackedReader, itemProcessor)) {
+            // Results are pulled one by one; this relies on the reader being lazy, i.e. not assembled with flatMap,
+            // whose iterator would buffer a whole input (or a followed log forever) before yielding anything
+            Iterator<Resource> it = itemStream.iterator();
+            while(it.hasNext()) {
+                Resource item = it.next();
+                if(item != null) {
+                    itemWriter.send(item);
+                }
+
+                if(checkpointer != null) {
+                    checkpointer.onItemDone();
+                }
+            }
+        }
+
+        if(checkpointer != null) {
+            checkpointer.checkpoint();
+            checkpointer.close();
+        }
+
+        itemProcessor.logCanonicalizationStats();
+
+        if(itemProcessor.getStructuralFeatureCache() != null) {
+            itemProcessor.getStructuralFeatureCache().close();
+        }
 
         if(config.isEmitProcessMetadata()) {
             itemWriter.send(
@@ -0,0 +1,29 @@
+package org.aksw.simba.lsq.cli.main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.aksw.simba.lsq.reader.LineIndex;
+
+
+/**
+ * Build the sidecar line index of each given log file, which allows for reading ranges of lines
+ * with --offset and --limit without scanning the preceding lines.
+ * For each file, the number of lines and the path of its index are printed.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class MainLsqBuildLineIndex {
+	public static void main(String[] args) throws IOException {
+		for(int i = 0; i < args.length; ++i) {
+			Path logFile = Paths.get(args[i]);
+			Path indexFile = LineIndex.getDefaultIndexPath(logFile);
+
+			long numLines = LineIndex.build(logFile, indexFile);
+
+			System.out.println(logFile + "\t" + numLines + "\t" + indexFile);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.aksw.simba.lsq.cli.main;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.core.LsqConfigImpl;
+import org.aksw.simba.lsq.core.LsqUtils;
+import org.aksw.simba.lsq.reader.BinaryLog;
+import org.aksw.simba.lsq.reader.BinaryLogWriter;
+import org.apache.jena.rdf.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Parse query logs once and write the parsed records to a binary log, which can be passed to
+ * {@link MainLSQ} instead of the raw logs with any number of different settings.
+ * Takes the same input options as {@link MainLSQ}, such as the log format, the reader threads and line ranges;
+ * the binary log is written to the file given by the output option, which is mandatory.
+ * The format of the binary log is probed as '{@value BinaryLog#FORMAT_NAME}'.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class MainLsqParse {
+	private static final Logger logger = LoggerFactory.getLogger(MainLsqParse.class);
+
+	public static void main(String[] args) throws IOException {
+		LsqCliParser cliParser = new LsqCliParser();
+		LsqConfigImpl config = cliParser.parse(args);
+
+		File outFile = config.getOutFile();
+		if(outFile == null) {
+			cliParser.getOptionParser().printHelpOn(System.err);
+			throw new RuntimeException("Parsing requires an output file");
+		}
+
+		BinaryLogWriter writer = new BinaryLogWriter(new BufferedOutputStream(new FileOutputStream(outFile), 1024 * 1024));
+		try(Stream<Resource> reader = LsqUtils.createReader(config)) {
+			reader.forEach(writer::send);
+		} finally {
+			writer.close();
+		}
+
+		logger.info("Wrote " + writer.getNumRecords() + " records to " + outFile);
+	}
+}
@@ -1,20 +1,39 @@
 package org.aksw.simba.lsq.cli.main;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.aksw.simba.lsq.core.LsqUtils;
+import org.aksw.simba.lsq.reader.LogFormatProber.ProbeResult;
+import org.apache.jena.rdf.model.Resource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
 
 
 
 public class MainLsqProbeLogFormat {
 	public static void main(String[] args) throws IOException {
+		ResourceLoader loader = new DefaultResourceLoader();
+		Map<String, Function<InputStream, Stream<Resource>>> registry = LsqUtils.createDefaultLogFmtRegistry();
+
 		for(int i = 0; i < args.length; ++i) {			
 			String filename = args[i];
 
-			List<String> bestCands = LsqUtils.probeLogFormat(filename);
-			
+			List<ProbeResult> report = LsqUtils.probeLogFormat(registry, loader, filename);
+			List<String> bestCands = report.stream()
+					.filter(r -> r.getSuccesses() != 0)
+					.map(ProbeResult::getFormat)
+					.collect(Collectors.toList());
+
 			System.out.println(filename + "\t" + bestCands);
+			for(ProbeResult r : report) {
+				System.out.println("\t" + r);
+			}
 		}	
 	}
 }
@@ -0,0 +1,205 @@
+package org.aksw.simba.lsq.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The durable state of an LSQ run after some number of processed log records.
+ *
+ * Records are counted in the order in which they are read from the (expanded) list of inputs,
+ * which is the order in which their results are written.
+ * The lengths of the output and of the logs of seen queries and query ids refer to the state after the last counted record;
+ * anything beyond them was written after the checkpoint and is discarded upon resume.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class LsqCheckpoint {
+    protected List<String> inputs = new ArrayList<>();
+
+    // Whether the log of seen queries holds the hashes of canonical forms rather than of query texts
+    protected boolean canonicalizeQueries = false;
+
+    // Whether the logged query ids are the legacy md5 based ones
+    protected boolean legacyQueryIds = false;
+
+    // Total number of records whose results have been committed
+    protected long records = 0;
+
+    // The input of the last committed record and the number of records committed from it
+    protected int inputIndex = 0;
+    protected long inputRecords = 0;
+    protected long lastSequenceId = -1;
+
+    protected long outputLength = 0;
+    protected long seenQueriesLength = 0;
+    protected long queryIdsLength = 0;
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    public LsqCheckpoint setInputs(List<String> inputs) {
+        this.inputs = inputs;
+        return this;
+    }
+
+    public boolean isCanonicalizeQueries() {
+        return canonicalizeQueries;
+    }
+
+    public LsqCheckpoint setCanonicalizeQueries(boolean canonicalizeQueries) {
+        this.canonicalizeQueries = canonicalizeQueries;
+        return this;
+    }
+
+    public boolean isLegacyQueryIds() {
+        return legacyQueryIds;
+    }
+
+    public LsqCheckpoint setLegacyQueryIds(boolean legacyQueryIds) {
+        this.legacyQueryIds = legacyQueryIds;
+        return this;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public LsqCheckpoint setRecords(long records) {
+        this.records = records;
+        return this;
+    }
+
+    public int getInputIndex() {
+        return inputIndex;
+    }
+
+    public LsqCheckpoint setInputIndex(int inputIndex) {
+        this.inputIndex = inputIndex;
+        return this;
+    }
+
+    public long getInputRecords() {
+        return inputRecords;
+    }
+
+    public LsqCheckpoint setInputRecords(long inputRecords) {
+        this.inputRecords = inputRecords;
+        return this;
+    }
+
+    public long getLastSequenceId() {
+        return lastSequenceId;
+    }
+
+    public LsqCheckpoint setLastSequenceId(long lastSequenceId) {
+        this.lastSequenceId = lastSequenceId;
+        return this;
+    }
+
+    public long getOutputLength() {
+        return outputLength;
+    }
+
+    public LsqCheckpoint setOutputLength(long outputLength) {
+        this.outputLength = outputLength;
+        return this;
+    }
+
+    public long getSeenQueriesLength() {
+        return seenQueriesLength;
+    }
+
+    public LsqCheckpoint setSeenQueriesLength(long seenQueriesLength) {
+        this.seenQueriesLength = seenQueriesLength;
+        return this;
+    }
+
+    public long getQueryIdsLength() {
+        return queryIdsLength;
+    }
+
+    public LsqCheckpoint setQueryIdsLength(long queryIdsLength) {
+        this.queryIdsLength = queryIdsLength;
+        return this;
+    }
+
+    public static LsqCheckpoint load(Path file) throws IOException {
+        Properties props = new Properties();
+        try(InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        }
+
+        LsqCheckpoint result = new LsqCheckpoint();
+        int numInputs = Integer.parseInt(props.getProperty("inputs", "0"));
+        for(int i = 0; i < numInputs; ++i) {
+            result.getInputs().add(props.getProperty("input." + i));
+        }
+
+        result
+            .setCanonicalizeQueries(Boolean.parseBoolean(props.getProperty("canonicalizeQueries", "false")))
+            .setLegacyQueryIds(Boolean.parseBoolean(props.getProperty("legacyQueryIds", "false")))
+            .setRecords(Long.parseLong(props.getProperty("records")))
+            .setInputIndex(Integer.parseInt(props.getProperty("inputIndex")))
+            .setInputRecords(Long.parseLong(props.getProperty("inputRecords")))
+            .setLastSequenceId(Long.parseLong(props.getProperty("lastSequenceId")))
+            .setOutputLength(Long.parseLong(props.getProperty("outputLength")))
+            .setSeenQueriesLength(Long.parseLong(props.getProperty("seenQueriesLength")))
+            .setQueryIdsLength(Long.parseLong(props.getProperty("queryIdsLength", "0")));
+
+        return result;
+    }
+
+    /**
+     * Atomically replace the given file with this checkpoint:
+     * The checkpoint is written to a temporary file which is synced to disk and then moved over the target.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("inputs", Integer.toString(inputs.size()));
+        for(int i = 0; i < inputs.size(); ++i) {
+            props.setProperty("input." + i, inputs.get(i));
+        }
+
+        props.setProperty("canonicalizeQueries", Boolean.toString(canonicalizeQueries));
+        props.setProperty("legacyQueryIds", Boolean.toString(legacyQueryIds));
+        props.setProperty("records", Long.toString(records));
+        props.setProperty("inputIndex", Integer.toString(inputIndex));
+        props.setProperty("inputRecords", Long.toString(inputRecords));
+        props.setProperty("lastSequenceId", Long.toString(lastSequenceId));
+        props.setProperty("outputLength", Long.toString(outputLength));
+        props.setProperty("seenQueriesLength", Long.toString(seenQueriesLength));
+        props.setProperty("queryIdsLength", Long.toString(queryIdsLength));
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            props.store(out, "LSQ checkpoint");
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public String toString() {
+        return "LsqCheckpoint [canonicalizeQueries=" + canonicalizeQueries + ", legacyQueryIds=" + legacyQueryIds + ", records=" + records + ", inputIndex=" + inputIndex + ", inputRecords=" + inputRecords
+                + ", lastSequenceId=" + lastSequenceId + ", outputLength=" + outputLength + ", seenQueriesLength="
+                + seenQueriesLength + ", queryIdsLength=" + queryIdsLength + "]";
+    }
+}
@@ -0,0 +1,300 @@
+package org.aksw.simba.lsq.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.util.QueryHashSet;
+import org.aksw.simba.lsq.util.QueryIdRegistry;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.aksw.simba.lsq.vocab.PROV;
+import org.apache.jena.rdf.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically writes {@link LsqCheckpoint}s of a run such that it can be resumed after a crash.
+ *
+ * The log records read from the input are tracked in the order they are read; as the processing retains that order,
+ * the n-th result handed to {@link #onItemDone()} belongs to the n-th record read.
+ * Queries that are newly marked as seen while processing a record are appended to a log once the record's
+ * result has been written, so the log reflects exactly the committed records.
+ * The log holds the 128 bit hash of each query as a record of 16 bytes, as only hashes are retained by the {@link QueryHashSet} of seen queries.
+ * Likewise, the ids newly registered with the {@link QueryIdRegistry} are logged as pairs of key and value,
+ * such that a query keeps its (possibly disambiguated) id across a resume.
+ *
+ * A checkpoint first syncs the output file and the logs to disk and then atomically replaces the
+ * checkpoint file with their lengths. Upon resume the files are truncated to these lengths, hence results written after
+ * the last checkpoint are discarded rather than duplicated.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class LsqCheckpointer
+    implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(LsqCheckpointer.class);
+
+    public static final int SEEN_QUERY_RECORD_SIZE = 16;
+    public static final int QUERY_ID_RECORD_SIZE = 16;
+
+    protected Path checkpointFile;
+    protected long interval;
+
+    protected FileChannel outputChannel;
+    protected Runnable flushOutput;
+
+    protected FileChannel seenQueriesChannel;
+    protected DataOutputStream seenQueriesOut;
+
+    protected FileChannel queryIdsChannel;
+    protected DataOutputStream queryIdsOut;
+
+    protected LsqCheckpoint state;
+    protected Map<String, Integer> sourceToIndex = new HashMap<>();
+
+    protected Queue<Resource> inFlight = new ConcurrentLinkedQueue<>();
+    protected Map<Resource, long[]> newlySeenQueries = new ConcurrentHashMap<>();
+    protected Map<Resource, long[]> newlyRegisteredQueryIds = new ConcurrentHashMap<>();
+    protected long sinceLastCheckpoint = 0;
+
+    /**
+     *
+     * @param checkpointFile
+     * @param interval Number of records after which a checkpoint is written
+     * @param inputs The expanded inputs
+     * @param canonicalizeQueries Whether seen queries are keyed by their canonical form; recorded for fresh runs
+     * @param legacyQueryIds Whether query ids are the legacy md5 based ones; recorded for fresh runs
+     * @param resumeFrom The checkpoint to resume from; null for a fresh run
+     * @param output The output file, positioned at the end of the committed content
+     * @param flushOutput Action that flushes any buffers of the output file
+     * @throws IOException
+     */
+    public LsqCheckpointer(Path checkpointFile, long interval, List<String> inputs, boolean canonicalizeQueries, boolean legacyQueryIds, LsqCheckpoint resumeFrom, FileOutputStream output, Runnable flushOutput) throws IOException {
+        this.checkpointFile = checkpointFile;
+        this.interval = interval;
+        this.outputChannel = output.getChannel();
+        this.flushOutput = flushOutput;
+        this.state = resumeFrom != null ? resumeFrom : new LsqCheckpoint()
+                .setInputs(new ArrayList<>(inputs))
+                .setCanonicalizeQueries(canonicalizeQueries)
+                .setLegacyQueryIds(legacyQueryIds);
+
+        for(int i = 0; i < inputs.size(); ++i) {
+            sourceToIndex.put(LsqUtils.toSourceIri(inputs.get(i)), i);
+        }
+
+        seenQueriesChannel = openLog(getSeenQueriesFile(checkpointFile), state.getSeenQueriesLength());
+        seenQueriesOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(seenQueriesChannel)));
+
+        queryIdsChannel = openLog(getQueryIdsFile(checkpointFile), state.getQueryIdsLength());
+        queryIdsOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(queryIdsChannel)));
+    }
+
+    /**
+     * Open a log for appending after truncating it to its committed length
+     */
+    protected static FileChannel openLog(Path file, long length) throws IOException {
+        FileChannel result = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        result.truncate(length);
+        result.position(length);
+        return result;
+    }
+
+    public static Path getSeenQueriesFile(Path checkpointFile) {
+        return checkpointFile.resolveSibling(checkpointFile.getFileName() + ".seen");
+    }
+
+    public static Path getQueryIdsFile(Path checkpointFile) {
+        return checkpointFile.resolveSibling(checkpointFile.getFileName() + ".ids");
+    }
+
+    /**
+     * Open the output file of a run. When resuming, content beyond the checkpoint is truncated and
+     * the returned stream appends to the remainder.
+     *
+     * @param outFile
+     * @param resumeFrom
+     * @return
+     * @throws IOException
+     */
+    public static FileOutputStream openOutput(File outFile, LsqCheckpoint resumeFrom) throws IOException {
+        FileOutputStream result;
+        if(resumeFrom == null) {
+            result = new FileOutputStream(outFile);
+        } else {
+            try(FileChannel channel = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE)) {
+                if(channel.size() < resumeFrom.getOutputLength()) {
+                    throw new IOException("Output file " + outFile + " is shorter than recorded in the checkpoint: " + channel.size() + " < " + resumeFrom.getOutputLength());
+                }
+                channel.truncate(resumeFrom.getOutputLength());
+            }
+            result = new FileOutputStream(outFile, true);
+        }
+        return result;
+    }
+
+    /**
+     * Add the hashes of the queries that had been seen up to the given checkpoint to a set
+     *
+     * @param checkpointFile
+     * @param checkpoint
+     * @param target
+     * @return The number of hashes read
+     * @throws IOException
+     */
+    public static long loadSeenQueries(Path checkpointFile, LsqCheckpoint checkpoint, QueryHashSet target) throws IOException {
+        long result = 0;
+        Path file = getSeenQueriesFile(checkpointFile);
+        if(Files.exists(file)) {
+            long n = checkpoint.getSeenQueriesLength() / SEEN_QUERY_RECORD_SIZE;
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                for(; result < n; ++result) {
+                    target.addHash(in.readLong(), in.readLong());
+                }
+            } catch(EOFException e) {
+                throw new IOException("Log of seen queries is shorter than recorded in the checkpoint", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Register the query ids that had been registered up to the given checkpoint
+     *
+     * @param checkpointFile
+     * @param checkpoint
+     * @param target
+     * @return The number of ids read
+     * @throws IOException
+     */
+    public static long loadQueryIds(Path checkpointFile, LsqCheckpoint checkpoint, QueryIdRegistry target) throws IOException {
+        long result = 0;
+        Path file = getQueryIdsFile(checkpointFile);
+        if(Files.exists(file)) {
+            long n = checkpoint.getQueryIdsLength() / QUERY_ID_RECORD_SIZE;
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                for(; result < n; ++result) {
+                    target.register(in.readLong(), in.readLong());
+                }
+            } catch(EOFException e) {
+                throw new IOException("Log of query ids is shorter than recorded in the checkpoint", e);
+            }
+        }
+        return result;
+    }
+
+    public LsqCheckpoint getState() {
+        return state;
+    }
+
+    /**
+     * Track the records of a reader. The returned stream must be the one that is processed.
+     */
+    public Stream<Resource> track(Stream<Resource> reader) {
+        return reader.peek(inFlight::add);
+    }
+
+    /**
+     * Listener for {@link LsqProcessor#setSeenQueryListener(java.util.function.BiConsumer)}
+     */
+    public void onQuerySeen(Resource logEntry, String queryKey) {
+        newlySeenQueries.put(logEntry, QueryHashSet.hash128(queryKey));
+    }
+
+    /**
+     * Listener for {@link LsqProcessor#setQueryIdListener(java.util.function.BiConsumer)}
+     */
+    public void onQueryIdRegistered(Resource logEntry, long[] keyAndValue) {
+        newlyRegisteredQueryIds.put(logEntry, keyAndValue);
+    }
+
+    /**
+     * Notify that the result of the next record (which may be null) has been handed to the output
+     *
+     * @throws IOException
+     */
+    public void onItemDone() throws IOException {
+        Resource r = inFlight.poll();
+        if(r == null) {
+            throw new IllegalStateException("More results than tracked records");
+        }
+
+        Resource source = r.getPropertyResourceValue(PROV.hadPrimarySource);
+        int inputIndex = source == null ? state.getInputIndex() : sourceToIndex.getOrDefault(source.getURI(), state.getInputIndex());
+        if(inputIndex != state.getInputIndex()) {
+            state.setInputIndex(inputIndex).setInputRecords(0);
+        }
+
+        long sequenceId = r.hasProperty(LSQ.sequenceId) ? r.getProperty(LSQ.sequenceId).getLong() : -1;
+        state
+            .setRecords(state.getRecords() + 1)
+            .setInputRecords(state.getInputRecords() + 1)
+            .setLastSequenceId(sequenceId);
+
+        long[] queryHash = newlySeenQueries.remove(r);
+        if(queryHash != null) {
+            seenQueriesOut.writeLong(queryHash[0]);
+            seenQueriesOut.writeLong(queryHash[1]);
+        }
+
+        long[] queryId = newlyRegisteredQueryIds.remove(r);
+        if(queryId != null) {
+            queryIdsOut.writeLong(queryId[0]);
+            queryIdsOut.writeLong(queryId[1]);
+        }
+
+        if(++sinceLastCheckpoint >= interval) {
+            checkpoint();
+        }
+    }
+
+    public void checkpoint() throws IOException {
+        flushOutput.run();
+        outputChannel.force(false);
+
+        seenQueriesOut.flush();
+        seenQueriesChannel.force(false);
+
+        queryIdsOut.flush();
+        queryIdsChannel.force(false);
+
+        state
+            .setOutputLength(outputChannel.position())
+            .setSeenQueriesLength(seenQueriesChannel.position())
+            .setQueryIdsLength(queryIdsChannel.position());
+
+        state.save(checkpointFile);
+        sinceLastCheckpoint = 0;
+
+        logger.debug("Wrote checkpoint: " + state);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            seenQueriesOut.close();
+        } finally {
+            queryIdsOut.close();
+        }
+    }
+}
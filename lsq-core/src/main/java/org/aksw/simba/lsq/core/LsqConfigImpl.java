@@ -11,6 +11,7 @@ import java.util.stream.Stream;
 
 import org.aksw.jena_sparql_api.core.SparqlServiceReference;
 import org.aksw.jena_sparql_api.stmt.SparqlStmt;
+import org.aksw.simba.lsq.parser.Mapper;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdfconnection.RDFConnection;
 
@@ -30,7 +31,8 @@ public class LsqConfigImpl {
     	this.federationEndpoints = new ArrayList<>();
     }
     
-    //protected Map<String, Mapper> logFmtRegistry;
+    // Registry of the line based log formats; used to parse log files in chunks with multiple threads
+    protected Map<String, Mapper> lineLogFmtRegistry;
 
     protected List<String> inQueryLogFiles;
     protected String inQueryLogFormat;
@@ -86,7 +88,19 @@ public class LsqConfigImpl {
 
     protected boolean emitProcessMetadata;
 
+    public static final long DEFAULT_SEEN_QUERY_CACHE_SIZE = 1000000l;
+
+    // Expected number of distinct queries; the set of seen queries is sized accordingly, but grows beyond it as needed
     protected Long seenQueryCacheSize;
+
+    // Bits of the hashes by which seen queries are remembered; 64 halves the memory at a higher false positive probability
+    protected int seenQueryHashBits = 128;
+
+    // Whether to derive query ids from the first 8 hex characters of the md5 hash of queries, as in earlier versions
+    protected boolean legacyQueryIds;
+
+    // Whether to deduplicate queries by a canonical form that is independent of variable names, prefixes and pattern order
+    protected boolean canonicalizeQueries;
     
     
     protected boolean deterministicPseudoTimestamps;
@@ -94,14 +108,84 @@ public class LsqConfigImpl {
     
     protected String httpUserAgent;
     protected Long delayInMs;
+
+    // Number of threads used to process log entries; values <= 1 mean sequential processing
+    protected Integer workerThreads;
+
+    // Thread pool sizes of the stages of the staged pipeline; if any of them is set, the staged pipeline is used
+    protected Integer parseThreads;
+    protected Integer analyzeThreads;
+    protected Integer executeThreads;
+
+    // Capacity of the queues between the stages of the staged pipeline
+    protected Integer stageQueueSize;
+
+    // Number of threads for parsing line based log files and for decompressing input; values <= 1 mean sequential reading
+    protected Integer readerThreads;
+
+    // Number of input files that are read concurrently; values <= 1 mean that files are read one after another
+    protected Integer concurrentInputFiles;
+
+    // Number of records after which a checkpoint is written; null disables checkpointing
+    protected Long checkpointInterval;
+
+    // Whether to resume from the last checkpoint of the output file
+    protected boolean resume;
+
+    // Whether to follow a live log file, processing appended lines as they arrive
+    protected boolean follow;
+
+    // Maximum time in milliseconds that written results may remain buffered; null means no periodic flushing
+    protected Long flushInterval;
+
+    // Number of records to sample (per stratum, if sampleBy is given); null disables sampling
+    protected Integer sampleSize;
+
+    // The strata of the sample: host, query, month, day or hour; null for a uniform sample
+    protected String sampleBy;
+
+    // Seed of the sample; null means a fixed default seed, so that samples are reproducible
+    protected Long sampleSeed;
+
+    // Whether lines of line based logs are pre-filtered for candidate SPARQL requests before parsing
+    protected boolean preFilter = true;
+
+    // Patterns of the pre-filter; null means patterns derived from the log format
+    protected List<String> preFilterPatterns;
+
+    // Range of lines to read from each input; for non line based formats the range refers to the records
+    protected Long lineOffset;
+    protected Long lineLimit;
+
+    // Number of lines per input that failed to parse to log; null means none
+    protected Long maxLoggedParseFailures;
+
+    // Whether to group the log entries by query and to analyze each distinct query only once
+    protected boolean groupByQuery;
+
+    // File of the cache of structural features across runs; null means no cache
+    protected File structuralFeatureCacheFile;
+
+    // Bound on the size of the structural feature cache file in bytes
+    protected long structuralFeatureCacheMaxSize = 1024l * 1024l * 1024l;
     
     
     public Long getSeenQueryCacheSize() {
 		return seenQueryCacheSize;
 	}
 
-	public void setSeenQueryCacheSize(Long seenQueryCacheSize) {
+	public LsqConfigImpl setSeenQueryCacheSize(Long seenQueryCacheSize) {
 		this.seenQueryCacheSize = seenQueryCacheSize;
+		return this;
+	}
+
+	public int getSeenQueryHashBits() {
+		return seenQueryHashBits;
+	}
+
+	public LsqConfigImpl setSeenQueryHashBits(int seenQueryHashBits) {
+		this.seenQueryHashBits = seenQueryHashBits;
+		return this;
 	}
 
 	/**
@@ -167,6 +251,15 @@ public class LsqConfigImpl {
     }
 
 
+    public Map<String, Mapper> getLineLogFmtRegistry() {
+        return lineLogFmtRegistry;
+    }
+
+    public LsqConfigImpl setLineLogFmtRegistry(Map<String, Mapper> lineLogFmtRegistry) {
+        this.lineLogFmtRegistry = lineLogFmtRegistry;
+        return this;
+    }
+
 //    public Map<String, Mapper> getLogFmtRegistry() {
 //        return logFmtRegistry;
 //    }
@@ -437,5 +530,225 @@ public class LsqConfigImpl {
 	public void setDelayInMs(Long delayInMs) {
 		this.delayInMs = delayInMs;
 	}
+
+	public Integer getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public LsqConfigImpl setWorkerThreads(Integer workerThreads) {
+		this.workerThreads = workerThreads;
+		return this;
+	}
+
+	public Integer getParseThreads() {
+		return parseThreads;
+	}
+
+	public LsqConfigImpl setParseThreads(Integer parseThreads) {
+		this.parseThreads = parseThreads;
+		return this;
+	}
+
+	public Integer getAnalyzeThreads() {
+		return analyzeThreads;
+	}
+
+	public LsqConfigImpl setAnalyzeThreads(Integer analyzeThreads) {
+		this.analyzeThreads = analyzeThreads;
+		return this;
+	}
+
+	public Integer getExecuteThreads() {
+		return executeThreads;
+	}
+
+	public LsqConfigImpl setExecuteThreads(Integer executeThreads) {
+		this.executeThreads = executeThreads;
+		return this;
+	}
+
+	public Integer getStageQueueSize() {
+		return stageQueueSize;
+	}
+
+	public LsqConfigImpl setStageQueueSize(Integer stageQueueSize) {
+		this.stageQueueSize = stageQueueSize;
+		return this;
+	}
+
+	public Integer getReaderThreads() {
+		return readerThreads;
+	}
+
+	public LsqConfigImpl setReaderThreads(Integer readerThreads) {
+		this.readerThreads = readerThreads;
+		return this;
+	}
+
+	public Integer getConcurrentInputFiles() {
+		return concurrentInputFiles;
+	}
+
+	public LsqConfigImpl setConcurrentInputFiles(Integer concurrentInputFiles) {
+		this.concurrentInputFiles = concurrentInputFiles;
+		return this;
+	}
+
+	public Long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public LsqConfigImpl setCheckpointInterval(Long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+		return this;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public LsqConfigImpl setResume(boolean resume) {
+		this.resume = resume;
+		return this;
+	}
+
+	public boolean isFollow() {
+		return follow;
+	}
+
+	public LsqConfigImpl setFollow(boolean follow) {
+		this.follow = follow;
+		return this;
+	}
+
+	public Long getFlushInterval() {
+		return flushInterval;
+	}
+
+	public LsqConfigImpl setFlushInterval(Long flushInterval) {
+		this.flushInterval = flushInterval;
+		return this;
+	}
+
+	public Integer getSampleSize() {
+		return sampleSize;
+	}
+
+	public LsqConfigImpl setSampleSize(Integer sampleSize) {
+		this.sampleSize = sampleSize;
+		return this;
+	}
+
+	public String getSampleBy() {
+		return sampleBy;
+	}
+
+	public LsqConfigImpl setSampleBy(String sampleBy) {
+		this.sampleBy = sampleBy;
+		return this;
+	}
+
+	public Long getSampleSeed() {
+		return sampleSeed;
+	}
+
+	public LsqConfigImpl setSampleSeed(Long sampleSeed) {
+		this.sampleSeed = sampleSeed;
+		return this;
+	}
+
+	public boolean isPreFilter() {
+		return preFilter;
+	}
+
+	public LsqConfigImpl setPreFilter(boolean preFilter) {
+		this.preFilter = preFilter;
+		return this;
+	}
+
+	public List<String> getPreFilterPatterns() {
+		return preFilterPatterns;
+	}
+
+	public LsqConfigImpl setPreFilterPatterns(List<String> preFilterPatterns) {
+		this.preFilterPatterns = preFilterPatterns;
+		return this;
+	}
+
+	public Long getLineOffset() {
+		return lineOffset;
+	}
+
+	public LsqConfigImpl setLineOffset(Long lineOffset) {
+		this.lineOffset = lineOffset;
+		return this;
+	}
+
+	public Long getLineLimit() {
+		return lineLimit;
+	}
+
+	public LsqConfigImpl setLineLimit(Long lineLimit) {
+		this.lineLimit = lineLimit;
+		return this;
+	}
+
+	public Long getMaxLoggedParseFailures() {
+		return maxLoggedParseFailures;
+	}
+
+	public LsqConfigImpl setMaxLoggedParseFailures(Long maxLoggedParseFailures) {
+		this.maxLoggedParseFailures = maxLoggedParseFailures;
+		return this;
+	}
+
+	public boolean isGroupByQuery() {
+		return groupByQuery;
+	}
+
+	public LsqConfigImpl setGroupByQuery(boolean groupByQuery) {
+		this.groupByQuery = groupByQuery;
+		return this;
+	}
+
+	public File getStructuralFeatureCacheFile() {
+		return structuralFeatureCacheFile;
+	}
+
+	public LsqConfigImpl setStructuralFeatureCacheFile(File structuralFeatureCacheFile) {
+		this.structuralFeatureCacheFile = structuralFeatureCacheFile;
+		return this;
+	}
+
+	public long getStructuralFeatureCacheMaxSize() {
+		return structuralFeatureCacheMaxSize;
+	}
+
+	public LsqConfigImpl setStructuralFeatureCacheMaxSize(long structuralFeatureCacheMaxSize) {
+		this.structuralFeatureCacheMaxSize = structuralFeatureCacheMaxSize;
+		return this;
+	}
+
+	public boolean isLegacyQueryIds() {
+		return legacyQueryIds;
+	}
+
+	public LsqConfigImpl setLegacyQueryIds(boolean legacyQueryIds) {
+		this.legacyQueryIds = legacyQueryIds;
+		return this;
+	}
+
+	public boolean isCanonicalizeQueries() {
+		return canonicalizeQueries;
+	}
+
+	public LsqConfigImpl setCanonicalizeQueries(boolean canonicalizeQueries) {
+		this.canonicalizeQueries = canonicalizeQueries;
+		return this;
+	}
+
+	public boolean isStagedPipeline() {
+		return parseThreads != null || analyzeThreads != null || executeThreads != null;
+	}
 }
 
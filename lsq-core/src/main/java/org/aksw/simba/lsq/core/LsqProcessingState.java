@@ -0,0 +1,155 @@
+package org.aksw.simba.lsq.core;
+
+import java.util.function.Function;
+
+import org.aksw.jena_sparql_api.stmt.SparqlStmtQuery;
+import org.aksw.simba.lsq.model.LsqQuery;
+import org.aksw.simba.lsq.util.NestedResource;
+import org.apache.jena.query.Query;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * The state of a single log entry while it passes through the stages of the {@link LsqProcessor}:
+ * parse, analyze, execute and finish.
+ *
+ * A state is only ever accessed by one thread at a time, hence no synchronization is needed.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class LsqProcessingState {
+    protected Resource logEntry;
+    protected long logEntryIndex;
+
+    protected SparqlStmtQuery queryStmt;
+    protected Query query;
+    protected String queryStr;
+
+    // The canonical form of the query, if queries are canonicalized and the query could be parsed
+    protected String canonicalQueryStr;
+
+    protected Model queryModel;
+    protected NestedResource baseRes;
+    protected NestedResource queryRes;
+    protected Function<String, NestedResource> queryAspectFn;
+
+    protected LsqQuery result;
+
+    // Set if a stage raised an exception; subsequent stages are skipped
+    protected Exception error;
+
+    public LsqProcessingState(Resource logEntry, long logEntryIndex) {
+        super();
+        this.logEntry = logEntry;
+        this.logEntryIndex = logEntryIndex;
+    }
+
+    /**
+     * Whether subsequent stages need to process this state:
+     * This is the case if a query could be obtained from the log entry and no error occurred so far.
+     *
+     * @return
+     */
+    public boolean isActive() {
+        return result != null && error == null;
+    }
+
+    public Resource getLogEntry() {
+        return logEntry;
+    }
+
+    public long getLogEntryIndex() {
+        return logEntryIndex;
+    }
+
+    public SparqlStmtQuery getQueryStmt() {
+        return queryStmt;
+    }
+
+    public LsqProcessingState setQueryStmt(SparqlStmtQuery queryStmt) {
+        this.queryStmt = queryStmt;
+        return this;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public LsqProcessingState setQuery(Query query) {
+        this.query = query;
+        return this;
+    }
+
+    public String getQueryStr() {
+        return queryStr;
+    }
+
+    public LsqProcessingState setQueryStr(String queryStr) {
+        this.queryStr = queryStr;
+        return this;
+    }
+
+    public String getCanonicalQueryStr() {
+        return canonicalQueryStr;
+    }
+
+    public LsqProcessingState setCanonicalQueryStr(String canonicalQueryStr) {
+        this.canonicalQueryStr = canonicalQueryStr;
+        return this;
+    }
+
+    public Model getQueryModel() {
+        return queryModel;
+    }
+
+    public LsqProcessingState setQueryModel(Model queryModel) {
+        this.queryModel = queryModel;
+        return this;
+    }
+
+    public NestedResource getBaseRes() {
+        return baseRes;
+    }
+
+    public LsqProcessingState setBaseRes(NestedResource baseRes) {
+        this.baseRes = baseRes;
+        return this;
+    }
+
+    public NestedResource getQueryRes() {
+        return queryRes;
+    }
+
+    public LsqProcessingState setQueryRes(NestedResource queryRes) {
+        this.queryRes = queryRes;
+        return this;
+    }
+
+    public Function<String, NestedResource> getQueryAspectFn() {
+        return queryAspectFn;
+    }
+
+    public LsqProcessingState setQueryAspectFn(Function<String, NestedResource> queryAspectFn) {
+        this.queryAspectFn = queryAspectFn;
+        return this;
+    }
+
+    public LsqQuery getResult() {
+        return result;
+    }
+
+    public LsqProcessingState setResult(LsqQuery result) {
+        this.result = result;
+        return this;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public LsqProcessingState setError(Exception error) {
+        this.error = error;
+        return this;
+    }
+}
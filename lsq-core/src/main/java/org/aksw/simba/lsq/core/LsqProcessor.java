@@ -1,14 +1,24 @@
 package org.aksw.simba.lsq.core;
 
-import java.text.SimpleDateFormat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.GregorianCalendar;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -26,7 +36,12 @@ import org.aksw.jena_sparql_api.utils.ElementUtils;
 import org.aksw.jena_sparql_api.utils.ModelUtils;
 import org.aksw.simba.lsq.model.LsqQuery;
 import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.util.MappedFileCache;
 import org.aksw.simba.lsq.util.NestedResource;
+import org.aksw.simba.lsq.util.QueryCanonicalizationUtils;
+import org.aksw.simba.lsq.util.QueryHashSet;
+import org.aksw.simba.lsq.util.QueryIdRegistry;
+import org.aksw.simba.lsq.util.SequentialGate;
 import org.aksw.simba.lsq.util.SpinUtils;
 import org.aksw.simba.lsq.vocab.LSQ;
 import org.aksw.simba.lsq.vocab.PROV;
@@ -42,6 +57,9 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
@@ -53,7 +71,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.topbraid.spin.vocabulary.SP;
 
-import com.google.common.cache.Cache;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.Multimap;
 
@@ -61,6 +78,10 @@ import com.google.common.collect.Multimap;
 /**
  * Reads a log entry resource and yields a resource for the query model
  *
+ * Instances are safe for use by multiple threads: Processing state is kept in atomic counters,
+ * and the minting of query ids as well as the check against the seen query cache can be made to happen in input order
+ * by means of {@link SequentialGate}s.
+ *
  * @author raven
  *
  */
@@ -71,7 +92,8 @@ public class LsqProcessor
 
 
     protected Function<String, SparqlStmt> stmtParser;
-    protected SimpleDateFormat dt = new SimpleDateFormat("yyyy-mm-dd_hh:mm:ss");
+    // Note: The pattern is kept for compatibility of the generated IRIs; DateTimeFormatter is immutable and thus thread-safe
+    protected DateTimeFormatter dt = DateTimeFormatter.ofPattern("yyyy-mm-dd_hh:mm:ss");
 
 
     protected boolean reuseLogIri;
@@ -84,10 +106,37 @@ public class LsqProcessor
     //protected boolean isQueryExecutionRemote;
 
     protected boolean useDeterministicPseudoTimestamps;
+
+    // Whether queries are deduplicated by their canonical form rather than their text
+    protected boolean canonicalizeQueries;
+
+    // The distinct texts and canonical forms of the parsed queries, for reporting the rate of deduplication
+    protected QueryHashSet distinctQueryTexts;
+    protected QueryHashSet distinctCanonicalQueries;
     
     protected Pattern queryIdPattern;
 
-    protected Cache<String, Object> seenQueryCache;
+    // Mints the ids of queries
+    protected QueryIdRegistry queryIdRegistry = new QueryIdRegistry(false);
+
+    // Notified with the log entry and the key and value of each newly registered query id, e.g. for checkpointing
+    protected BiConsumer<Resource, long[]> queryIdListener;
+
+    // If set, query ids are minted in the order of the tickets bound to the parsing threads, as the id of a query
+    // whose id collides with that of an earlier one depends on which of them is registered first
+    protected SequentialGate queryIdGate;
+
+    // Hashes of the queries that have been executed; unlike a cache, queries are never forgotten
+    protected QueryHashSet seenQueries;
+
+    // If set, lookups in the seenQueries are performed in the order of the tickets bound to the processing threads
+    protected SequentialGate seenQueryGate;
+
+    // Notified with the log entry and the key of each query that is newly marked as seen, e.g. for checkpointing
+    protected BiConsumer<Resource, String> seenQueryListener;
+
+    // If set, the triples of the structural features of queries are cached across runs
+    protected MappedFileCache structuralFeatureCache;
     
     
     // Delayer for benchmarking requests
@@ -102,6 +151,19 @@ public class LsqProcessor
 		this.useDeterministicPseudoTimestamps = useDeterministicPseudoTimestamps;
 	}
 
+	public boolean isCanonicalizeQueries() {
+		return canonicalizeQueries;
+	}
+
+	public LsqProcessor setCanonicalizeQueries(boolean canonicalizeQueries) {
+		this.canonicalizeQueries = canonicalizeQueries;
+		if(canonicalizeQueries && distinctQueryTexts == null) {
+			distinctQueryTexts = new QueryHashSet(1024, 128);
+			distinctCanonicalQueries = new QueryHashSet(1024, 128);
+		}
+		return this;
+	}
+
 	public Pattern getQueryIdPattern() {
         return queryIdPattern;
     }
@@ -135,8 +197,8 @@ public class LsqProcessor
 
 
     // Processing state variables
-    protected int logFailCount = 0;
-    protected long logEntryIndex = 0l;
+    protected AtomicInteger logFailCount = new AtomicInteger();
+    protected AtomicLong logEntryIndex = new AtomicLong();
     protected int batchSize = 10;
 
     public Function<String, SparqlStmt> getStmtParser() {
@@ -147,11 +209,11 @@ public class LsqProcessor
         this.stmtParser = stmtParser;
     }
 
-    public SimpleDateFormat getDt() {
+    public DateTimeFormatter getDt() {
         return dt;
     }
 
-    public void setDt(SimpleDateFormat dt) {
+    public void setDt(DateTimeFormatter dt) {
         this.dt = dt;
     }
 
@@ -228,12 +290,66 @@ public class LsqProcessor
 //        this.rawLogEndpointRes = rawLogEndpointRes;
 //    }
 
-    public Cache<String, ? extends Object> getSeenQueryCache() {
-		return seenQueryCache;
+    public QueryIdRegistry getQueryIdRegistry() {
+		return queryIdRegistry;
+	}
+
+	public LsqProcessor setQueryIdRegistry(QueryIdRegistry queryIdRegistry) {
+		this.queryIdRegistry = queryIdRegistry;
+		return this;
+	}
+
+	public BiConsumer<Resource, long[]> getQueryIdListener() {
+		return queryIdListener;
+	}
+
+	public LsqProcessor setQueryIdListener(BiConsumer<Resource, long[]> queryIdListener) {
+		this.queryIdListener = queryIdListener;
+		return this;
+	}
+
+	public SequentialGate getQueryIdGate() {
+		return queryIdGate;
+	}
+
+	public LsqProcessor setQueryIdGate(SequentialGate queryIdGate) {
+		this.queryIdGate = queryIdGate;
+		return this;
+	}
+
+	public QueryHashSet getSeenQueries() {
+		return seenQueries;
+	}
+
+	public LsqProcessor setSeenQueries(QueryHashSet seenQueries) {
+		this.seenQueries = seenQueries;
+		return this;
+	}
+
+	public BiConsumer<Resource, String> getSeenQueryListener() {
+		return seenQueryListener;
+	}
+
+	public LsqProcessor setSeenQueryListener(BiConsumer<Resource, String> seenQueryListener) {
+		this.seenQueryListener = seenQueryListener;
+		return this;
+	}
+
+	public MappedFileCache getStructuralFeatureCache() {
+		return structuralFeatureCache;
+	}
+
+	public LsqProcessor setStructuralFeatureCache(MappedFileCache structuralFeatureCache) {
+		this.structuralFeatureCache = structuralFeatureCache;
+		return this;
+	}
+
+	public SequentialGate getSeenQueryGate() {
+		return seenQueryGate;
 	}
 
-	public LsqProcessor setSeenQueryCache(Cache<String, Object> seenQueryCache) {
-		this.seenQueryCache = seenQueryCache;
+	public LsqProcessor setSeenQueryGate(SequentialGate seenQueryGate) {
+		this.seenQueryGate = seenQueryGate;
 		return this;
 	}
 
@@ -286,19 +402,19 @@ public class LsqProcessor
     }
 
     public int getLogFailCount() {
-        return logFailCount;
+        return logFailCount.get();
     }
 
     public void setLogFailCount(int logFailCount) {
-        this.logFailCount = logFailCount;
+        this.logFailCount.set(logFailCount);
     }
 
     public long getLogEntryIndex() {
-        return logEntryIndex;
+        return logEntryIndex.get();
     }
 
     public void setLogEntryIndex(long logEntryIndex) {
-        this.logEntryIndex = logEntryIndex;
+        this.logEntryIndex.set(logEntryIndex);
     }
 
     public int getBatchSize() {
@@ -317,11 +433,58 @@ public class LsqProcessor
 //        super();
 //    }
 
+    /**
+     * Process a log entry by running all stages in the calling thread.
+     *
+     */
     @Override
     public LsqQuery apply(Resource r) {
+        return apply(r, logEntryIndex.getAndIncrement());
+    }
+
+    /**
+     * Process a log entry whose index in the input has been assigned by the caller, such as
+     * before handing the entry to a worker thread.
+     *
+     * @param r The log entry
+     * @param logEntryIndex The index of the log entry in the input
+     */
+    public LsqQuery apply(Resource r, long logEntryIndex) {
+        LsqProcessingState state = parse(r, logEntryIndex);
+        analyze(state);
+        execute(state);
+        LsqQuery result = finish(state);
+        return result;
+    }
+
+    /**
+     * Stage 1 for log entries that are parsed in input order; the index of the entry is taken from a counter.
+     *
+     * @param r The log entry
+     * @return The processing state to be passed to the subsequent stages
+     */
+    public LsqProcessingState parse(Resource r) {
+        return parse(r, logEntryIndex.getAndIncrement());
+    }
+
+    /**
+     * Stage 1: Extract the query from a log entry, parse it and allocate the query resource.
+     * The returned state is active if the log entry yielded a SPARQL query.
+     *
+     * Concurrent callers need to pass the index of the entry in the input, as taking it from a counter
+     * would make it (and the batches that are logged) depend on the timing of the threads.
+     * If a query id gate is set, the caller needs to bind the log entry's ticket.
+     *
+     * @param r The log entry
+     * @param logEntryIndex The index of the log entry in the input
+     * @return The processing state to be passed to the subsequent stages
+     */
+    public LsqProcessingState parse(Resource r, long logEntryIndex) {
 
         // logger.debug(RDFDataMgr.write(out, dataset, lang););
 
+        LsqProcessingState state = new LsqProcessingState(r, logEntryIndex);
+
         // Extract the query and add it with the lsq:query property
         WebLogParser.extractQuery(r);
 
@@ -331,8 +494,6 @@ public class LsqProcessor
         boolean fail = false;
         boolean parsed = r.getProperty(LSQ.processingError) == null ? true : false;
 
-        LsqQuery result = null;
-
         try {
             if(parsed) {
                 Optional<String> str = Optional.ofNullable(r.getProperty(LSQ.query))
@@ -410,12 +571,17 @@ public class LsqProcessor
                         }
                     } else {
 
-                        String queryHash = StringUtils.md5Hash(queryStr).substring(0, 8);
+                        QueryIdRegistry.RegistrationListener registrationListener = queryIdListener == null
+                                ? null
+                                : (key, value) -> queryIdListener.accept(r, new long[] { key, value });
+                        String queryHash = queryIdGate == null
+                                ? queryIdRegistry.getQueryId(queryStr, registrationListener)
+                                : queryIdGate.runInTurn(() -> queryIdRegistry.getQueryId(queryStr, registrationListener));
                         queryRes = baseRes.nest("q-" + queryHash);
                         queryAspectFn = (aspect) -> baseRes.nest(aspect + "-").nest("q-" + queryHash);
                     }
 
-                    result = queryRes.get()
+                    LsqQuery result = queryRes.get()
                             .addProperty(RDF.type, LSQ.Query)
                             .as(LsqQuery.class)
                             .setText(("" + queryStr).replace("\n", " "));
@@ -424,51 +590,31 @@ public class LsqProcessor
                         String msg = queryStmt.getParseException().getMessage();
                         result
                             .addLiteral(LSQ.parseError, msg);
-                    } else {
-                        if(isRdfizerQueryStructuralFeaturesEnabled) {
-                            rdfizeQueryStructuralFeatures(result, queryAspectFn, query);
-                        }
                     }
 
-                    if(isRdfizerQueryLogRecordEnabled) {
-                        rdfizeLogRecord(baseRes, r, queryRes, queryAspectFn);
-                    }
-
-
-                    if(isRdfizerQueryExecutionEnabled) {
-//                        if(isQueryExecutionRemote) {
-//                            rdfizeLogRecord(baseRes, r, queryRes, queryAspectFn);
-//                        } else {
-                            doLocalExecution(query, queryRes, queryAspectFn);
-//                        }
-                    }
-
-
-                    // Post processing: Craft global IRIs for SPIN variables
-                    Set<Statement> stmts = queryModel.listStatements(null, SP.varName, (RDFNode)null).toSet();
-                    for(Statement st : stmts) {
-                        Resource s = st.getSubject();
-                        String varName = st.getLiteral().getString();
-                        //String varResUri = baseRes.nest("var-").nest(varName).str();
-                        String varResUri = queryRes.nest("-var-").nest(varName).str();
-                        ResourceUtils.renameResource(s, varResUri);
+                    String canonicalQueryStr = null;
+                    if(canonicalizeQueries && queryStmt.isParsed()) {
+                        canonicalQueryStr = canonicalize(queryStr, query);
+                        result.addLiteral(LSQ.canonicalHash, QueryCanonicalizationUtils.hash(canonicalQueryStr));
                     }
 
-                    // Post processing: Remove skolem identifiers
-                    queryModel.removeAll(null, Skolemize.skolemId, null);
-
-
-                    //RDFDataMgr.write(out, queryModel, outFormat);
-
-                    // TODO Frequent flushing may decrease performance
-                    // out.flush();
+                    state
+                        .setQueryStmt(queryStmt)
+                        .setQuery(query)
+                        .setQueryStr(queryStr)
+                        .setCanonicalQueryStr(canonicalQueryStr)
+                        .setQueryModel(queryModel)
+                        .setBaseRes(baseRes)
+                        .setQueryRes(queryRes)
+                        .setQueryAspectFn(queryAspectFn)
+                        .setResult(result);
                 } else {
                     logger.debug("Skipping non-sparql-query log entry #" + logEntryIndex);
                     logger.debug(toString(r));
                 }
 
             } else {
-                ++logFailCount;
+                int logFailCount = this.logFailCount.incrementAndGet();
                 double ratio = logEntryIndex == 0 ? 0.0 : logFailCount / logEntryIndex;
                 if(logEntryIndex == 10 && ratio > 0.8) {
                     fail = true;
@@ -479,26 +625,200 @@ public class LsqProcessor
             }
 
         } catch(Exception e) {
-            logger.warn("Unexpected exception encountered at item " + logEntryIndex + " - ", e);
-            logger.warn(toString(r));
+            handleException(state, e);
         }
 
         if(fail) {
             throw new RuntimeException("Encountered too many non processable log entries. Probably not a log file.");
         }
 
+        return state;
+    }
+
+    /**
+     * Stage 2: CPU bound analysis of the query, i.e. the structural features and the log record.
+     *
+     * @param state
+     */
+    public void analyze(LsqProcessingState state) {
+        if(state.isActive()) {
+            try {
+                if(isRdfizerQueryStructuralFeaturesEnabled && state.getQueryStmt().isParsed()) {
+                    if(structuralFeatureCache == null) {
+                        rdfizeQueryStructuralFeatures(state.getResult(), state.getQueryAspectFn(), state.getQuery());
+                    } else {
+                        rdfizeQueryStructuralFeaturesCached(state);
+                    }
+                }
+
+                if(isRdfizerQueryLogRecordEnabled) {
+                    rdfizeLogRecord(state.getBaseRes(), state.getLogEntry(), state.getQueryRes(), state.getQueryAspectFn());
+                }
+            } catch(Exception e) {
+                handleException(state, e);
+            }
+        }
+    }
+
+    /**
+     * Add the structural features of the state's query from the structural feature cache.
+     * On a miss, the features are computed into a separate model which is then added to the cache,
+     * unless their computation failed.
+     *
+     * The cache key comprises the IRIs of the query and of its spin aspect, as the cached triples are specific to them;
+     * the query string is stored with the triples in order to rule out collisions of query hashes.
+     *
+     * @param state
+     */
+    protected void rdfizeQueryStructuralFeaturesCached(LsqProcessingState state) throws IOException {
+        Function<String, NestedResource> queryAspectFn = state.getQueryAspectFn();
+        String key = state.getQueryRes().str() + " " + queryAspectFn.apply("spin").str();
+        String queryStr = state.getQueryStr();
+
+        byte[] value = structuralFeatureCache.get(key);
+        if(value != null) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+            byte[] cachedQueryStr = new byte[in.readInt()];
+            in.readFully(cachedQueryStr);
+            if(queryStr.equals(new String(cachedQueryStr, StandardCharsets.UTF_8))) {
+                RDFDataMgr.read(state.getQueryModel(), in, Lang.RDFTHRIFT);
+                return;
+            }
+        }
+
+        Model model = ModelFactory.createDefaultModel();
+        Resource queryRes = model.createResource(state.getQueryRes().str());
+        rdfizeQueryStructuralFeatures(queryRes, aspect -> new NestedResource(model, queryAspectFn.apply(aspect).str()), state.getQuery());
+        state.getQueryModel().add(model);
+
+        if(value == null && !queryRes.hasProperty(LSQ.processingError)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            byte[] queryStrBytes = queryStr.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(queryStrBytes.length);
+            out.write(queryStrBytes);
+            out.flush();
+            RDFDataMgr.write(baos, model, RDFFormat.RDF_THRIFT);
+            structuralFeatureCache.put(key, baos.toByteArray());
+        }
+    }
+
+    /**
+     * Add the remote execution recorded by a further log entry of the state's query, such that
+     * the query is analyzed once for all of its log entries.
+     * Needs to be called between {@link #analyze(LsqProcessingState)} and {@link #finish(LsqProcessingState)}.
+     *
+     * @param state The state obtained for one of the other log entries of the query
+     * @param logEntry
+     */
+    public void addRemoteExecution(LsqProcessingState state, Resource logEntry) {
+        if(state.isActive()) {
+            try {
+                if(isRdfizerQueryLogRecordEnabled) {
+                    rdfizeLogRecord(state.getBaseRes(), logEntry, state.getQueryRes(), state.getQueryAspectFn());
+                }
+            } catch(Exception e) {
+                handleException(state, e);
+            }
+        }
+    }
+
+    /**
+     * Stage 3: I/O bound execution of the query against the benchmark endpoint.
+     * If a {@link SequentialGate} is set, the caller needs to bind the log entry's ticket.
+     *
+     * @param state
+     */
+    public void execute(LsqProcessingState state) {
+        if(state.isActive()) {
+            try {
+                if(isRdfizerQueryExecutionEnabled) {
+//                    if(isQueryExecutionRemote) {
+//                        rdfizeLogRecord(baseRes, r, queryRes, queryAspectFn);
+//                    } else {
+                        // Queries with the same canonical form are only executed once
+                        String queryKey = state.getCanonicalQueryStr() != null ? state.getCanonicalQueryStr() : "" + state.getQuery();
+                        String seenQueryKey = doLocalExecution(queryKey, state.getQuery(), state.getQueryRes(), state.getQueryAspectFn());
+                        if(seenQueryKey != null && seenQueryListener != null) {
+                            seenQueryListener.accept(state.getLogEntry(), seenQueryKey);
+                        }
+//                    }
+                }
+            } catch(Exception e) {
+                handleException(state, e);
+            }
+        }
+    }
+
+    /**
+     * Stage 4: Post processing of the query model
+     *
+     * @param state
+     * @return The query resource or null if the log entry did not yield a query
+     */
+    public LsqQuery finish(LsqProcessingState state) {
+        if(state.isActive()) {
+            try {
+                Model queryModel = state.getQueryModel();
+                NestedResource queryRes = state.getQueryRes();
+
+                // Post processing: Craft global IRIs for SPIN variables
+                Set<Statement> stmts = queryModel.listStatements(null, SP.varName, (RDFNode)null).toSet();
+                for(Statement st : stmts) {
+                    Resource s = st.getSubject();
+                    String varName = st.getLiteral().getString();
+                    //String varResUri = baseRes.nest("var-").nest(varName).str();
+                    String varResUri = queryRes.nest("-var-").nest(varName).str();
+                    ResourceUtils.renameResource(s, varResUri);
+                }
+
+                // Post processing: Remove skolem identifiers
+                queryModel.removeAll(null, Skolemize.skolemId, null);
+
+
+                //RDFDataMgr.write(out, queryModel, outFormat);
+
+                // TODO Frequent flushing may decrease performance
+                // out.flush();
+            } catch(Exception e) {
+                handleException(state, e);
+            }
+        }
+
         //.write(System.err, "TURTLE");
-        ++logEntryIndex;
 
+        LsqQuery result = state.getResult();
         return result;
     }
 
+    protected void handleException(LsqProcessingState state, Exception e) {
+        state.setError(e);
+        logger.warn("Unexpected exception encountered at item " + state.getLogEntryIndex() + " - ", e);
+        logger.warn(toString(state.getLogEntry()));
+    }
+
 
-    public void doLocalExecution(Query query, NestedResource queryRes, Function<String, NestedResource> queryAspectFn) {
+    /**
+     * Execute the query unless it has been seen before.
+     *
+     * @return The key under which the query was newly marked as seen or null if it had been seen before
+     */
+    public String doLocalExecution(Query query, NestedResource queryRes, Function<String, NestedResource> queryAspectFn) {
+        return doLocalExecution("" + query, query, queryRes, queryAspectFn);
+    }
+
+    /**
+     * Execute the query unless a query with the same key has been seen before.
+     *
+     * @param queryKey The key by which queries are considered the same, such as their text or canonical form
+     * @return The key under which the query was newly marked as seen or null if it had been seen before
+     */
+    public String doLocalExecution(String queryKey, Query query, NestedResource queryRes, Function<String, NestedResource> queryAspectFn) {
         //boolean hasBeenExecuted = executedQueries.contains(query);
 
-        boolean hasBeenExecuted = seenQueryCache.getIfPresent("" + query) != null;
-        seenQueryCache.put("" + query, true);
+        boolean hasBeenExecuted = seenQueryGate == null
+                ? markAsSeen(queryKey)
+                : seenQueryGate.runInTurn(() -> markAsSeen(queryKey));
 
         if(!hasBeenExecuted) {
             //executedQueries.add(query);
@@ -508,8 +828,7 @@ public class LsqProcessor
         		//nowStr = queryRes.get().getProperty(p)
         		nowStr = "now";
         	} else {
-                Calendar now = Calendar.getInstance();
-                nowStr = dt.format(now.getTime());
+                nowStr = dt.format(ZonedDateTime.now());
         	}
         	
             Resource queryExecRes = queryAspectFn.apply("le-" + datasetLabel).nest("-" + nowStr).get();
@@ -527,6 +846,50 @@ public class LsqProcessor
                 rdfizeQueryExecution(queryRes.get(), query, queryExecRes, delayer, benchmarkQef, dataQef, datasetSize);
             }
         }
+
+        String result = hasBeenExecuted ? null : queryKey;
+        return result;
+    }
+
+    /**
+     * Obtain the canonical form of a query and record it for the report of the rate of deduplication.
+     * If the query cannot be canonicalized, its text serves as its canonical form.
+     */
+    protected String canonicalize(String queryStr, Query query) {
+        String result;
+        try {
+            result = QueryCanonicalizationUtils.canonicalize(query);
+        } catch(Exception e) {
+            logger.warn("Failed to canonicalize query " + queryStr, e);
+            result = "" + query;
+        }
+
+        distinctQueryTexts.add(queryStr);
+        distinctCanonicalQueries.add(result);
+        return result;
+    }
+
+    /**
+     * Log the number of distinct query texts and canonical forms of the queries parsed so far
+     */
+    public void logCanonicalizationStats() {
+        if(canonicalizeQueries) {
+            long numTexts = distinctQueryTexts.size();
+            long numCanonical = distinctCanonicalQueries.size();
+            logger.info("Canonicalization reduced " + numTexts + " distinct query texts to " + numCanonical + " canonical forms"
+                    + (numTexts == 0 ? "" : String.format(" (%.1f%% duplicates)", 100.0 * (numTexts - numCanonical) / numTexts)));
+        }
+    }
+
+    /**
+     * Atomically mark a query as seen.
+     *
+     * @param queryKey
+     * @return true if the query had already been seen before
+     */
+    protected boolean markAsSeen(String queryKey) {
+        boolean result = !seenQueries.add(queryKey);
+        return result;
     }
 
     public String getTimestampStr(Resource r) {
@@ -534,11 +897,11 @@ public class LsqProcessor
         if(r.hasProperty(PROV.atTime)) {
             Literal timestampLiteral = r.getProperty(PROV.atTime).getObject().asLiteral();
             Calendar timestamp = ((XSDDateTime)timestampLiteral.getValue()).asCalendar();
-            result = dt.format(timestamp.getTime());        
+            result = dt.format(timestamp.toInstant().atZone(ZoneId.systemDefault()));
         } else if(r.hasProperty(LSQ.sequenceId)) {
         	result = "" + r.getProperty(LSQ.sequenceId).getObject().asLiteral().getLong();
         } else {
-        	result = dt.format(new GregorianCalendar());
+        	result = dt.format(ZonedDateTime.now());
         }
         return result;
     }
@@ -546,12 +909,19 @@ public class LsqProcessor
     public void rdfizeLogRecord(NestedResource baseRes, Resource r, NestedResource queryRes, Function<String, NestedResource> queryAspectFn) {
 
         // Deal with log entry (remote execution)
+        // Hosts and sources are hashed with md5 regardless of the query id scheme, so that their IRIs remain stable
         String hashedIp = StringUtils.md5Hash("someSaltPrependedToTheIp" + r.getProperty(LSQ.host).getString()).substring(0, 16);
 
         Resource agentRes = baseRes.nest("agent-" + hashedIp).get();
 
         String timestampStr = getTimestampStr(r);
 
+        // Sequence ids are only unique within a single source
+        Resource sourceRes = r.hasProperty(PROV.hadPrimarySource) ? r.getPropertyResourceValue(PROV.hadPrimarySource) : null;
+        if(sourceRes != null && !r.hasProperty(PROV.atTime)) {
+            timestampStr = StringUtils.md5Hash(sourceRes.toString()).substring(0, 8) + "-" + timestampStr;
+        }
+
         //String timestampStr = StringUtils.md5Hash("someSaltPrependedToTheIp" + r.getProperty(LSQ.host).getString()).substring(0, 16);
 
         Resource queryExecRecRes = queryAspectFn.apply("re-" + datasetLabel).nest("-" + hashedIp + "-" + timestampStr).get();
@@ -574,12 +944,22 @@ public class LsqProcessor
             .addProperty(PROV.wasAssociatedWith, agentRes)
             ;
 
+        if(sourceRes != null) {
+            queryExecRecRes.addProperty(PROV.hadPrimarySource, sourceRes);
+        }
+
         if(datasetEndpointUri != null) {
             Resource tmp = queryExecRecRes.getModel().createResource(datasetEndpointUri);
             queryExecRecRes.addProperty(LSQ.endpoint, tmp); // TODO Make it possible to specify the dataset configuration that was used to execute the query
         }
     }
 
+    /**
+     * The version of the triples generated by {@link #rdfizeQueryStructuralFeatures(Resource, Function, Query)}.
+     * Must be increased whenever these triples change, as it invalidates the structural feature caches written before.
+     */
+    public static final int STRUCTURAL_FEATURES_VERSION = 1;
+
     public static void rdfizeQueryStructuralFeatures(Resource queryRes, Function<String, NestedResource> queryAspectFn, Query query) {
 
         //Resource execRes = queryAspectFn.apply("exec").nest("-execX").get();
@@ -1,22 +1,39 @@
 package org.aksw.simba.lsq.core;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -33,98 +50,177 @@ import org.aksw.jena_sparql_api.delay.extra.Delayer;
 import org.aksw.jena_sparql_api.delay.extra.DelayerDefault;
 import org.aksw.jena_sparql_api.stmt.SparqlQueryParserImpl;
 import org.aksw.jena_sparql_api.stmt.SparqlStmt;
-import org.aksw.jena_sparql_api.stmt.SparqlStmtIterator;
 import org.aksw.jena_sparql_api.stmt.SparqlStmtParserImpl;
-import org.aksw.jena_sparql_api.stmt.SparqlStmtQuery;
+import org.aksw.simba.lsq.parser.LinePreFilter;
 import org.aksw.simba.lsq.parser.Mapper;
+import org.aksw.simba.lsq.parser.ParseFailureStats;
+import org.aksw.simba.lsq.parser.StringMapper;
 import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.reader.BinaryLog;
+import org.aksw.simba.lsq.reader.ChunkedLogReader;
+import org.aksw.simba.lsq.reader.CompressionUtils;
+import org.aksw.simba.lsq.reader.LineIndex;
+import org.aksw.simba.lsq.reader.LogFormatProber;
+import org.aksw.simba.lsq.reader.LogFollower;
+import org.aksw.simba.lsq.reader.RdfLogReader;
+import org.aksw.simba.lsq.reader.LogFormatProber.ProbeResult;
+import org.aksw.simba.lsq.reader.SparqlStmtSplitter;
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.util.MappedFileCache;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.aksw.simba.lsq.util.QueryHashSet;
+import org.aksw.simba.lsq.util.QueryIdRegistry;
+import org.aksw.simba.lsq.util.SamplingUtils;
+import org.aksw.simba.lsq.util.SequentialGate;
 import org.aksw.simba.lsq.vocab.LSQ;
-import org.apache.commons.io.IOUtils;
+import org.aksw.simba.lsq.vocab.PROV;
 import org.apache.jena.atlas.lib.Sink;
-import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.Syntax;
-import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFWriterRegistry;
-import org.apache.jena.sparql.util.ModelUtils;
 import org.apache.jena.sparql.util.PrefixMapping2;
 import org.apache.jena.vocabulary.RDFS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.FileSystemResourceLoader;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.util.StringUtils;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Ordering;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
 import com.google.common.collect.Streams;
-import com.google.common.collect.TreeMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 public class LsqUtils {
 	private static final Logger logger = LoggerFactory.getLogger(LsqUtils.class);
 
+    /**
+     * Log formats of previously RDFized query logs and their syntaxes; records are built from the lsq:text triples
+     */
+    public static final Map<String, Lang> rdfLogFormats = ImmutableMap.of(
+            "rdf", Lang.NTRIPLES,
+            "rdf-nquads", Lang.NQUADS,
+            "rdf-turtle", Lang.TURTLE,
+            "rdf-thrift", Lang.RDFTHRIFT);
 
-	public static List<String> probeLogFormat(String resource) {
-		ResourceLoader loader = new FileSystemResourceLoader();		
-		Map<String, Function<InputStream, Stream<Resource>>> registry = LsqUtils.createDefaultLogFmtRegistry();
-		
-		Multimap<Long, String> report = probeLogFormat(registry, loader, resource);
-		
-		List<String> result = Streams.stream(report.asMap().entrySet().iterator())
-			.filter(e -> e.getKey() != 0)
-//			.limit(2)
-			.map(Entry::getValue)
-			.flatMap(Collection::stream)
-			.collect(Collectors.toList());
-
-		return result;
-	}
 
-	public static Multimap<Long, String> probeLogFormat(Map<String, Function<InputStream, Stream<Resource>>> registry, ResourceLoader loader, String filename) {
-		org.springframework.core.io.Resource resource = loader.getResource(filename);
-		
-		// succcessCountToFormat
-		Multimap<Long, String> result = TreeMultimap.create(Ordering.natural().reverse(), Ordering.natural());
-		
-		for(Entry<String, Function<InputStream, Stream<Resource>>> entry : registry.entrySet()) {
-			String formatName = entry.getKey();
-			
-			if(formatName.equals("wikidata")) {
-				System.out.println("here");
-			}
-			
-			Function<InputStream, Stream<Resource>> fn = entry.getValue();
-			
-			try(InputStream in = resource.getInputStream()) {
-				//List<Resource> items =
-				long count = fn.apply(in)
-						.limit(1000)
-						.filter(r -> !r.hasProperty(LSQ.processingError))
-						.count();
-						//.collect(Collectors.toList());
-				
-				result.put(count, formatName);
-			} catch(Exception e) {
-				// Ignore
-			}
-		}
+    /**
+     * Probe the formats of the default registry against a sample of the given resource
+     *
+     * @param resource
+     * @return The names of the formats that successfully parsed at least one record, best matches first
+     */
+    public static List<String> probeLogFormat(String resource) {
+        Map<String, Function<InputStream, Stream<Resource>>> registry = LsqUtils.createDefaultLogFmtRegistry();
 
-		return result;
-	}
+        List<ProbeResult> report = probeLogFormat(registry, new DefaultResourceLoader(), resource);
+
+        List<String> result = report.stream()
+            .filter(r -> r.getSuccesses() != 0)
+            .map(ProbeResult::getFormat)
+            .collect(Collectors.toList());
+
+        return result;
+    }
+
+    /**
+     * Read a single sample of the resource's lines and evaluate all formats of the registry against it
+     *
+     * @param registry
+     * @param loader
+     * @param filename
+     * @return The per format results, best matches first
+     */
+    public static List<ProbeResult> probeLogFormat(Map<String, Function<InputStream, Stream<Resource>>> registry, ResourceLoader loader, String filename) {
+        org.springframework.core.io.Resource resource = resolveResource(loader, filename);
+
+        byte[] sample;
+        try(InputStream in = new BufferedInputStream(CompressionUtils.decompress(resource.getInputStream(), 1))) {
+            sample = LogFormatProber.readSample(in, LogFormatProber.DEFAULT_SAMPLE_LINES, LogFormatProber.DEFAULT_MAX_SAMPLE_BYTES);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<ProbeResult> result = probeLogFormat(registry, sample);
+        return result;
+    }
+
+    public static List<ProbeResult> probeLogFormat(Map<String, Function<InputStream, Stream<Resource>>> registry, byte[] sample) {
+        Function<String, SparqlStmt> sparqlStmtParser = SparqlStmtParserImpl.create(Syntax.syntaxARQ, PrefixMapping2.Extended, true);
+
+        // Binary logs are recognized by their magic number; text formats might accidentally accept some of their bytes
+        if(BinaryLog.hasMagic(sample) && registry.containsKey(BinaryLog.FORMAT_NAME)) {
+            registry = Collections.singletonMap(BinaryLog.FORMAT_NAME, registry.get(BinaryLog.FORMAT_NAME));
+        }
+
+        List<ProbeResult> result = LogFormatProber.probe(registry, sample,
+                r -> isSuccessfulRecord(r, sparqlStmtParser),
+                Runtime.getRuntime().availableProcessors());
+        return result;
+    }
+
+    /**
+     * A record is considered successfully parsed if it has no processing error and
+     * any query it carries parses as a SPARQL query
+     *
+     * @param r
+     * @param sparqlStmtParser
+     * @return
+     */
+    public static boolean isSuccessfulRecord(Resource r, Function<String, SparqlStmt> sparqlStmtParser) {
+        boolean result = !r.hasProperty(LSQ.processingError);
+        if(result && r.hasProperty(LSQ.query)) {
+            SparqlStmt stmt = sparqlStmtParser.apply(r.getProperty(LSQ.query).getString());
+            result = stmt.isQuery() && stmt.isParsed();
+        }
+        return result;
+    }
+
+    /**
+     * Resolve a resource name with the given loader; names that do not resolve to an existing resource
+     * are interpreted as paths in the file system
+     *
+     * @param loader
+     * @param name
+     * @return
+     */
+    public static org.springframework.core.io.Resource resolveResource(ResourceLoader loader, String name) {
+        org.springframework.core.io.Resource result = loader.getResource(name);
+
+        // Retry with prepending file:
+        if(!result.exists()) {
+            Path path = Paths.get(name);
+            path = path.toAbsolutePath();
+            path = path.normalize();
+            logger.info("Attempting to open: [" + path + "]");
+            result = new FileSystemResource(path.toFile());
+        }
+
+        return result;
+    }
 
 	public static void applyDefaults(LsqConfigImpl config) {
 		// Set the default log format registry if no other has been set
 		PropertyUtils.applyIfAbsent(config::setLogFmtRegistry, config::getLogFmtRegistry, LsqUtils::createDefaultLogFmtRegistry);
+		PropertyUtils.applyIfAbsent(config::setLineLogFmtRegistry, config::getLineLogFmtRegistry, LsqUtils::createDefaultLineLogFmtRegistry);
 
 		PropertyUtils.applyIfAbsent(config::setExperimentIri, config::getExperimentIri, () -> "http://example.org/unnamed-experiment");
 		// If one connection has been set, use it for the other as well
@@ -136,40 +232,68 @@ public class LsqUtils {
         Map<String, Function<InputStream, Stream<Resource>>> result = new HashMap<>();
 
         // Load line based log formats
-        LsqUtils.wrap(result, WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl")));
+        LsqUtils.wrap(result, createDefaultLineLogFmtRegistry());
 
         // Add custom RDF based log format(s)
-        result.put("rdf", (in) -> LsqUtils.createResourceStreamFromRdf(in, Lang.NTRIPLES, "http://example.org/"));
+        rdfLogFormats.forEach((name, lang) ->
+            result.put(name, (in) -> LsqUtils.createResourceStreamFromRdf(in, lang, "http://example.org/")));
 
         // Add multi-line sparql format
         result.put("sparql", (in) -> LsqUtils.createSparqlStream(in));
+
+        // Add the binary format of pre-parsed logs
+        result.put(BinaryLog.FORMAT_NAME, BinaryLog::createStream);
         
         return result;
     }
     
+    protected static final Supplier<Map<String, String>> defaultLogPatterns = Suppliers.memoize(() ->
+            WebLogParser.loadPatterns(RDFDataMgr.loadModel("default-log-formats.ttl")));
+
+    public static Map<String, Mapper> createDefaultLineLogFmtRegistry() {
+        Map<String, Mapper> result = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+        return result;
+    }
+
+    /**
+     * Create a stream of log records from a sequence of SPARQL statements.
+     * The input is split incrementally, and each record carries the text of a single statement.
+     * Statements are only parsed by the {@link LsqProcessor}, hence syntax errors and non-query statements
+     * only affect their own record.
+     *
+     * @param in
+     * @return
+     */
     public static Stream<Resource> createSparqlStream(InputStream in) {
-    	String str;
-		try {
-			str = IOUtils.toString(in, StandardCharsets.UTF_8);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
 
-		// Note: Non-query statements will cause an exception
-    	Stream<Resource> result = 
-    			Streams.stream(new SparqlStmtIterator(SparqlStmtParserImpl.create(Syntax.syntaxARQ, true), str))
-//    			.map(SparqlStmt::getOriginalString)
-    			.map(SparqlStmt::getAsQueryStmt)
-    			.map(SparqlStmtQuery::getQuery)
-    			.map(Object::toString)
-    			.map(queryStr -> ModelFactory.createDefaultModel().createResource().addLiteral(LSQ.query, queryStr)
-    			);
-    	
-    	return result;
+        Stream<Resource> result = Streams.stream(new SparqlStmtSplitter(reader))
+                .map(stmtStr -> createLogRecord().addLiteral(LSQ.query, stmtStr))
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+        return result;
     }
 
 	
     public static Sink<Resource> createWriter(LsqConfigImpl config) throws FileNotFoundException {
+        return createWriter(config, null);
+    }
+
+    /**
+     * Create a writer for the config's output format
+     *
+     * @param config
+     * @param out The stream to write to; if null, the config's output file or stdout is used
+     * @return
+     * @throws FileNotFoundException
+     */
+    public static Sink<Resource> createWriter(LsqConfigImpl config, PrintStream out) throws FileNotFoundException {
         String outRdfFormat = config.getOutRdfFormat();
         File outFile = config.getOutFile();
 
@@ -181,10 +305,11 @@ public class LsqUtils {
             throw new RuntimeException("No rdf format found for " + outRdfFormat);
         }
 
-        PrintStream out;
         boolean doClose;
 
-        if(outFile == null) {
+        if(out != null) {
+            doClose = true;
+        } else if(outFile == null) {
             out = System.out;
             doClose = false;
         } else {
@@ -192,7 +317,7 @@ public class LsqUtils {
             doClose = true;
         }
 
-        Sink<Resource> result = new SinkIO<>(out, doClose, (o, r) -> RDFDataMgr.write(out, r.getModel(), rdfFormat));
+        Sink<Resource> result = new SinkIO<>(out, doClose, (o, r) -> RDFDataMgr.write(o, r.getModel(), rdfFormat));
         return result;
     }
 
@@ -207,40 +332,148 @@ public class LsqUtils {
         Stream<String> stream = reader.lines();
 
         Stream<Resource> result = stream
-                .map(line -> {
-                    Resource r = ModelFactory.createDefaultModel().createResource();
-                    r.addLiteral(RDFS.label, line);
+                .map(line -> parseLogLine(mapper, line))
+                ;
 
-                    boolean parsed;
-                    try {
-                        parsed = mapper.parse(r, line) != 0;
-                    } catch(Exception e) {
-                        parsed = false;
-                        logger.warn("Parser error", e);
-                    }
+        return result;
+    }
 
-                    if(!parsed) {
-                        r.addLiteral(LSQ.processingError, "Failed to parse log line");
-                    }
+    /**
+     * Parse those lines that pass the pre-filter. Records are assigned the index of their line as sequence id,
+     * so that the ids are the same with and without filtering.
+     *
+     * @param lines
+     * @param preFilter The filter; may be null
+     * @param mapper
+     * @return
+     */
+    public static Stream<Resource> parseLines(Stream<? extends CharSequence> lines, LinePreFilter preFilter, Mapper mapper) {
+        Stream<Resource> result = Streams.mapWithIndex(lines, (line, i) -> {
+            Resource r = null;
+            if(preFilter == null || preFilter.test(line)) {
+                r = parseLogLine(mapper, line);
+                if(!r.hasProperty(LSQ.sequenceId)) {
+                    r.addLiteral(LSQ.sequenceId, i);
+                }
+            }
+            return r;
+        })
+        .filter(Objects::nonNull);
 
-                    return r;
-                })
-                ;
+        return result;
+    }
+
+    /**
+     * Create the failure stats for the line mapper of a single input.
+     * Up to the given number of failing lines are logged as they occur.
+     *
+     * @param maxLoggedFailures The number of failing lines to log; null for none
+     * @return
+     */
+    public static ParseFailureStats createParseFailureStats(Long maxLoggedFailures) {
+        return new ParseFailureStats().setMaxLoggedFailures(maxLoggedFailures == null ? 0 : maxLoggedFailures);
+    }
+
+    /**
+     * Let a line mapper record its parse failures in the given stats.
+     * Mappers of the registry are shared across inputs, hence each input parses with a view of its own.
+     *
+     * @param mapper The mapper; may be null
+     * @param stats
+     * @return A mapper which records its failures in the stats, or the given mapper if it does not count failures
+     */
+    public static Mapper withFailureStats(Mapper mapper, ParseFailureStats stats) {
+        return mapper instanceof StringMapper ? ((StringMapper)mapper).withFailureStats(stats) : mapper;
+    }
 
+    /**
+     * @param stats The failure stats of an input
+     * @param inputName
+     * @return An action which logs a summary of the failures of the input
+     */
+    public static Runnable summarizeParseFailures(ParseFailureStats stats, String inputName) {
+        return () -> {
+            Map<String, Long> failures = stats.getFailureCounts();
+            if(!failures.isEmpty()) {
+                logger.warn("Failed to parse " + stats.getNumFailures() + " lines of " + inputName + "; failures by field: " + failures);
+            }
+        };
+    }
+
+    /**
+     * Create the pre-filter for a line based log format: Unless the config specifies patterns or disables
+     * pre-filtering, the patterns are derived from the pattern of the format.
+     *
+     * @param config
+     * @param logFormat
+     * @return The filter or null if lines are not to be filtered
+     */
+    public static LinePreFilter createPreFilter(LsqConfigImpl config, String logFormat) {
+        List<String> patterns = null;
+        if(config.isPreFilter()) {
+            patterns = config.getPreFilterPatterns();
+            if(patterns == null) {
+                String logPattern = defaultLogPatterns.get().get(logFormat);
+                patterns = logPattern == null ? null : LinePreFilter.getDefaultPatterns(logPattern);
+            }
+        }
+
+        LinePreFilter result = patterns == null || patterns.isEmpty() ? null : new LinePreFilter(patterns);
+        if(result != null) {
+            logger.info("Pre-filtering lines of format " + logFormat + " by " + patterns);
+        }
         return result;
     }
 
+    /**
+     * Create a blank resource for the fields of a single log record.
+     * The resource is backed by a {@link CompactGraph}, as a full in-memory graph per record
+     * would dominate the heap usage when processing large logs.
+     *
+     * @return
+     */
+    public static Resource createLogRecord() {
+        Resource result = CompactGraph.createModel().createResource();
+        return result;
+    }
 
-    public static Stream<Resource> createResourceStreamFromRdf(InputStream in, Lang lang, String baseIRI) {
-        Iterator<Triple> it = RDFDataMgr.createIteratorTriples(in, lang, baseIRI);
+    /**
+     * Parse a single log line into a fresh log record.
+     * Lines that cannot be parsed yield a record with an LSQ.processingError and
+     * the line as its RDFS.label; the raw line is not retained for successfully parsed records.
+     *
+     * @param mapper
+     * @param line The line; may be a view on a buffer that is only valid during this call
+     * @return
+     */
+    public static Resource parseLogLine(Mapper mapper, CharSequence line) {
+        Resource r = createLogRecord();
+
+        boolean parsed;
+        try {
+            parsed = mapper.parse(r, line) != 0;
+        } catch(Exception e) {
+            parsed = false;
+            logger.warn("Parser error", e);
+        }
+
+        if(!parsed) {
+            r
+                .addLiteral(RDFS.label, line.toString())
+                .addLiteral(LSQ.processingError, "Failed to parse log line");
+        }
 
-        // Filter out triples that do not have the right predicateS
-        Stream<Triple> s = Streams.stream(it)
-                .filter(t -> t.getPredicate().equals(LSQ.text.asNode()));
+        return r;
+    }
 
-        Stream<Resource> result = s.map(t -> ModelUtils.convertGraphNodeToRDFNode(t.getSubject(), ModelFactory.createDefaultModel()).asResource()
-                    .addLiteral(LSQ.query, t.getObject().getLiteralValue()));
 
+    /**
+     * Create a stream of records from the {@link LSQ#text} triples of RDF data.
+     *
+     * @see RdfLogReader
+     */
+    public static Stream<Resource> createResourceStreamFromRdf(InputStream in, Lang lang, String baseIRI) {
+        Stream<Resource> result = RdfLogReader.createStream(in, lang, baseIRI);
         return result;
     }
 
@@ -260,31 +493,370 @@ public class LsqUtils {
 
 
     public static Stream<Resource> createReader(LsqConfigImpl config) throws IOException {
+        return createReader(config, (LsqCheckpoint)null);
+    }
 
-    	List<String> inputResources = config.getInQueryLogFiles();
+    /**
+     * Create a reader for the config's input resources.
+     * If a checkpoint is given, the records up to and including its last committed one are skipped;
+     * they are still parsed though, as the positions of the records in (possibly compressed) inputs are not known.
+     *
+     * @param config
+     * @param resumeFrom
+     * @return
+     * @throws IOException
+     */
+    public static Stream<Resource> createReader(LsqConfigImpl config, LsqCheckpoint resumeFrom) throws IOException {
+
+    	List<String> inputResources = expandInputResources(config.getInQueryLogFiles());
 		logger.info("Input resources: " + inputResources);
 
-//		for(String str : inputResources) {
-//			PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher(str);
-//			//pathMatcher.
-//			Files.walkFileTree(start, visitor)
-//			
-//		}
-//		
-    	Stream<Resource> result = inputResources.stream()
-    			.flatMap(inputResource -> {
-					try {
-						return createReader(config, inputResource);
-					} catch (IOException e) {
-						throw new RuntimeException(e);
+		// A followed log never ends, so any further input would never be reached
+		if(config.isFollow() && inputResources.size() != 1) {
+			throw new RuntimeException("Following requires exactly one input file, got " + inputResources);
+		}
+
+		// Line ranges refer to the lines of a single file
+		if((config.getLineOffset() != null || config.getLineLimit() != null) && inputResources.size() != 1) {
+			throw new IllegalArgumentException("A range of lines requires exactly one input, got " + inputResources);
+		}
+
+		// A sample depends on all records, so resuming a sampled run redraws the same sample and skips within it
+		Integer sampleSize = config.getSampleSize();
+		boolean isSampling = sampleSize != null;
+		if(config.getSampleBy() != null && !isSampling) {
+			throw new IllegalArgumentException("Strata for sampling require a sample size");
+		}
+		if(isSampling && config.isFollow()) {
+			throw new IllegalArgumentException("A followed log cannot be sampled, as sampling requires the end of the input");
+		}
+		LsqCheckpoint skipInputsFrom = isSampling ? null : resumeFrom;
+
+		List<Integer> inputIndices = new ArrayList<>();
+		for(int i = skipInputsFrom == null ? 0 : skipInputsFrom.getInputIndex(); i < inputResources.size(); ++i) {
+			inputIndices.add(i);
+		}
+
+		if(resumeFrom != null) {
+			if(!resumeFrom.getInputs().equals(inputResources)) {
+				throw new RuntimeException("Inputs " + inputResources + " differ from those of the checkpoint: " + resumeFrom.getInputs());
+			}
+			logger.info("Resuming after " + resumeFrom.getRecords() + " records");
+		}
+
+		// Records of several files are tagged with the file they originate from
+		boolean tagSource = inputResources.size() > 1;
+
+		Function<Integer, Stream<Resource>> open = inputIndex -> {
+			String inputResource = inputResources.get(inputIndex);
+			Stream<Resource> r;
+			try {
+				r = createReader(config, inputResource);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+
+			// Skipping happens after the assignment of sequence ids
+			if(skipInputsFrom != null && inputIndex == skipInputsFrom.getInputIndex()) {
+				r = r.skip(skipInputsFrom.getInputRecords());
+			}
+
+			if(tagSource) {
+				Resource source = ResourceFactory.createResource(toSourceIri(inputResource));
+				// Records of binary logs may carry the source of the raw log already
+				r = r.peek(x -> {
+					if(!x.hasProperty(PROV.hadPrimarySource)) {
+						x.addProperty(PROV.hadPrimarySource, source);
 					}
 				});
-    	
+			}
+			return r;
+		};
+
+		Integer concurrentInputFiles = config.getConcurrentInputFiles();
+		int maxOpen = concurrentInputFiles == null ? 1 : concurrentInputFiles;
+
+		// Records are emitted in the order of the files and within a file in the order of their sequence ids.
+		// The streams are not concatenated with flatMap, as its iterator would read a whole file (or a followed log forever) before emitting a record
+    	Stream<Resource> result = maxOpen <= 1
+    			? ParallelStreamUtils.concat(inputIndices, open)
+    			: ParallelStreamUtils.concatPrefetched(inputIndices, open, maxOpen, 1024, "lsq-input-%d");
+
+    	// Sampling takes place before any of the expensive processing
+    	if(isSampling) {
+    		String sampleBy = config.getSampleBy();
+    		long seed = Optional.ofNullable(config.getSampleSeed()).orElse(0l);
+    		logger.info("Sampling " + sampleSize + " records" + (sampleBy == null ? "" : " per " + sampleBy) + " with seed " + seed);
+
+    		result = SamplingUtils.sample(result, sampleSize, createSampleStratumFunction(sampleBy), seed);
+    		if(resumeFrom != null) {
+    			result = result.skip(resumeFrom.getRecords());
+    		}
+    	}
+
     	return result;
     }
+
+    /**
+     * Create the function that maps log records to the strata of a sample:
+     * 'host', 'query' (i.e. the distinct query strings) or a time bucket of 'month', 'day' or 'hour'.
+     * Time buckets are taken from the lexical form of the record's timestamp, hence they refer to the time zone of the log.
+     *
+     * @param sampleBy The name of the strata; null for a plain uniform sample
+     * @return The function or null for a plain uniform sample
+     */
+    public static Function<Resource, Object> createSampleStratumFunction(String sampleBy) {
+        Function<Resource, Object> result;
+        if(sampleBy == null) {
+            result = null;
+        } else {
+            switch(sampleBy) {
+            case "host": result = r -> getString(r, LSQ.host); break;
+            // Raw web log records carry the query only within their request; it is extracted without altering the record
+            case "query": result = WebLogParser::getQuery; break;
+            case "month": result = r -> getTimeBucket(r, 7); break;
+            case "day": result = r -> getTimeBucket(r, 10); break;
+            case "hour": result = r -> getTimeBucket(r, 13); break;
+            default: throw new IllegalArgumentException("Unknown strata for sampling: " + sampleBy);
+            }
+        }
+        return result;
+    }
+
+    protected static String getString(Resource r, Property p) {
+        Statement stmt = r.getProperty(p);
+        String result = stmt == null ? null : stmt.getString();
+        return result;
+    }
+
+    protected static String getTimeBucket(Resource r, int prefixLength) {
+        Statement stmt = r.getProperty(PROV.atTime);
+        String lex = stmt == null ? null : stmt.getLiteral().getLexicalForm();
+        String result = lex == null ? null : lex.substring(0, Math.min(prefixLength, lex.length()));
+        return result;
+    }
+
+    /**
+     * Expand directories and globs to the sorted list of the regular files they contain.
+     * Directories are traversed recursively. Globs follow the syntax of {@link FileSystem#getPathMatcher(String)}, such as
+     * 'logs/2019-*.log.gz' or 'logs/**.gz'. Other entries, such as URLs, are passed on as they are.
+     *
+     * @param inputResources
+     * @return
+     * @throws IOException
+     */
+    public static List<String> expandInputResources(List<String> inputResources) throws IOException {
+        List<String> result = new ArrayList<>();
+        for(String str : inputResources) {
+            int globStart = StringUtils.isEmpty(str) ? -1 : indexOfGlobChar(str);
+            if(globStart >= 0) {
+                // Walk the longest directory prefix without glob characters
+                int baseEnd = Math.max(str.lastIndexOf('/', globStart), str.lastIndexOf(File.separatorChar, globStart));
+                Path base = Paths.get(baseEnd < 0 ? "." : baseEnd == 0 ? "/" : str.substring(0, baseEnd)).toAbsolutePath().normalize();
+                Path pattern = Paths.get(str).toAbsolutePath().normalize();
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+                List<String> matches = listFiles(base, p -> matcher.matches(p.toAbsolutePath().normalize()));
+                if(matches.isEmpty()) {
+                    logger.warn("No files matched " + str);
+                }
+                result.addAll(matches);
+            } else if(!StringUtils.isEmpty(str) && !str.contains(":") && Files.isDirectory(Paths.get(str))) {
+                result.addAll(listFiles(Paths.get(str), p -> true));
+            } else {
+                result.add(str);
+            }
+        }
+        return result;
+    }
+
+    protected static int indexOfGlobChar(String str) {
+        int result = -1;
+        for(int i = 0; i < str.length(); ++i) {
+            if("*?[{".indexOf(str.charAt(i)) >= 0) {
+                result = i;
+                break;
+            }
+        }
+        return result;
+    }
+
+    protected static List<String> listFiles(Path base, Predicate<Path> filter) throws IOException {
+        List<String> result;
+        if(!Files.isDirectory(base)) {
+            result = Collections.emptyList();
+        } else {
+            try(Stream<Path> stream = Files.walk(base)) {
+                result = stream
+                        .filter(Files::isRegularFile)
+                        .filter(filter)
+                        .map(Path::toString)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The IRI by which records refer to the input resource they originate from
+     *
+     * @param inputResource
+     * @return
+     */
+    public static String toSourceIri(String inputResource) {
+        String result = inputResource.contains(":")
+                ? inputResource
+                : Paths.get(inputResource).toAbsolutePath().normalize().toUri().toString();
+        return result;
+    }
     
+    /**
+     * Create a reader that memory maps a line based log file and parses it in chunks.
+     * With more than one thread, chunks are parsed concurrently.
+     * Records are emitted in file order with the same sequence ids as with sequential reading.
+     *
+     * @param path
+     * @param mapper
+     * @param numThreads
+     * @return
+     * @throws IOException
+     */
+    public static Stream<Resource> createChunkedReader(Path path, Mapper mapper, int numThreads) throws IOException {
+        return createChunkedReader(path, null, line -> parseLogLine(mapper, line), numThreads);
+    }
+
+    /**
+     * Create a chunked reader with a custom line parser, which must be thread-safe.
+     * Lines rejected by the preFilter or for which the parser returns null are skipped.
+     */
+    public static Stream<Resource> createChunkedReader(Path path, LinePreFilter preFilter, Function<? super CharSequence, ? extends Resource> lineParser, int numThreads) throws IOException {
+        return createChunkedReader(path, null, 0, preFilter, lineParser, numThreads);
+    }
+
+    /**
+     * Create a chunked reader for the lines within a byte range of a file
+     *
+     * @param byteRange The range, starting at the beginning of a line; null for the whole file
+     * @param firstLineIndex The index of the first line of the range, which is the sequence id of its record
+     */
+    public static Stream<Resource> createChunkedReader(Path path, Range<Long> byteRange, long firstLineIndex, LinePreFilter preFilter, Function<? super CharSequence, ? extends Resource> lineParser, int numThreads) throws IOException {
+        logger.info("Reading " + path + " in chunks with " + numThreads + " threads");
+
+        // With a single thread, lines are parsed lazily by the consumer
+        ExecutorService executor = numThreads <= 1
+                ? null
+                : ParallelStreamUtils.newFixedThreadPool("lsq-reader-%d", numThreads);
+
+        Stream<Resource> result = ChunkedLogReader.createStream(path, byteRange, firstLineIndex, preFilter, lineParser,
+                executor, numThreads * 2, ChunkedLogReader.DEFAULT_CHUNK_SIZE);
+
+        if(executor != null) {
+            result = result.onClose(executor::shutdownNow);
+        }
+
+        return result;
+    }
+
+    /**
+     * Create a reader for a binary log file whose blocks are decoded by the given number of threads
+     *
+     * @see BinaryLog
+     */
+    public static Stream<Resource> createBinaryLogReader(Path path, int numThreads) throws IOException {
+        logger.info("Reading binary log " + path + " with " + numThreads + " threads");
+
+        ExecutorService executor = numThreads <= 1
+                ? null
+                : ParallelStreamUtils.newFixedThreadPool("lsq-reader-%d", numThreads);
+
+        Stream<Resource> result = BinaryLog.createStream(path, executor, numThreads * 2);
+
+        if(executor != null) {
+            result = result.onClose(executor::shutdownNow);
+        }
+
+        return result;
+    }
+
+    /**
+     * Open the sidecar line index of a log file, if there is an up-to-date one
+     *
+     * @param path
+     * @return The index or null if there is none or it is stale
+     * @throws IOException
+     */
+    public static LineIndex openLineIndex(Path path) throws IOException {
+        Path indexPath = LineIndex.getDefaultIndexPath(path);
+        if(!Files.exists(indexPath)) {
+            logger.info("No line index " + indexPath + " found; lines before the requested range are scanned");
+            return null;
+        }
+
+        LineIndex result = LineIndex.open(indexPath);
+        if(!result.isValidFor(path)) {
+            logger.warn("Line index " + indexPath + " is stale; lines before the requested range are scanned");
+            result.close();
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Restrict a stream of records to those whose sequence id lies within [offset, offset + limit).
+     * Sequence ids must be ascending; the stream ends once a record beyond the range is seen.
+     *
+     * @param stream
+     * @param offset
+     * @param limit The number of sequence ids of the range; null for no limit
+     * @return
+     */
+    public static Stream<Resource> sliceBySequenceId(Stream<Resource> stream, long offset, Long limit) {
+        long end = limit == null ? Long.MAX_VALUE : offset + limit;
+        Iterator<Resource> it = stream.iterator();
+
+        Iterator<Resource> sliceIt = new AbstractIterator<Resource>() {
+            @Override
+            protected Resource computeNext() {
+                while(it.hasNext()) {
+                    Resource r = it.next();
+                    long id = r.getProperty(LSQ.sequenceId).getLong();
+                    if(id >= end) {
+                        break;
+                    } else if(id >= offset) {
+                        return r;
+                    }
+                }
+                return endOfData();
+            }
+        };
+
+        return Streams.stream(sliceIt).onClose(stream::close);
+    }
+
+    /**
+     * Pick the best matching format from the results of probing an input
+     *
+     * @param report
+     * @param inputName Name of the input for logging
+     * @return
+     */
+    public static String selectLogFormat(List<ProbeResult> report, String inputName) {
+        ProbeResult best = report.stream()
+                .filter(r -> r.getSuccesses() != 0)
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("No log format matched " + inputName + "; candidates: " + report));
+
+        logger.info("Probed log format of " + inputName + ": " + best + "; candidates: " + report);
+
+        String result = best.getFormat();
+        return result;
+    }
+
     /**
      * Method that creates a reader for a specific inputResource under the give config.
+     * If the config does not specify a log format, the format is probed on a sample of the input.
+     * If the config specifies a range of lines, only the records of these lines are emitted.
      * The config's inputResources are ignored.
      * 
      * @param config
@@ -293,48 +865,134 @@ public class LsqUtils {
      * @throws IOException
      */
     public static Stream<Resource> createReader(LsqConfigImpl config, String inputResource) throws IOException {
+        Long firstItemOffset = config.getFirstItemOffset();
+        String logFormat = config.getInQueryLogFormat();
+
+        Long lineOffset = config.getLineOffset();
+        Long lineLimit = config.getLineLimit();
+        boolean isRange = lineOffset != null || lineLimit != null;
+        boolean isRangeApplied = false;
+
+        Integer readerThreads = config.getReaderThreads();
+        int numThreads = readerThreads == null ? 1 : readerThreads;
+        Map<String, Mapper> lineLogFmtRegistry = config.getLineLogFmtRegistry();
+
+        Stream<Resource> result = null;
+        LinePreFilter preFilter = null;
+        // The mapper of line based formats, whose parse failures are summarized
+        Mapper usedLineMapper = null;
+        ParseFailureStats failureStats = createParseFailureStats(config.getMaxLoggedParseFailures());
         InputStream in;
         if(inputResource != null) {
         	// TODO We could make the resource loader part of the config
     		ResourceLoader loader = new DefaultResourceLoader();
-    		org.springframework.core.io.Resource resource = loader.getResource(inputResource);
-    		
-    		// Retry with prepending file:
-    		if(!resource.exists()) {
-    			Path path = Paths.get(inputResource);
-    			path = path.toAbsolutePath();
-    			path = path.normalize();
-    			logger.info("Attempting to open: [" + path + "]");
-    			resource = new FileSystemResource(path.toFile());
+    		org.springframework.core.io.Resource resource = resolveResource(loader, inputResource);
+
+    		if(logFormat == null) {
+    		    logFormat = selectLogFormat(probeLogFormat(config.getLogFmtRegistry(), loader, inputResource), inputResource);
     		}
+    		Mapper lineMapper = lineLogFmtRegistry == null ? null : withFailureStats(lineLogFmtRegistry.get(logFormat), failureStats);
+    		usedLineMapper = lineMapper;
+
+    		// N-Triples and N-Quads logs are line based as well
+    		Lang rdfLang = rdfLogFormats.get(logFormat);
+    		Function<CharSequence, Resource> lineParser = lineMapper != null
+    		        ? line -> parseLogLine(lineMapper, line)
+    		        : rdfLang != null && RdfLogReader.isLineBased(rdfLang) ? RdfLogReader::parseLine : null;
+
+    		// RDF lines are filtered by their predicate already
+    		preFilter = lineMapper == null ? null : createPreFilter(config, logFormat);
     		
 //            File inputFile = new File(inputResource);
 //            inputFile = inputFile.getAbsoluteFile();
-            in = resource.getInputStream();
+
+    		if(config.isFollow()) {
+    		    // A live log is tailed; appended lines are parsed as they arrive
+    		    if(lineMapper == null || !resource.isFile()) {
+    		        throw new RuntimeException("Following requires a line based log format and a file, got '" + logFormat + "' and " + inputResource);
+    		    }
+    		    result = parseLines(LogFollower.follow(resource.getFile().toPath()), preFilter, lineMapper);
+    		    in = null;
+    		// Uncompressed binary logs are decoded in blocks which are read with positional reads
+    		} else if(BinaryLog.FORMAT_NAME.equals(logFormat) && resource.isFile() && CompressionUtils.detect(resource.getFile().toPath()) == null) {
+    		    result = createBinaryLogReader(resource.getFile().toPath(), numThreads);
+    		    in = null;
+    		// Line based logs in uncompressed files are memory mapped and can be split into chunks which are parsed concurrently
+    		} else if(lineParser != null && resource.isFile() && CompressionUtils.detect(resource.getFile().toPath()) == null) {
+    		    Path path = resource.getFile().toPath();
+
+    		    // With a line index, a range of lines is read by seeking to its first byte
+    		    LineIndex lineIndex = isRange ? openLineIndex(path) : null;
+    		    if(lineIndex != null) {
+    		        long firstLine = lineOffset == null ? 0 : lineOffset;
+    		        Range<Long> byteRange;
+    		        try {
+    		            byteRange = lineIndex.getByteRange(firstLine, lineLimit);
+    		        } finally {
+    		            lineIndex.close();
+    		        }
+    		        logger.info("Reading lines " + firstLine + (lineLimit == null ? " onwards" : " to " + (firstLine + lineLimit - 1)) + " of " + path + " from bytes " + byteRange);
+
+    		        result = createChunkedReader(path, byteRange, Math.min(firstLine, lineIndex.getNumLines()), preFilter, lineParser, numThreads);
+    		        isRangeApplied = true;
+    		    } else {
+    		        result = createChunkedReader(path, preFilter, lineParser, numThreads);
+    		    }
+    		    in = null;
+    		} else {
+    		    in = CompressionUtils.decompress(resource.getInputStream(), numThreads);
+    		}
         } else {
-            in = System.in;
+            if(config.isFollow()) {
+                throw new RuntimeException("Following requires an input file");
+            }
+            in = CompressionUtils.decompress(System.in, numThreads);
+            if(logFormat == null) {
+                // Standard input can only be read once, hence the sample is replayed in front of the remaining input
+                in = new BufferedInputStream(in);
+                byte[] sample = LogFormatProber.readSample(in, LogFormatProber.DEFAULT_SAMPLE_LINES, LogFormatProber.DEFAULT_MAX_SAMPLE_BYTES);
+                logFormat = selectLogFormat(probeLogFormat(config.getLogFmtRegistry(), sample), "standard input");
+                in = new SequenceInputStream(new ByteArrayInputStream(sample), in);
+            }
         }
-        
-        boolean doClose = in != System.in;
-
 
-        Long firstItemOffset = config.getFirstItemOffset();
-        String logFormat = config.getInQueryLogFormat();
+        boolean doClose = in != null && inputResource != null;
+        InputStream closeIn = in;
 
-        Function<InputStream, Stream<Resource>> webLogParser = config.getLogFmtRegistry().get(logFormat);
 
-        //Mapper webLogParser = config.getLogFmtRegistry().get(logFormat);
-        if(webLogParser == null) {
-            throw new RuntimeException("No log format parser found for '" + logFormat + "'");
+        // Line based logs from streams are filtered after decoding, but still before any regex matching
+        Mapper streamLineMapper = result != null || lineLogFmtRegistry == null ? null : withFailureStats(lineLogFmtRegistry.get(logFormat), failureStats);
+        if(streamLineMapper != null) {
+            preFilter = createPreFilter(config, logFormat);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            result = parseLines(reader.lines(), preFilter, streamLineMapper);
+            usedLineMapper = streamLineMapper;
         }
 
-//        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        if(result == null) {
+            Function<InputStream, Stream<Resource>> webLogParser = config.getLogFmtRegistry().get(logFormat);
 
-//        Stream<String> stream = reader.lines();
+            //Mapper webLogParser = config.getLogFmtRegistry().get(logFormat);
+            if(webLogParser == null) {
+                throw new RuntimeException("No log format parser found for '" + logFormat + "'");
+            }
 
-        Stream<Resource> result = webLogParser.apply(in);
-        if(firstItemOffset != null) {
-            result = result.limit(firstItemOffset);
+//            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+//            Stream<String> stream = reader.lines();
+
+            result = webLogParser.apply(in);
+        }
+
+        if(preFilter != null) {
+            LinePreFilter f = preFilter;
+            String inputName = inputResource == null ? "standard input" : inputResource;
+            result = result.onClose(() -> logger.info("Pre-filter on " + inputName + " passed " + f.getPassed() + " and dropped " + f.getDropped() + " lines"));
+        }
+
+        if(usedLineMapper instanceof StringMapper) {
+            String inputName = inputResource == null ? "standard input" : inputResource;
+            result = result.onClose(summarizeParseFailures(failureStats, inputName));
         }
 
         // Enrich potentially missing information
@@ -357,12 +1015,21 @@ public class LsqUtils {
         }).onClose(() -> {
 			try {
 				if(doClose) {
-					in.close();
+					closeIn.close();
 				}
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
 		});
+
+        // Without an index, the lines of a range are parsed and dropped by their sequence id
+        if(isRange && !isRangeApplied) {
+            result = sliceBySequenceId(result, lineOffset == null ? 0 : lineOffset, lineLimit);
+        }
+
+        if(firstItemOffset != null) {
+            result = result.limit(firstItemOffset);
+        }
         
         //Model logModel = ModelFactory.createDefaultModel();
 
@@ -413,6 +1080,257 @@ public class LsqUtils {
         return result;
     }
 
+    /**
+     * Apply the processor to the items of the reader.
+     * If the config demands more than one worker thread, items are processed concurrently;
+     * the output order and the decisions about which queries to execute remain the same as
+     * in sequential processing.
+     * The returned stream may contain null items for log entries that did not yield a query.
+     *
+     * @param config
+     * @param itemReader
+     * @param itemProcessor
+     * @return
+     */
+    public static Stream<Resource> process(LsqConfigImpl config, Stream<Resource> itemReader, LsqProcessor itemProcessor) {
+        Integer workerThreads = config.getWorkerThreads();
+        int numThreads = workerThreads == null ? 1 : workerThreads;
+
+        Stream<Resource> result;
+        if(config.isGroupByQuery()) {
+            result = processGrouped(config, itemReader, itemProcessor);
+        } else if(config.isFollow() && (numThreads > 1 || config.isStagedPipeline())) {
+            // Concurrent processing reads ahead of the results it emits; on a live log this would hold back
+            // results until further lines are appended
+            logger.info("Processing followed log entries sequentially");
+            result = itemReader.map(itemProcessor);
+        } else if(config.isStagedPipeline()) {
+            result = processStaged(config, itemReader, itemProcessor);
+        } else if(numThreads <= 1) {
+            result = itemReader.map(itemProcessor);
+        } else {
+            logger.info("Processing log entries with " + numThreads + " worker threads");
+
+            SequentialGate gate = new SequentialGate();
+            itemProcessor.setSeenQueryGate(gate);
+            SequentialGate queryIdGate = new SequentialGate();
+            itemProcessor.setQueryIdGate(queryIdGate);
+
+            ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("lsq-worker-%d", numThreads);
+
+            // The index of an item in the input serves as its log entry index and as its ticket for the gates
+            Stream<Entry<Long, Resource>> indexedItems = Streams.mapWithIndex(itemReader, (r, i) -> Maps.immutableEntry(i, r));
+
+            result = ParallelStreamUtils.<Entry<Long, Resource>, Resource>mapOrdered(indexedItems, e -> {
+                    gate.bind(e.getKey());
+                    queryIdGate.bind(e.getKey());
+                    try {
+                        return itemProcessor.apply(e.getValue(), e.getKey());
+                    } finally {
+                        queryIdGate.unbind();
+                        gate.unbind();
+                    }
+                }, executor, numThreads * 4)
+                .onClose(executor::shutdownNow);
+        }
+
+        return result;
+    }
+
+    /**
+     * Process log entries in two passes such that each distinct query is analyzed and executed only once.
+     *
+     * The first pass reads all log entries and groups them by the hash of their query string; it takes place when this method is called.
+     * The second pass parses the query of each group once, merges groups whose queries yield the same query resource
+     * (such as queries that differ only in whitespace), and runs the RDFizers once per query, attaching the remote
+     * executions of all log entries of the group to it. Groups are emitted in the order of the first occurrences of their queries.
+     *
+     * The output comprises the same triples as that of processing the log entries one by one, without the repetitions
+     * of the query-level triples. All log entries are held in memory until the end of the input.
+     *
+     * @param config
+     * @param itemReader
+     * @param itemProcessor
+     * @return
+     */
+    public static Stream<Resource> processGrouped(LsqConfigImpl config, Stream<Resource> itemReader, LsqProcessor itemProcessor) {
+        if(config.isFollow()) {
+            throw new IllegalArgumentException("Grouping by query requires the end of the input and thus cannot follow a log");
+        }
+
+        Integer workerThreads = config.getWorkerThreads();
+        int numThreads = workerThreads == null ? 1 : workerThreads;
+        boolean reuseLogIri = itemProcessor.isReuseLogIri();
+
+        // Pass 1: Group the log entries by the 128 bit murmur3 hash of their query string;
+        // only the first log entry of a group retains the query string itself
+        Map<HashCode, List<Resource>> queryToEntries = new LinkedHashMap<>();
+        long numEntries = 0;
+        Iterator<Resource> it = itemReader.iterator();
+        while(it.hasNext()) {
+            Resource r = it.next();
+            ++numEntries;
+
+            WebLogParser.extractQuery(r);
+            String queryStr = r.hasProperty(LSQ.processingError) || !r.hasProperty(LSQ.query)
+                    ? null
+                    : r.getProperty(LSQ.query).getString();
+
+            if(queryStr == null) {
+                // Yields no query, but is accounted for and reported by the processor
+                itemProcessor.parse(r);
+            } else {
+                // With reused log IRIs, the query resource may depend on the log entry
+                Hasher hasher = Hashing.murmur3_128().newHasher();
+                if(reuseLogIri && r.isURIResource()) {
+                    hasher.putString(r.getURI(), StandardCharsets.UTF_8).putString(" ", StandardCharsets.UTF_8);
+                }
+                HashCode key = hasher.putString(queryStr, StandardCharsets.UTF_8).hash();
+                List<Resource> entries = queryToEntries.computeIfAbsent(key, k -> new ArrayList<>());
+
+                // Only the first log entry of a group is parsed, so the others need not retain their copy of the query
+                if(!entries.isEmpty()) {
+                    r.removeAll(LSQ.query).removeAll(LSQ.path).removeAll(LSQ.queryString);
+                }
+                entries.add(r);
+            }
+        }
+
+        // Pass 2: Parse each distinct query string once and merge the groups by their query resource
+        Map<String, Entry<LsqProcessingState, List<Resource>>> groups = new LinkedHashMap<>();
+        for(List<Resource> entries : queryToEntries.values()) {
+            LsqProcessingState state = itemProcessor.parse(entries.get(0));
+            if(state.isActive()) {
+                String queryIri = state.getQueryRes().str();
+                Entry<LsqProcessingState, List<Resource>> group = groups.get(queryIri);
+                if(group == null) {
+                    groups.put(queryIri, Maps.immutableEntry(state, entries));
+                } else {
+                    group.getValue().addAll(entries);
+                }
+            }
+        }
+        queryToEntries = null;
+
+        logger.info("Grouped " + numEntries + " log entries by " + groups.size() + " distinct queries");
+
+        // Each group has a distinct query, so the groups are independent of each other,
+        // except for the decision whether a query with the same canonical form has been executed before
+        Function<Entry<LsqProcessingState, List<Resource>>, Resource> processGroup = group -> {
+            LsqProcessingState state = group.getKey();
+            List<Resource> entries = group.getValue();
+
+            // The first log entry is the one the state was created for
+            itemProcessor.analyze(state);
+            for(Resource r : entries.subList(1, entries.size())) {
+                itemProcessor.addRemoteExecution(state, r);
+            }
+            itemProcessor.execute(state);
+            return itemProcessor.finish(state);
+        };
+
+        Stream<Entry<LsqProcessingState, List<Resource>>> groupStream = groups.values().stream();
+        Stream<Resource> result;
+        if(numThreads <= 1) {
+            result = groupStream.map(processGroup);
+        } else {
+            logger.info("Processing distinct queries with " + numThreads + " worker threads");
+
+            // Groups of different texts may share a canonical form; the index of a group serves as its ticket for the gate,
+            // so that the group that comes first in the input is the one whose query is executed
+            SequentialGate gate = new SequentialGate();
+            itemProcessor.setSeenQueryGate(gate);
+            Stream<Entry<Long, Entry<LsqProcessingState, List<Resource>>>> indexedGroups = Streams.mapWithIndex(groupStream, (g, i) -> Maps.immutableEntry(i, g));
+
+            ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("lsq-worker-%d", numThreads);
+            result = ParallelStreamUtils.<Entry<Long, Entry<LsqProcessingState, List<Resource>>>, Resource>mapOrdered(indexedGroups, e -> {
+                    gate.bind(e.getKey());
+                    try {
+                        return processGroup.apply(e.getValue());
+                    } finally {
+                        gate.unbind();
+                    }
+                }, executor, numThreads * 4)
+                .onClose(executor::shutdownNow);
+        }
+
+        result = result.onClose(itemReader::close);
+        return result;
+    }
+
+    /**
+     * Process log entries with a pipeline of stages: read, parse, analyze, execute and write.
+     * Each stage has its own thread pool and hands its results over to the next stage via a bounded queue,
+     * so that a slow stage exerts backpressure on the preceding ones rather than letting them run out of memory.
+     * Writing takes place in the thread that consumes the returned stream.
+     *
+     * The CPU bound parse and analyze stages run ahead of the I/O bound execute stage,
+     * so that they overlap with the round trips to the benchmark endpoint.
+     * The order of the items and the decisions about which queries to execute are the same as with sequential processing.
+     *
+     * @param config
+     * @param itemReader
+     * @param itemProcessor
+     * @return
+     */
+    public static Stream<Resource> processStaged(LsqConfigImpl config, Stream<Resource> itemReader, LsqProcessor itemProcessor) {
+        int parseThreads = Optional.ofNullable(config.getParseThreads()).orElse(1);
+        int analyzeThreads = Optional.ofNullable(config.getAnalyzeThreads()).orElse(1);
+        int executeThreads = Optional.ofNullable(config.getExecuteThreads()).orElse(1);
+
+        Integer stageQueueSize = config.getStageQueueSize();
+        Function<Integer, Integer> queueSizeFn = numThreads -> stageQueueSize == null ? numThreads * 4 : stageQueueSize;
+
+        logger.info("Processing log entries with a staged pipeline: "
+                + parseThreads + " parse, " + analyzeThreads + " analyze and " + executeThreads + " execute threads");
+
+        SequentialGate gate = new SequentialGate();
+        itemProcessor.setSeenQueryGate(gate);
+        SequentialGate queryIdGate = new SequentialGate();
+        itemProcessor.setQueryIdGate(queryIdGate);
+
+        ExecutorService parseExecutor = ParallelStreamUtils.newFixedThreadPool("lsq-parse-%d", parseThreads);
+        ExecutorService analyzeExecutor = ParallelStreamUtils.newFixedThreadPool("lsq-analyze-%d", analyzeThreads);
+        ExecutorService executeExecutor = ParallelStreamUtils.newFixedThreadPool("lsq-execute-%d", executeThreads);
+
+        Stream<Resource> readStage = ParallelStreamUtils.prefetch(itemReader, queueSizeFn.apply(parseThreads), "lsq-read");
+
+        // The index of an item in the input serves as its log entry index and as its ticket for the gates
+        Stream<Entry<Long, Resource>> indexedItems = Streams.mapWithIndex(readStage, (r, i) -> Maps.immutableEntry(i, r));
+
+        Stream<Entry<Long, LsqProcessingState>> parseStage = ParallelStreamUtils.mapOrdered(indexedItems, e -> {
+                queryIdGate.bind(e.getKey());
+                try {
+                    return Maps.immutableEntry(e.getKey(), itemProcessor.parse(e.getValue(), e.getKey()));
+                } finally {
+                    queryIdGate.unbind();
+                }
+            }, parseExecutor, queueSizeFn.apply(parseThreads));
+
+        Stream<Entry<Long, LsqProcessingState>> analyzeStage = ParallelStreamUtils.mapOrdered(parseStage, e -> {
+                itemProcessor.analyze(e.getValue());
+                return e;
+            }, analyzeExecutor, queueSizeFn.apply(analyzeThreads));
+
+        Stream<Resource> result = ParallelStreamUtils.mapOrdered(analyzeStage, e -> {
+                LsqProcessingState state = e.getValue();
+                gate.bind(e.getKey());
+                try {
+                    itemProcessor.execute(state);
+                } finally {
+                    gate.unbind();
+                }
+                return (Resource)itemProcessor.finish(state);
+            }, executeExecutor, queueSizeFn.apply(executeThreads))
+            .onClose(() -> {
+                parseExecutor.shutdownNow();
+                analyzeExecutor.shutdownNow();
+                executeExecutor.shutdownNow();
+            });
+
+        return result;
+    }
+
     public static LsqProcessor createProcessor(LsqConfigImpl config) {
 
         LsqProcessor result = new LsqProcessor();
@@ -449,9 +1367,10 @@ public class LsqUtils {
                 .maximumSize(10000)
                 .build();
 
-        Cache<String, Object> seenQueryCache = CacheBuilder.newBuilder()
-                .maximumSize(10000)
-                .build();
+        Long seenQueryCacheSize = config.getSeenQueryCacheSize();
+        long expectedNumQueries = seenQueryCacheSize == null ? LsqConfigImpl.DEFAULT_SEEN_QUERY_CACHE_SIZE : seenQueryCacheSize;
+        QueryHashSet seenQueries = new QueryHashSet(expectedNumQueries, config.getSeenQueryHashBits());
+        QueryIdRegistry queryIdRegistry = new QueryIdRegistry(config.isLegacyQueryIds(), expectedNumQueries);
         
         // How to deal with recurrent queries in the log?
         // TODO QueryExecutionTime cache
@@ -596,8 +1515,43 @@ public class LsqUtils {
         result.setUseDeterministicPseudoTimestamps(config.isDeterministicPseudoTimestamps());
 
         
-        result.setSeenQueryCache(seenQueryCache);
-        
+        result.setSeenQueries(seenQueries);
+        result.setQueryIdRegistry(queryIdRegistry);
+        result.setCanonicalizeQueries(config.isCanonicalizeQueries());
+
+        File structuralFeatureCacheFile = config.getStructuralFeatureCacheFile();
+        if(structuralFeatureCacheFile != null && config.isRdfizerQueryStructuralFeaturesEnabled()) {
+            try {
+                result.setStructuralFeatureCache(MappedFileCache.open(structuralFeatureCacheFile.toPath(),
+                        getStructuralFeatureCacheVersion(), config.getStructuralFeatureCacheMaxSize()));
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         return result;
     }
+
+    /**
+     * The version of the structural feature cache, which changes with the version of the structural feature triples,
+     * the cache format and the IRIs of the LSQ and SPIN vocabularies used in the cached triples.
+     */
+    public static long getStructuralFeatureCacheVersion() {
+        Hasher hasher = Hashing.murmur3_128().newHasher()
+                .putInt(1) // Version of the cache format
+                .putInt(LsqProcessor.STRUCTURAL_FEATURES_VERSION)
+                .putString(org.topbraid.spin.vocabulary.SP.NS, StandardCharsets.UTF_8);
+
+        for(Field field : LSQ.class.getFields()) {
+            if(Modifier.isStatic(field.getModifiers()) && (field.getType() == String.class || RDFNode.class.isAssignableFrom(field.getType()))) {
+                try {
+                    hasher.putString(field.getName() + " " + field.get(null), StandardCharsets.UTF_8);
+                } catch(IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        return hasher.hash().asLong();
+    }
 }
@@ -0,0 +1,63 @@
+package org.aksw.simba.lsq.core;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.lib.Sink;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Sink that flushes its delegate in micro-batches:
+ * Items are buffered by the delegate and flushed at the latest after a given interval,
+ * which bounds the latency with which they become visible downstream - even if no further items arrive,
+ * as is the case when following a log that is idle.
+ *
+ * Items are sent and flushed under a lock, so a periodic flush never splits an item.
+ *
+ * @author Claus Stadler
+ *
+ * @param <T>
+ */
+public class SinkMicroBatch<T>
+    implements Sink<T>
+{
+    protected Sink<T> delegate;
+    protected ScheduledExecutorService scheduler;
+    protected boolean isDirty = false;
+
+    public SinkMicroBatch(Sink<T> delegate, long flushIntervalMs) {
+        this.delegate = delegate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("lsq-flush-%d").setDaemon(true).build());
+
+        scheduler.scheduleWithFixedDelay(this::flushIfDirty, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    protected synchronized void flushIfDirty() {
+        if(isDirty) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void send(T item) {
+        delegate.send(item);
+        isDirty = true;
+    }
+
+    @Override
+    public synchronized void flush() {
+        delegate.flush();
+        isDirty = false;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        synchronized(this) {
+            delegate.close();
+        }
+    }
+}
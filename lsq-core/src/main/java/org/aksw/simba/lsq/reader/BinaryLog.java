@@ -0,0 +1,340 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.aksw.simba.lsq.vocab.PROV;
+import org.apache.jena.datatypes.xsd.XSDDateTime;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Range;
+import com.google.common.collect.Streams;
+
+/**
+ * A compact binary format for parsed log records, which allows for parsing a raw log once
+ * and processing it repeatedly without paying for regex matching, URL decoding and timestamp parsing again.
+ *
+ * A file starts with a magic number, followed by blocks of the form [int payloadLength][int numRecords][records].
+ * Each record starts with a short of flags that state which of the following fields are present:
+ * the subject IRI, the sequence id, the host, the timestamp as epoch milliseconds, the status code,
+ * the number of response bytes, the decoded query, a processing error and the IRI of the source.
+ * Strings are stored as their int length in bytes followed by their UTF-8 bytes; numbers are big endian.
+ *
+ * Blocks are independent of each other, hence the blocks of a file can be decoded concurrently
+ * after a quick scan over their headers. Records read back carry the same properties that {@link org.aksw.simba.lsq.core.LsqProcessor}
+ * relies on, such that processing them yields the same output as processing the original log.
+ *
+ * @see BinaryLogWriter
+ * @author Claus Stadler
+ *
+ */
+public class BinaryLog {
+    /** The name under which the format is registered */
+    public static final String FORMAT_NAME = "lsqbin";
+
+    // "LSQBLOG1" in ASCII
+    public static final long MAGIC = 0x4c5351424c4f4731l;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    protected static final int BLOCK_HEADER_SIZE = 8;
+
+    public static final short F_IRI = 0x001;
+    public static final short F_SEQUENCE_ID = 0x002;
+    public static final short F_HOST = 0x004;
+    public static final short F_TIMESTAMP = 0x008;
+    public static final short F_STATUS_CODE = 0x010;
+    public static final short F_NUM_RESPONSE_BYTES = 0x020;
+    public static final short F_QUERY = 0x040;
+    public static final short F_PROCESSING_ERROR = 0x080;
+    public static final short F_SOURCE = 0x100;
+
+    protected static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * Test whether the given bytes start with the magic number of the format
+     */
+    public static boolean hasMagic(byte[] bytes) {
+        boolean result = bytes.length >= 8 && ByteBuffer.wrap(bytes).getLong() == MAGIC;
+        return result;
+    }
+
+    public static void writeRecord(DataOutput out, Resource r) throws IOException {
+        String iri = r.isURIResource() ? r.getURI() : null;
+        Long sequenceId = getLiteral(r, LSQ.sequenceId) == null ? null : r.getProperty(LSQ.sequenceId).getLong();
+        String host = getString(r, LSQ.host);
+        Object timestamp = getLiteral(r, PROV.atTime);
+        Long epochMillis = timestamp instanceof XSDDateTime ? ((XSDDateTime)timestamp).asCalendar().getTimeInMillis() : null;
+        Integer statusCode = getLiteral(r, LSQ.statusCode) == null ? null : r.getProperty(LSQ.statusCode).getInt();
+        Integer numResponseBytes = getLiteral(r, LSQ.numResponseBytes) == null ? null : r.getProperty(LSQ.numResponseBytes).getInt();
+        String query = getString(r, LSQ.query);
+        String processingError = getString(r, LSQ.processingError);
+        Resource source = r.getPropertyResourceValue(PROV.hadPrimarySource);
+        String sourceIri = source != null && source.isURIResource() ? source.getURI() : null;
+
+        int flags =
+                (iri == null ? 0 : F_IRI) |
+                (sequenceId == null ? 0 : F_SEQUENCE_ID) |
+                (host == null ? 0 : F_HOST) |
+                (epochMillis == null ? 0 : F_TIMESTAMP) |
+                (statusCode == null ? 0 : F_STATUS_CODE) |
+                (numResponseBytes == null ? 0 : F_NUM_RESPONSE_BYTES) |
+                (query == null ? 0 : F_QUERY) |
+                (processingError == null ? 0 : F_PROCESSING_ERROR) |
+                (sourceIri == null ? 0 : F_SOURCE);
+
+        out.writeShort(flags);
+        if(iri != null) { writeString(out, iri); }
+        if(sequenceId != null) { out.writeLong(sequenceId); }
+        if(host != null) { writeString(out, host); }
+        if(epochMillis != null) { out.writeLong(epochMillis); }
+        if(statusCode != null) { out.writeInt(statusCode); }
+        if(numResponseBytes != null) { out.writeInt(numResponseBytes); }
+        if(query != null) { writeString(out, query); }
+        if(processingError != null) { writeString(out, processingError); }
+        if(sourceIri != null) { writeString(out, sourceIri); }
+    }
+
+    public static Resource readRecord(DataInput in) throws IOException {
+        int flags = in.readUnsignedShort();
+
+        Model model = CompactGraph.createModel();
+        Resource r = (flags & F_IRI) != 0
+                ? model.createResource(readString(in))
+                : model.createResource();
+
+        if((flags & F_SEQUENCE_ID) != 0) { r.addLiteral(LSQ.sequenceId, in.readLong()); }
+        if((flags & F_HOST) != 0) { r.addLiteral(LSQ.host, readString(in)); }
+        if((flags & F_TIMESTAMP) != 0) {
+            GregorianCalendar cal = new GregorianCalendar(UTC);
+            cal.setTimeInMillis(in.readLong());
+            r.addLiteral(PROV.atTime, model.createTypedLiteral(new XSDDateTime(cal)));
+        }
+        if((flags & F_STATUS_CODE) != 0) { r.addLiteral(LSQ.statusCode, model.createTypedLiteral(in.readInt())); }
+        if((flags & F_NUM_RESPONSE_BYTES) != 0) { r.addLiteral(LSQ.numResponseBytes, model.createTypedLiteral(in.readInt())); }
+        if((flags & F_QUERY) != 0) { r.addLiteral(LSQ.query, readString(in)); }
+        if((flags & F_PROCESSING_ERROR) != 0) { r.addLiteral(LSQ.processingError, readString(in)); }
+        if((flags & F_SOURCE) != 0) { r.addProperty(PROV.hadPrimarySource, model.createResource(readString(in))); }
+
+        return r;
+    }
+
+    protected static Object getLiteral(Resource r, Property p) {
+        Statement stmt = r.getProperty(p);
+        RDFNode o = stmt == null ? null : stmt.getObject();
+        Object result = o != null && o.isLiteral() ? o.asLiteral().getValue() : null;
+        return result;
+    }
+
+    protected static String getString(Resource r, Property p) {
+        Statement stmt = r.getProperty(p);
+        RDFNode o = stmt == null ? null : stmt.getObject();
+        String result = o != null && o.isLiteral() ? o.asLiteral().getLexicalForm() : null;
+        return result;
+    }
+
+    public static void writeString(DataOutput out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a stream of the records of a binary log which is read sequentially, such as from standard input.
+     * Records are decoded one by one, so a truncated input yields its complete records before failing.
+     *
+     * @param in
+     * @return
+     */
+    public static Stream<Resource> createStream(InputStream in) {
+        DataInputStream din = new DataInputStream(in);
+        try {
+            long magic = din.readLong();
+            if(magic != MAGIC) {
+                throw new IOException("Not a binary LSQ log; magic number mismatch");
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Stream<Resource> result = Streams.stream(new RecordIterator(din))
+                .onClose(() -> {
+                    try {
+                        din.close();
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Iterator over the records of consecutive blocks
+     */
+    protected static class RecordIterator
+        extends AbstractIterator<Resource>
+    {
+        protected DataInputStream in;
+        protected int remaining = 0;
+
+        public RecordIterator(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        protected Resource computeNext() {
+            try {
+                while(remaining == 0) {
+                    // The end of the input is only valid between blocks
+                    if(in.read() < 0) {
+                        return endOfData();
+                    }
+                    // Skip the remaining bytes of the payload length, as the records are read one by one
+                    in.readFully(new byte[3]);
+                    remaining = in.readInt();
+                }
+
+                --remaining;
+                return readRecord(in);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Scan the headers of the blocks of a binary log file
+     *
+     * @return The byte ranges of the blocks, including their headers
+     * @throws IOException
+     */
+    public static List<Range<Long>> scanBlocks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+        readFully(channel, header, 0);
+        if(header.getLong(0) != MAGIC) {
+            throw new IOException("Not a binary LSQ log; magic number mismatch");
+        }
+
+        List<Range<Long>> result = new ArrayList<>();
+        long offset = 8;
+        while(offset < size) {
+            header.clear();
+            readFully(channel, header, offset);
+            long end = offset + BLOCK_HEADER_SIZE + header.getInt(0);
+            if(end > size) {
+                throw new EOFException("Truncated block at offset " + offset);
+            }
+            result.add(Range.closedOpen(offset, end));
+            offset = end;
+        }
+        return result;
+    }
+
+    /**
+     * Read and decode all records of a block with a positional read, which is safe for concurrent use of the channel
+     */
+    public static List<Resource> readBlock(FileChannel channel, Range<Long> block) throws IOException {
+        long start = block.lowerEndpoint();
+        ByteBuffer buf = ByteBuffer.allocate((int)(block.upperEndpoint() - start));
+        readFully(channel, buf, start);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf.array()));
+        in.readInt();
+        int numRecords = in.readInt();
+
+        List<Resource> result = new ArrayList<>(numRecords);
+        for(int i = 0; i < numRecords; ++i) {
+            result.add(readRecord(in));
+        }
+        return result;
+    }
+
+    protected static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while(buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if(n < 0) {
+                throw new EOFException("Unexpected end of file at offset " + pos);
+            }
+            pos += n;
+        }
+    }
+
+    /**
+     * Create a stream of the records of a binary log file.
+     * With an executor, blocks are decoded concurrently while the records are emitted in file order.
+     *
+     * @param path
+     * @param executor The executor for decoding blocks; null to decode them lazily in the consuming thread
+     * @param maxPendingBlocks The maximum number of blocks decoded ahead of the consumer
+     * @return
+     * @throws IOException
+     */
+    public static Stream<Resource> createStream(Path path, ExecutorService executor, int maxPendingBlocks) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        Stream<List<Resource>> blocks;
+        try {
+            List<Range<Long>> ranges = scanBlocks(channel);
+            Function<Range<Long>, List<Resource>> decode = block -> {
+                try {
+                    return readBlock(channel, block);
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+
+            blocks = executor == null
+                    ? ranges.stream().map(decode)
+                    : ParallelStreamUtils.mapOrdered(ranges.stream(), decode, executor, maxPendingBlocks);
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        Stream<Resource> result = blocks
+                .flatMap(List::stream)
+                .onClose(() -> {
+                    try {
+                        channel.close();
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.atlas.lib.Sink;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * Sink that writes log records in the {@link BinaryLog} format.
+ * Records are collected into a block until it reaches the block size, which is then written
+ * together with its header. Queries that are still encoded in the request path or query string of
+ * a record are extracted before the record is written, so that reading the log back requires no URL decoding.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class BinaryLogWriter
+    implements Sink<Resource>
+{
+    protected OutputStream out;
+    protected int blockSize;
+
+    protected ByteArrayOutputStream block;
+    protected DataOutputStream blockOut;
+    protected int blockRecords = 0;
+    protected long numRecords = 0;
+
+    public BinaryLogWriter(OutputStream out) {
+        this(out, BinaryLog.DEFAULT_BLOCK_SIZE);
+    }
+
+    public BinaryLogWriter(OutputStream out, int blockSize) {
+        this.out = out;
+        this.blockSize = blockSize;
+        this.block = new ByteArrayOutputStream(blockSize + blockSize / 4);
+        this.blockOut = new DataOutputStream(block);
+
+        try {
+            new DataOutputStream(out).writeLong(BinaryLog.MAGIC);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    @Override
+    public void send(Resource r) {
+        if(!r.hasProperty(LSQ.query)) {
+            WebLogParser.extractQuery(r);
+        }
+
+        try {
+            BinaryLog.writeRecord(blockOut, r);
+            ++blockRecords;
+            ++numRecords;
+
+            if(block.size() >= blockSize) {
+                writeBlock();
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected void writeBlock() throws IOException {
+        if(blockRecords > 0) {
+            DataOutputStream dout = new DataOutputStream(out);
+            dout.writeInt(block.size());
+            dout.writeInt(blockRecords);
+            block.writeTo(out);
+
+            block.reset();
+            blockRecords = 0;
+        }
+    }
+
+    /**
+     * Write the pending records as a block of their own and flush the underlying stream
+     */
+    @Override
+    public void flush() {
+        try {
+            writeBlock();
+            out.flush();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writeBlock();
+            out.close();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.parser.LinePreFilter;
+import org.aksw.simba.lsq.util.AsciiCharSequence;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.Resource;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
+import com.google.common.collect.Streams;
+
+/**
+ * Reader for line based log files which parses byte ranges of a file concurrently.
+ *
+ * The file is split into chunks whose boundaries are aligned to newlines, so that no line spans two chunks.
+ * The file is memory mapped in large windows, and each chunk is copied in bulk from its window
+ * into a per-thread byte array which is scanned for line terminators;
+ * the line parser receives each line as a {@link CharSequence} view on that array.
+ * Only lines containing non-ASCII bytes are decoded as UTF-8.
+ *
+ * Chunks are parsed by the threads of an executor, but the records are emitted in file order and
+ * the {@link LSQ#sequenceId} of each record is its chunk's line offset plus its line index within the chunk.
+ * Hence, the output is the same as with sequential reading.
+ *
+ * Note, that regex matching on views of the mapped buffer itself is considerably slower than on a heap array, and
+ * that chunks should be small, because with parallel parsing the records of a chunk are buffered until the chunk is consumed.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class ChunkedLogReader {
+
+    public static final long DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    // Maximum size of a memory mapped region of the file
+    public static final long MAX_WINDOW_SIZE = 1024 * 1024 * 1024;
+
+    // Chunk buffers are reused by the threads that parse the chunks
+    private static final ThreadLocal<byte[]> localBuffer = ThreadLocal.withInitial(() -> new byte[0]);
+
+    /**
+     * Split a file into ranges of roughly chunkSize bytes. Each range, except for the last one,
+     * ends immediately after a newline character.
+     *
+     * @param path
+     * @param chunkSize
+     * @return
+     * @throws IOException
+     */
+    public static List<Range<Long>> computeChunks(Path path, long chunkSize) throws IOException {
+        return computeChunks(path, null, chunkSize);
+    }
+
+    /**
+     * Split a byte range of a file into chunks. The range should start at the beginning of a line;
+     * it is clamped to the size of the file.
+     *
+     * @param path
+     * @param byteRange The range to split; null for the whole file
+     * @param chunkSize
+     * @return
+     * @throws IOException
+     */
+    public static List<Range<Long>> computeChunks(Path path, Range<Long> byteRange, long chunkSize) throws IOException {
+        if(chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, got: " + chunkSize);
+        }
+
+        List<Range<Long>> result = new ArrayList<>();
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = byteRange == null ? channel.size() : Math.min(byteRange.upperEndpoint(), channel.size());
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+            long start = byteRange == null ? 0 : byteRange.lowerEndpoint();
+            while(start < size) {
+                long end = Math.min(start + chunkSize, size);
+
+                // Advance the end to the position after the next newline
+                long pos = end;
+                outer: while(pos < size) {
+                    buffer.clear();
+                    int n = channel.read(buffer, pos);
+                    if(n <= 0) {
+                        break;
+                    }
+
+                    for(int i = 0; i < n; ++i) {
+                        if(buffer.get(i) == '\n') {
+                            pos += i + 1;
+                            break outer;
+                        }
+                    }
+                    pos += n;
+                }
+                end = Math.min(pos, size);
+
+                result.add(Range.closedOpen(start, end));
+                start = end;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * The records of a chunk together with the indices of their lines within the chunk
+     */
+    public static class ParsedChunk {
+        protected int numLines = 0;
+        protected List<Entry<Integer, Resource>> records = new ArrayList<>();
+
+        public int getNumLines() {
+            return numLines;
+        }
+
+        public List<Entry<Integer, Resource>> getRecords() {
+            return records;
+        }
+    }
+
+    /**
+     * Parse the lines of a chunk which lies within the given memory mapped window.
+     * The line views passed to the lineParser are only valid during the call.
+     * Lines rejected by the lineFilter or for which the lineParser returns null are skipped.
+     *
+     * @param window A buffer holding the bytes of the file starting at windowStart
+     * @param windowStart
+     * @param chunk
+     * @param lineFilter Filter on the raw bytes of the lines; null to parse all lines
+     * @param lineParser
+     * @return
+     */
+    public static ParsedChunk parseChunk(ByteBuffer window, long windowStart, Range<Long> chunk, LinePreFilter lineFilter, Function<? super CharSequence, ? extends Resource> lineParser) {
+        byte[] bytes = copyChunk(window, windowStart, chunk);
+        int end = (int)(chunk.upperEndpoint() - chunk.lowerEndpoint());
+
+        ParsedChunk result = new ParsedChunk();
+        int i = 0;
+        while(i < end) {
+            int lineEnd = findLineEnd(bytes, i, end);
+            if(lineFilter == null || lineFilter.test(bytes, i, lineEnd)) {
+                Resource r = lineParser.apply(createLine(bytes, i, lineEnd));
+                if(r != null) {
+                    result.records.add(Maps.immutableEntry(result.numLines, r));
+                }
+            }
+            ++result.numLines;
+            i = skipLineTerminator(bytes, lineEnd, end);
+        }
+        return result;
+    }
+
+    /**
+     * Copy a chunk from its memory mapped window into the current thread's buffer and pass each line to the action.
+     * The line views are only valid until the thread processes its next chunk.
+     *
+     * @param window
+     * @param windowStart
+     * @param chunk
+     * @param action
+     */
+    public static void forEachLine(ByteBuffer window, long windowStart, Range<Long> chunk, Consumer<? super CharSequence> action) {
+        byte[] bytes = copyChunk(window, windowStart, chunk);
+        int n = (int)(chunk.upperEndpoint() - chunk.lowerEndpoint());
+        forEachLine(bytes, 0, n, action);
+    }
+
+    /**
+     * Copy a chunk from its window into the current thread's buffer
+     *
+     * @return The buffer which holds the chunk's bytes starting at index 0
+     */
+    public static byte[] copyChunk(ByteBuffer window, long windowStart, Range<Long> chunk) {
+        int offset = (int)(chunk.lowerEndpoint() - windowStart);
+        int n = (int)(chunk.upperEndpoint() - chunk.lowerEndpoint());
+
+        byte[] result = localBuffer.get();
+        if(result.length < n) {
+            result = new byte[n];
+            localBuffer.set(result);
+        }
+
+        // The duplicate has its own position, so concurrent reads of the window do not interfere
+        ByteBuffer tmp = window.duplicate();
+        tmp.position(offset);
+        tmp.get(result, 0, n);
+
+        return result;
+    }
+
+    /**
+     * Memory map the given chunks of a file in windows of at most MAX_WINDOW_SIZE bytes.
+     * No chunk spans two windows.
+     *
+     * @param path
+     * @param chunks
+     * @return For each chunk the start offset of its window together with the window
+     * @throws IOException
+     */
+    public static List<Entry<Long, MappedByteBuffer>> mapWindows(Path path, List<Range<Long>> chunks) throws IOException {
+        List<Entry<Long, MappedByteBuffer>> result = new ArrayList<>(chunks.size());
+
+        // Mappings remain valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long windowStart = 0;
+            MappedByteBuffer window = null;
+            long windowEnd = 0;
+
+            for(int i = 0; i < chunks.size(); ++i) {
+                Range<Long> chunk = chunks.get(i);
+                if(window == null || chunk.upperEndpoint() > windowEnd) {
+                    windowStart = chunk.lowerEndpoint();
+                    windowEnd = windowStart;
+                    for(int j = i; j < chunks.size() && chunks.get(j).upperEndpoint() - windowStart <= MAX_WINDOW_SIZE; ++j) {
+                        windowEnd = chunks.get(j).upperEndpoint();
+                    }
+
+                    if(windowEnd == windowStart) {
+                        throw new IllegalArgumentException("Chunk too large for memory mapping: " + chunk);
+                    }
+
+                    window = channel.map(MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                }
+
+                result.add(Maps.immutableEntry(windowStart, window));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Pass each line of a range of a byte array to the given action.
+     * Line terminators are the same as those of {@link java.io.BufferedReader#readLine()}:
+     * '\n', '\r' and "\r\n".
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param action
+     */
+    public static void forEachLine(byte[] bytes, int offset, int length, Consumer<? super CharSequence> action) {
+        int end = offset + length;
+        int i = offset;
+        while(i < end) {
+            int lineEnd = findLineEnd(bytes, i, end);
+            action.accept(createLine(bytes, i, lineEnd));
+            i = skipLineTerminator(bytes, lineEnd, end);
+        }
+    }
+
+    /**
+     * Find the end of the line that starts at the given position
+     *
+     * @return The index of the line terminator or end if there is none
+     */
+    public static int findLineEnd(byte[] bytes, int start, int end) {
+        int i = start;
+        while(i < end && bytes[i] != '\n' && bytes[i] != '\r') {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * Skip the line terminator at the given position
+     *
+     * @return The start of the next line
+     */
+    public static int skipLineTerminator(byte[] bytes, int pos, int end) {
+        int result = pos;
+        if(result < end) {
+            byte b = bytes[result++];
+            if(b == '\r' && result < end && bytes[result] == '\n') {
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    public static CharSequence createLine(byte[] bytes, int start, int end) {
+        boolean isAscii = true;
+        for(int i = start; isAscii && i < end; ++i) {
+            isAscii = bytes[i] >= 0;
+        }
+
+        CharSequence result = isAscii
+                ? new AsciiCharSequence(bytes, start, end - start)
+                : new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        return result;
+    }
+
+    /**
+     * Iterate the lines of the given chunks together with their zero-based index within the file.
+     * The chunks are copied into the buffer of the iterating thread and the line views are only valid until the next line is requested.
+     *
+     * @param chunks
+     * @param windows The windows of the chunks as returned by {@link #mapWindows(Path, List)}
+     * @param lineFilter Filter on the raw bytes of the lines; rejected lines are skipped without being decoded. May be null.
+     * @param firstLineIndex The index of the first line of the first chunk
+     * @return
+     */
+    public static Iterator<Entry<Long, CharSequence>> lineIterator(List<Range<Long>> chunks, List<Entry<Long, MappedByteBuffer>> windows, LinePreFilter lineFilter, long firstLineIndex) {
+        return new AbstractIterator<Entry<Long, CharSequence>>() {
+            protected int chunkId = -1;
+            protected byte[] bytes;
+            protected int pos = 0;
+            protected int end = 0;
+            protected long lineIndex = firstLineIndex;
+
+            @Override
+            protected Entry<Long, CharSequence> computeNext() {
+                while(true) {
+                    while(pos >= end) {
+                        if(++chunkId >= chunks.size()) {
+                            return endOfData();
+                        }
+
+                        Range<Long> chunk = chunks.get(chunkId);
+                        Entry<Long, MappedByteBuffer> window = windows.get(chunkId);
+
+                        bytes = copyChunk(window.getValue(), window.getKey(), chunk);
+                        pos = 0;
+                        end = (int)(chunk.upperEndpoint() - chunk.lowerEndpoint());
+                    }
+
+                    int start = pos;
+                    int lineEnd = findLineEnd(bytes, pos, end);
+                    pos = skipLineTerminator(bytes, lineEnd, end);
+                    long index = lineIndex++;
+
+                    if(lineFilter == null || lineFilter.test(bytes, start, lineEnd)) {
+                        return Maps.immutableEntry(index, createLine(bytes, start, lineEnd));
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Create a stream of records from the lines of a file.
+     * If an executor is given, the lineParser is invoked concurrently and must be thread-safe.
+     * Otherwise, lines are parsed lazily by the consuming thread, which avoids buffering the records of a chunk.
+     * Records lacking an {@link LSQ#sequenceId} are assigned the zero-based index of their line within the file.
+     * Lines rejected by the lineFilter or for which the lineParser returns null are skipped;
+     * they still count for the sequence ids, so that these are the same with and without filtering.
+     *
+     * Closing the returned stream cancels any pending chunks; the executor is not shut down.
+     *
+     * @param path
+     * @param lineParser
+     * @param executor The executor for parsing chunks; null for sequential parsing
+     * @param maxPendingChunks Maximum number of chunks that are parsed ahead
+     * @param chunkSize
+     * @return
+     * @throws IOException
+     */
+    public static Stream<Resource> createStream(Path path, Function<? super CharSequence, ? extends Resource> lineParser, ExecutorService executor, int maxPendingChunks, long chunkSize) throws IOException {
+        return createStream(path, null, lineParser, executor, maxPendingChunks, chunkSize);
+    }
+
+    /**
+     * Create a stream of records from those lines of a file that pass the lineFilter.
+     * The filter is applied to the raw bytes of each line before it is decoded.
+     */
+    public static Stream<Resource> createStream(Path path, LinePreFilter lineFilter, Function<? super CharSequence, ? extends Resource> lineParser, ExecutorService executor, int maxPendingChunks, long chunkSize) throws IOException {
+        return createStream(path, null, 0, lineFilter, lineParser, executor, maxPendingChunks, chunkSize);
+    }
+
+    /**
+     * Create a stream of records from the lines within a byte range of a file, such as one obtained from a {@link LineIndex}.
+     * Only the chunks of the range are mapped and read; the sequence ids of the records continue from the given line index.
+     *
+     * @param byteRange The range of the lines to read, which must start at the beginning of a line; null for the whole file
+     * @param firstLineIndex The index of the line at the start of the range within the file
+     */
+    public static Stream<Resource> createStream(Path path, Range<Long> byteRange, long firstLineIndex, LinePreFilter lineFilter, Function<? super CharSequence, ? extends Resource> lineParser, ExecutorService executor, int maxPendingChunks, long chunkSize) throws IOException {
+        List<Range<Long>> chunks = computeChunks(path, byteRange, chunkSize);
+        List<Entry<Long, MappedByteBuffer>> windows = mapWindows(path, chunks);
+
+        // Records keyed by the index of their line within the file
+        Stream<Entry<Long, Resource>> records;
+        if(executor == null) {
+            records = Streams.stream(lineIterator(chunks, windows, lineFilter, firstLineIndex))
+                    .map(e -> {
+                        Resource r = lineParser.apply(e.getValue());
+                        return r == null ? null : Maps.immutableEntry(e.getKey(), r);
+                    })
+                    .filter(Objects::nonNull);
+        } else {
+            Stream<Integer> chunkIds = IntStream.range(0, chunks.size()).boxed();
+
+            // The line offset of a chunk only becomes known once all preceding chunks have been emitted,
+            // which happens in order in the consuming thread
+            long[] lineOffset = { firstLineIndex };
+            records = ParallelStreamUtils.mapOrdered(chunkIds, i -> {
+                Entry<Long, MappedByteBuffer> window = windows.get(i);
+                return parseChunk(window.getValue(), window.getKey(), chunks.get(i), lineFilter, lineParser);
+            }, executor, maxPendingChunks)
+            .flatMap(c -> {
+                long offset = lineOffset[0];
+                lineOffset[0] += c.getNumLines();
+                return c.getRecords().stream().map(e -> Maps.immutableEntry(offset + e.getKey(), e.getValue()));
+            });
+        }
+
+        Stream<Resource> result = records.map(e -> {
+            Resource r = e.getValue();
+            if(!r.hasProperty(LSQ.sequenceId)) {
+                r.addLiteral(LSQ.sequenceId, e.getKey());
+            }
+            return r;
+        });
+
+        return result;
+    }
+}
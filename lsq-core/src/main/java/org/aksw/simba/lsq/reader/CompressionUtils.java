@@ -0,0 +1,270 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+import org.aksw.simba.lsq.reader.ParallelDecompressingInputStream.Decoder;
+import org.aksw.simba.lsq.reader.ParallelDecompressingInputStream.MemberScanner;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utils for transparently reading compressed input.
+ *
+ * The codec is detected from the leading bytes of the input rather than from file names,
+ * so that compressed standard input is handled as well.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class CompressionUtils {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionUtils.class);
+
+    protected static final CompressorStreamFactory compressorStreamFactory = new CompressorStreamFactory(true);
+
+    /**
+     * Detect the compression codec of an input stream from its leading bytes.
+     * The stream must support mark/reset and is reset to its start.
+     *
+     * @param in
+     * @return The commons-compress name of the codec or null if the input is not compressed
+     */
+    public static String detect(InputStream in) {
+        String result;
+        try {
+            result = CompressorStreamFactory.detect(in);
+        } catch(CompressorException e) {
+            result = null;
+        }
+
+        // The zlib header of raw deflate streams is too weak a signature; text may start with it
+        if(CompressorStreamFactory.DEFLATE.equals(result)) {
+            result = null;
+        }
+
+        return result;
+    }
+
+    public static String detect(Path path) throws IOException {
+        try(InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return detect(in);
+        }
+    }
+
+    /**
+     * Return a scanner for the boundaries of independently compressed members of the given codec
+     *
+     * @param codec
+     * @return The scanner or null if members cannot be split for the codec
+     */
+    public static MemberScanner getMemberScanner(String codec) {
+        MemberScanner result;
+        switch(codec) {
+        case CompressorStreamFactory.GZIP: result = CompressionUtils::bgzfBlockLength; break;
+        case CompressorStreamFactory.BZIP2: result = CompressionUtils::bzip2StreamLength; break;
+        case CompressorStreamFactory.ZSTANDARD: result = CompressionUtils::zstdFrameLength; break;
+        default: result = null; break;
+        }
+        return result;
+    }
+
+    /**
+     * Create a decoder for the given codec that decompresses concatenated members
+     *
+     * @param codec
+     * @return
+     */
+    public static Decoder createDecoder(String codec) {
+        return in -> {
+            try {
+                return compressorStreamFactory.createCompressorInputStream(codec, in, true);
+            } catch(CompressorException e) {
+                throw new IOException(e);
+            }
+        };
+    }
+
+    /**
+     * Wrap an input stream such that it is transparently decompressed if it is compressed.
+     * With more than one thread, decompression happens on a thread pool which is shut down when the returned stream is closed;
+     * members of the input whose boundaries can be determined, such as bgzip blocks, pbzip2 streams and zstd frames,
+     * are decompressed in parallel.
+     *
+     * @param in
+     * @param numThreads
+     * @return
+     * @throws IOException
+     */
+    public static InputStream decompress(InputStream in, int numThreads) throws IOException {
+        InputStream bin = in.markSupported() ? in : new BufferedInputStream(in);
+
+        String codec = detect(bin);
+        InputStream result;
+        if(codec == null) {
+            result = bin;
+        } else {
+            logger.info("Detected " + codec + " compressed input");
+
+            Decoder decoder = createDecoder(codec);
+
+            if(numThreads <= 1) {
+                result = decoder.apply(bin);
+            } else {
+                ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("lsq-decompress-%d", numThreads);
+                result = new ParallelDecompressingInputStream(bin, getMemberScanner(codec), decoder, executor, true, numThreads * 2);
+            }
+        }
+
+        return result;
+    }
+
+    protected static int u8(byte[] buf, int i) {
+        return buf[i] & 0xff;
+    }
+
+    protected static int u16le(byte[] buf, int i) {
+        return u8(buf, i) | (u8(buf, i + 1) << 8);
+    }
+
+    protected static long u32le(byte[] buf, int i) {
+        return u16le(buf, i) | ((long)u16le(buf, i + 2) << 16);
+    }
+
+    /**
+     * Length of a BGZF block, i.e. a gzip member that carries its size in the 'BC' extra subfield as written by bgzip.
+     * Other gzip members cannot be split.
+     */
+    public static int bgzfBlockLength(byte[] buf, int off, int len, boolean isEof, int scanned) {
+        // Fixed header and XLEN
+        if(len < 12) {
+            return isEof ? MemberScanner.UNSPLITTABLE : MemberScanner.NEED_MORE;
+        }
+
+        int flags = u8(buf, off + 3);
+        if(u8(buf, off) != 0x1f || u8(buf, off + 1) != 0x8b || (flags & 0x04) == 0) {
+            return MemberScanner.UNSPLITTABLE;
+        }
+
+        int xlen = u16le(buf, off + 10);
+        if(len < 12 + xlen) {
+            return isEof ? MemberScanner.UNSPLITTABLE : MemberScanner.NEED_MORE;
+        }
+
+        int result = MemberScanner.UNSPLITTABLE;
+        for(int i = off + 12; i + 4 <= off + 12 + xlen; ) {
+            int slen = u16le(buf, i + 2);
+            if(buf[i] == 'B' && buf[i + 1] == 'C' && slen == 2) {
+                result = u16le(buf, i + 4) + 1;
+                break;
+            }
+            i += 4 + slen;
+        }
+
+        if(result > len) {
+            result = isEof ? MemberScanner.UNSPLITTABLE : MemberScanner.NEED_MORE;
+        }
+        return result;
+    }
+
+    protected static boolean isBzip2StreamStart(byte[] buf, int i) {
+        boolean result = buf[i] == 'B' && buf[i + 1] == 'Z' && buf[i + 2] == 'h' && buf[i + 3] >= '1' && buf[i + 3] <= '9';
+        if(result) {
+            // Block header magic (pi) or end of stream magic (sqrt(pi))
+            long magic = 0;
+            for(int k = 4; k < 10; ++k) {
+                magic = (magic << 8) | u8(buf, i + k);
+            }
+            result = magic == 0x314159265359L || magic == 0x177245385090L;
+        }
+        return result;
+    }
+
+    /**
+     * Length of a bzip2 stream as written for example by pbzip2, which concatenates streams of at most 900KB.
+     * The end of a stream is only known by the start of the next one, whose signature is searched for.
+     * The search resumes where the previous call for the stream left off, so that streams are scanned in linear time.
+     */
+    public static int bzip2StreamLength(byte[] buf, int off, int len, boolean isEof, int scanned) {
+        if(len < 10) {
+            return isEof ? MemberScanner.UNSPLITTABLE : MemberScanner.NEED_MORE;
+        }
+
+        if(!isBzip2StreamStart(buf, off)) {
+            return MemberScanner.UNSPLITTABLE;
+        }
+
+        // The previous call checked all signature positions whose 10 bytes were available
+        int from = Math.max(10, scanned - 9);
+
+        int result = isEof ? len : MemberScanner.NEED_MORE;
+        for(int i = off + from; i + 10 <= off + len; ++i) {
+            if(buf[i] == 'B' && isBzip2StreamStart(buf, i)) {
+                result = i - off;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Length of a zstd frame (or skippable frame), determined by walking its block headers
+     */
+    public static int zstdFrameLength(byte[] buf, int off, int len, boolean isEof, int scanned) {
+        int needMore = isEof ? MemberScanner.UNSPLITTABLE : MemberScanner.NEED_MORE;
+        if(len < 8) {
+            return needMore;
+        }
+
+        long magic = u32le(buf, off);
+        if((magic & 0xfffffff0L) == 0x184d2a50L) {
+            long size = 8 + u32le(buf, off + 4);
+            return size > Integer.MAX_VALUE ? MemberScanner.UNSPLITTABLE : size <= len ? (int)size : needMore;
+        }
+
+        if(magic != 0xfd2fb528L) {
+            return MemberScanner.UNSPLITTABLE;
+        }
+
+        int fhd = u8(buf, off + 4);
+        int fcsFlag = fhd >>> 6;
+        boolean isSingleSegment = (fhd & 0x20) != 0;
+        boolean hasChecksum = (fhd & 0x04) != 0;
+        int didFlag = fhd & 0x03;
+
+        int fcsSize = fcsFlag == 0 ? (isSingleSegment ? 1 : 0) : 1 << fcsFlag;
+        int didSize = didFlag == 3 ? 4 : didFlag;
+        int pos = 5 + (isSingleSegment ? 0 : 1) + didSize + fcsSize;
+
+        boolean isLast = false;
+        while(!isLast) {
+            if(pos + 3 > len) {
+                return needMore;
+            }
+
+            int header = u16le(buf, off + pos) | (u8(buf, off + pos + 2) << 16);
+            isLast = (header & 1) != 0;
+            int type = (header >>> 1) & 3;
+            int size = header >>> 3;
+            if(type == 3) {
+                return MemberScanner.UNSPLITTABLE;
+            }
+
+            // RLE blocks consist of a single byte
+            pos += 3 + (type == 1 ? 1 : size);
+        }
+
+        if(hasChecksum) {
+            pos += 4;
+        }
+
+        int result = pos <= len ? pos : needMore;
+        return result;
+    }
+}
@@ -0,0 +1,261 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.collect.Range;
+
+/**
+ * Sidecar index of the start offsets of the lines of a log file, which allows for seeking to a line directly.
+ *
+ * The index file consists of a header of three longs - a magic number, the size and the last modification time of the log file -
+ * followed by the byte offset of each line as a big endian long, i.e. a plain long array that can be memory mapped.
+ * Offsets are looked up with positional reads, so opening an index takes no heap space regardless of the size of the log.
+ *
+ * Line terminators are the same as those of {@link ChunkedLogReader}, so line numbers agree with the sequence ids it assigns.
+ * An index is considered stale if the size or the modification time of the log file differ from those recorded in its header.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class LineIndex
+    implements Closeable
+{
+    public static final String DEFAULT_SUFFIX = ".lsqidx";
+
+    // "LSQLIDX1" in ASCII
+    public static final long MAGIC = 0x4c53514c49445831l;
+
+    protected static final int HEADER_LONGS = 3;
+
+    protected Path path;
+    protected FileChannel channel;
+    protected long numLines;
+    protected long fileSize;
+    protected long lastModified;
+
+    protected LineIndex(Path path, FileChannel channel, long numLines, long fileSize, long lastModified) {
+        this.path = path;
+        this.channel = channel;
+        this.numLines = numLines;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+    }
+
+    public static Path getDefaultIndexPath(Path logFile) {
+        return logFile.resolveSibling(logFile.getFileName() + DEFAULT_SUFFIX);
+    }
+
+    /**
+     * Scan a log file and write the offsets of its lines to the index file.
+     * The index is written to a temporary file first which replaces the index file once complete,
+     * so that concurrent readers never see a partial index.
+     *
+     * @param logFile
+     * @param indexFile
+     * @return The number of lines
+     * @throws IOException
+     */
+    public static long build(Path logFile, Path indexFile) throws IOException {
+        long fileSize = Files.size(logFile);
+        long lastModified = Files.getLastModifiedTime(logFile).toMillis();
+
+        Path tmpFile = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName().toString(), ".tmp");
+        long result = 0;
+        try(FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), 1 << 16))) {
+
+            out.writeLong(MAGIC);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+
+            result = writeLineOffsets(channel, fileSize, out);
+        } catch(IOException | RuntimeException e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+
+        Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return result;
+    }
+
+    /**
+     * Write the offset of each line start within the first size bytes of the channel.
+     * A line starts at offset 0 and after each '\n', '\r' or "\r\n" that is followed by further bytes.
+     */
+    protected static long writeLineOffsets(FileChannel channel, long size, DataOutputStream out) throws IOException {
+        long result = 0;
+        if(size > 0) {
+            out.writeLong(0);
+            ++result;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        boolean pendingCr = false;
+        long pos = 0;
+        while(pos < size) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if(n <= 0) {
+                break;
+            }
+            n = (int)Math.min(n, size - pos);
+
+            for(int i = 0; i < n; ++i) {
+                byte b = buffer.get(i);
+                long next = pos + i + 1;
+                if(pendingCr) {
+                    pendingCr = false;
+                    if(b == '\n') {
+                        if(next < size) {
+                            out.writeLong(next);
+                            ++result;
+                        }
+                        continue;
+                    }
+                    // A lone '\r' terminated the previous line
+                    out.writeLong(next - 1);
+                    ++result;
+                }
+
+                if(b == '\n') {
+                    if(next < size) {
+                        out.writeLong(next);
+                        ++result;
+                    }
+                } else if(b == '\r') {
+                    pendingCr = true;
+                }
+            }
+            pos += n;
+        }
+
+        return result;
+    }
+
+    /**
+     * Open an index file
+     *
+     * @param indexFile
+     * @return
+     * @throws IOException
+     */
+    public static LineIndex open(Path indexFile) throws IOException {
+        FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if(size < HEADER_LONGS * Long.BYTES || size % Long.BYTES != 0) {
+                throw new IOException("Not a line index: " + indexFile);
+            }
+
+            LongBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_LONGS * Long.BYTES).asLongBuffer();
+            if(header.get(0) != MAGIC) {
+                throw new IOException("Not a line index: " + indexFile);
+            }
+
+            long numLines = size / Long.BYTES - HEADER_LONGS;
+            return new LineIndex(indexFile, channel, numLines, header.get(1), header.get(2));
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open the index of a log file, building it if it does not exist or is stale
+     *
+     * @param logFile
+     * @param indexFile
+     * @return
+     * @throws IOException
+     */
+    public static LineIndex openOrBuild(Path logFile, Path indexFile) throws IOException {
+        if(Files.exists(indexFile)) {
+            LineIndex result = open(indexFile);
+            if(result.isValidFor(logFile)) {
+                return result;
+            }
+            result.close();
+        }
+
+        build(logFile, indexFile);
+        return open(indexFile);
+    }
+
+    public boolean isValidFor(Path logFile) throws IOException {
+        return Files.size(logFile) == fileSize && Files.getLastModifiedTime(logFile).toMillis() == lastModified;
+    }
+
+    public long getNumLines() {
+        return numLines;
+    }
+
+    /**
+     * The offset of the given line; the number of lines yields the size of the log file
+     */
+    public long getLineStart(long line) throws IOException {
+        if(line < 0 || line > numLines) {
+            throw new IndexOutOfBoundsException("Line " + line + " is out of range [0, " + numLines + "]");
+        }
+
+        long result;
+        if(line == numLines) {
+            result = fileSize;
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            long pos = (HEADER_LONGS + line) * Long.BYTES;
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, pos + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of line index " + path);
+                }
+            }
+            result = buffer.getLong(0);
+        }
+        return result;
+    }
+
+    /**
+     * The byte range of a range of lines. The range is clamped to the lines of the file.
+     *
+     * @param firstLine
+     * @param count The number of lines or null for all lines up to the end of the file
+     * @return
+     */
+    public Range<Long> getByteRange(long firstLine, Long count) throws IOException {
+        long first = Math.min(firstLine, numLines);
+        long last = count == null ? numLines : Math.min(first + count, numLines);
+        return Range.closedOpen(getLineStart(first), getLineStart(last));
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "LineIndex [path=" + path + ", lines=" + getNumLines() + ", fileSize=" + fileSize + "]";
+    }
+}
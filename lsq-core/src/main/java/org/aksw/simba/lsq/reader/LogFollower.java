@@ -0,0 +1,201 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Streams;
+
+/**
+ * Iterates the lines of a file that is continuously appended to, in the manner of 'tail -F'.
+ *
+ * The file is read from its start; afterwards it is polled for appended data.
+ * Only complete lines are returned, hence a line that is being written is returned once its line break has been written.
+ * <ul>
+ *   <li>Rotation, i.e. the file at the path being replaced by a new one, is detected by a change of the file key (the inode on unix).
+ *   The remainder of the old file is read before switching to the new one.</li>
+ *   <li>Truncation, i.e. the file becoming shorter than the read position, restarts reading at its start.</li>
+ *   <li>If the file does not exist (yet), for instance during rotation, it is waited for.</li>
+ * </ul>
+ *
+ * The iterator blocks until a line is available; it ends once it is closed or its thread is interrupted.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class LogFollower
+    extends AbstractIterator<String>
+    implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(LogFollower.class);
+
+    public static final long DEFAULT_POLL_INTERVAL_MS = 200;
+
+    protected Path path;
+    protected long pollIntervalMs;
+
+    protected FileChannel channel = null;
+    protected Object fileKey = null;
+    protected long position = 0;
+
+    protected ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    protected ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    protected Deque<String> lines = new ArrayDeque<>();
+
+    protected volatile boolean isClosed = false;
+
+    public LogFollower(Path path) {
+        this(path, DEFAULT_POLL_INTERVAL_MS);
+    }
+
+    public LogFollower(Path path, long pollIntervalMs) {
+        super();
+        this.path = path;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * Create a stream of the lines of the followed file; closing the stream stops following
+     */
+    public static Stream<String> follow(Path path) {
+        LogFollower follower = new LogFollower(path);
+        return Streams.stream(follower).onClose(follower::close);
+    }
+
+    @Override
+    protected String computeNext() {
+        try {
+            while(lines.isEmpty() && !isClosed) {
+                if(!readAvailable() && !checkRotation()) {
+                    Thread.sleep(pollIntervalMs);
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            isClosed = true;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String result = isClosed && lines.isEmpty() ? endOfData() : lines.poll();
+        return result;
+    }
+
+    protected static Object getFileKey(BasicFileAttributes attrs) {
+        // File systems without file keys only support detecting truncation
+        Object result = attrs.fileKey();
+        return result;
+    }
+
+    /**
+     * Read the data that has been appended since the last read
+     *
+     * @return true if any data was read
+     */
+    protected boolean readAvailable() throws IOException {
+        if(channel == null) {
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                fileKey = getFileKey(Files.readAttributes(path, BasicFileAttributes.class));
+                position = 0;
+                logger.info("Following " + path);
+            } catch(NoSuchFileException e) {
+                return false;
+            }
+        }
+
+        boolean result = false;
+        int n;
+        while((n = channel.read(buffer, position)) > 0) {
+            position += n;
+            result = true;
+
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if(b == '\n') {
+                    emitLine();
+                } else {
+                    partialLine.write(b);
+                }
+            }
+            buffer.clear();
+        }
+        return result;
+    }
+
+    protected void emitLine() {
+        byte[] bytes = partialLine.toByteArray();
+        int len = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        lines.add(new String(bytes, 0, len, StandardCharsets.UTF_8));
+        partialLine.reset();
+    }
+
+    /**
+     * Check whether the file has been rotated or truncated
+     *
+     * @return true if reading was reset to the start of a file
+     */
+    protected boolean checkRotation() throws IOException {
+        if(channel == null) {
+            return false;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch(NoSuchFileException e) {
+            // The file is being rotated; keep the old one until the new one appears
+            return false;
+        }
+
+        boolean result = false;
+        if(!Objects.equals(fileKey, getFileKey(attrs))) {
+            // Drain the old file; a final line without line break is complete once the file has been rotated
+            readAvailable();
+            if(partialLine.size() > 0) {
+                emitLine();
+            }
+            channel.close();
+            channel = null;
+            logger.info("Detected rotation of " + path);
+            result = true;
+        } else if(attrs.size() < position) {
+            partialLine.reset();
+            position = 0;
+            logger.info("Detected truncation of " + path);
+            result = true;
+        }
+
+        return result;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        try {
+            if(channel != null) {
+                channel.close();
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.apache.jena.rdf.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Determines the format of a log by evaluating all formats of a registry against a single sample of its lines.
+ *
+ * The sample is read once into memory, and the formats are evaluated concurrently.
+ * The evaluation of a format stops early if it clearly loses, i.e. most of its first records failed,
+ * or if it has a failure while another format has already parsed the whole sample successfully.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class LogFormatProber {
+    private static final Logger logger = LoggerFactory.getLogger(LogFormatProber.class);
+
+    public static final int DEFAULT_SAMPLE_LINES = 1000;
+    public static final int DEFAULT_MAX_SAMPLE_BYTES = 8 * 1024 * 1024;
+
+    // Number of records after which a format with a majority of failures is abandoned
+    public static final int MIN_RECORDS = 10;
+
+    /**
+     * The outcome of evaluating a single format against a sample
+     */
+    public static class ProbeResult {
+        protected String format;
+        protected long records;
+        protected long successes;
+        protected boolean stoppedEarly;
+
+        public ProbeResult(String format) {
+            super();
+            this.format = format;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        /** The number of records the format yielded for the (evaluated part of the) sample */
+        public long getRecords() {
+            return records;
+        }
+
+        public long getSuccesses() {
+            return successes;
+        }
+
+        /** Whether the evaluation was stopped before the whole sample was processed */
+        public boolean isStoppedEarly() {
+            return stoppedEarly;
+        }
+
+        public double getRate() {
+            double result = records == 0 ? 0.0 : successes / (double)records;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d/%d (%.1f%%)%s", format, successes, records, getRate() * 100.0, stoppedEarly ? " - stopped early" : "");
+        }
+    }
+
+    /**
+     * Read up to maxLines lines or maxBytes bytes from the input stream.
+     * No bytes beyond the sample are consumed, hence the remainder of the stream can still be processed.
+     * As the stream is read byte by byte it should be buffered. The stream is not closed.
+     *
+     * @return The bytes read
+     */
+    public static byte[] readSample(InputStream in, int maxLines, int maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int numLines = 0;
+        int c;
+        while(numLines < maxLines && out.size() < maxBytes && (c = in.read()) >= 0) {
+            out.write(c);
+            if(c == '\n') {
+                ++numLines;
+            }
+        }
+
+        byte[] result = out.toByteArray();
+        return result;
+    }
+
+    /**
+     * Evaluate all formats of the registry against the sample
+     *
+     * @param registry
+     * @param sample
+     * @param isSuccess Predicate for whether a record was successfully parsed
+     * @param executor
+     * @return The results ordered by the number of successfully parsed records
+     */
+    public static List<ProbeResult> probe(Map<String, Function<InputStream, Stream<Resource>>> registry, byte[] sample, Predicate<? super Resource> isSuccess, ExecutorService executor) {
+        AtomicBoolean hasPerfectFormat = new AtomicBoolean(false);
+
+        List<Future<ProbeResult>> futures = new ArrayList<>();
+        for(Entry<String, Function<InputStream, Stream<Resource>>> entry : registry.entrySet()) {
+            String format = entry.getKey();
+            Function<InputStream, Stream<Resource>> fn = entry.getValue();
+
+            futures.add(executor.submit(() -> evaluate(format, fn, sample, isSuccess, hasPerfectFormat)));
+        }
+
+        List<ProbeResult> result = new ArrayList<>();
+        for(Future<ProbeResult> future : futures) {
+            result.add(ParallelStreamUtils.getUnchecked(future));
+        }
+
+        result.sort(Comparator.comparingLong(ProbeResult::getSuccesses).reversed()
+                .thenComparing(ProbeResult::getFormat));
+
+        return result;
+    }
+
+    protected static ProbeResult evaluate(String format, Function<InputStream, Stream<Resource>> fn, byte[] sample, Predicate<? super Resource> isSuccess, AtomicBoolean hasPerfectFormat) {
+        ProbeResult result = new ProbeResult(format);
+
+        try(Stream<Resource> stream = fn.apply(new ByteArrayInputStream(sample))) {
+            Iterator<Resource> it = stream.iterator();
+            while(it.hasNext()) {
+                Resource r = it.next();
+
+                ++result.records;
+                if(isSuccess.test(r)) {
+                    ++result.successes;
+                }
+
+                long failures = result.records - result.successes;
+                boolean isLoss = result.records >= MIN_RECORDS && failures * 2 > result.records;
+                if((failures > 0 && hasPerfectFormat.get()) || isLoss || Thread.currentThread().isInterrupted()) {
+                    result.stoppedEarly = true;
+                    break;
+                }
+            }
+        } catch(Exception e) {
+            // Formats that fail on the sample, such as rdf on a web server log, simply do not match
+            logger.debug("Format " + format + " failed on sample", e);
+            result.stoppedEarly = true;
+        }
+
+        if(!result.stoppedEarly && result.records > 0 && result.successes == result.records) {
+            hasPerfectFormat.set(true);
+        }
+
+        return result;
+    }
+
+    /**
+     * Evaluate all formats against a sample using a thread pool of the given size
+     */
+    public static List<ProbeResult> probe(Map<String, Function<InputStream, Stream<Resource>>> registry, byte[] sample, Predicate<? super Resource> isSuccess, int numThreads) {
+        ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("lsq-probe-%d", Math.max(1, Math.min(numThreads, registry.size())));
+        try {
+            return probe(registry, sample, isSuccess, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * An input stream that decompresses its raw input on an executor.
+ *
+ * Many compression formats allow for concatenating independently compressed members, such as the blocks of bgzip,
+ * the streams of pbzip2 or zstd frames. If the boundaries of the members can be determined from the raw bytes,
+ * batches of consecutive members are decompressed concurrently and their output is emitted in order.
+ * As soon as the boundary of a member cannot be determined - for instance for gzip members without block size
+ * or a single zstd frame spanning the whole file - the remainder is decompressed sequentially, though still
+ * ahead of the consumer on the executor.
+ *
+ * At most maxPending batches are in flight at any time, which bounds the memory consumption.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class ParallelDecompressingInputStream
+    extends InputStream
+{
+    public static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_MEMBER_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Determines the length of the first member in a region of raw bytes
+     */
+    @FunctionalInterface
+    public static interface MemberScanner {
+        /** The region does not contain a complete member yet */
+        public static final int NEED_MORE = -1;
+
+        /** The member's boundary cannot be determined from the raw bytes */
+        public static final int UNSPLITTABLE = -2;
+
+        /**
+         * @param buf
+         * @param off Start of the member
+         * @param len Number of available bytes; at least one
+         * @param isEof Whether the region extends to the end of the input
+         * @param scanned Number of leading bytes of the member that were passed to the previous call for it,
+         *   which returned NEED_MORE; 0 on the first call. Allows scanners to resume rather than to rescan.
+         * @return The length of the member, NEED_MORE or UNSPLITTABLE
+         */
+        int memberLength(byte[] buf, int off, int len, boolean isEof, int scanned);
+    }
+
+    @FunctionalInterface
+    public static interface Decoder {
+        InputStream apply(InputStream in) throws IOException;
+    }
+
+    protected InputStream raw;
+    protected MemberScanner scanner;
+    protected Decoder decoder;
+    protected ExecutorService executor;
+    protected boolean ownsExecutor;
+    protected int maxPending;
+    protected int batchSize;
+    protected int maxMemberSize;
+
+    // Raw bytes that have not been submitted yet
+    protected byte[] buf;
+    protected int start = 0;
+    protected int end = 0;
+    protected boolean isRawEof = false;
+
+    // Number of bytes of the next member that have been passed to the scanner so far
+    protected int scanned = 0;
+
+    // Once false, the remaining input is decompressed sequentially
+    protected boolean isSplittable;
+    protected InputStream sequential = null;
+    protected CompletableFuture<byte[]> tail = null;
+
+    protected Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+    protected byte[] current = null;
+    protected int currentPos = 0;
+    protected boolean isEof = false;
+
+    /**
+     *
+     * @param raw The compressed input
+     * @param scanner Scanner for member boundaries; null to decompress sequentially on the executor
+     * @param decoder Decoder for a sequence of concatenated members
+     * @param executor
+     * @param ownsExecutor Whether to shut down the executor when this stream is closed
+     * @param maxPending
+     */
+    public ParallelDecompressingInputStream(InputStream raw, MemberScanner scanner, Decoder decoder, ExecutorService executor, boolean ownsExecutor, int maxPending) {
+        this(raw, scanner, decoder, executor, ownsExecutor, maxPending, DEFAULT_BATCH_SIZE, DEFAULT_MAX_MEMBER_SIZE);
+    }
+
+    public ParallelDecompressingInputStream(InputStream raw, MemberScanner scanner, Decoder decoder, ExecutorService executor, boolean ownsExecutor, int maxPending, int batchSize, int maxMemberSize) {
+        super();
+        this.raw = raw;
+        this.scanner = scanner;
+        this.decoder = decoder;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.maxMemberSize = maxMemberSize;
+        this.isSplittable = scanner != null;
+        this.buf = new byte[batchSize + 64 * 1024];
+    }
+
+    /**
+     * Read more raw bytes into the buffer, moving the unsubmitted bytes to its start and growing it if necessary
+     */
+    protected void fillBuffer() throws IOException {
+        if(start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+
+        if(end == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+
+        int n = raw.read(buf, end, buf.length - end);
+        if(n < 0) {
+            isRawEof = true;
+        } else {
+            end += n;
+        }
+    }
+
+    /**
+     * Determine the length of the next batch of complete members in the buffer.
+     * Clears isSplittable if a member boundary cannot be determined.
+     */
+    protected int nextBatchLength() throws IOException {
+        int result = 0;
+        while(isSplittable && result < batchSize) {
+            int off = start + result;
+            int available = end - off;
+            if(available == 0 && isRawEof) {
+                break;
+            }
+
+            int n = available == 0
+                    ? MemberScanner.NEED_MORE
+                    : scanner.memberLength(buf, off, available, isRawEof, scanned);
+
+            if(n > 0) {
+                result += n;
+                scanned = 0;
+            } else if(n == MemberScanner.NEED_MORE && !isRawEof && available < maxMemberSize) {
+                scanned = available;
+                fillBuffer();
+            } else {
+                // Unknown boundary, truncated input or oversized member
+                isSplittable = false;
+            }
+        }
+        return result;
+    }
+
+    protected byte[] decode(byte[] batch) {
+        try(InputStream in = decoder.apply(new ByteArrayInputStream(batch))) {
+            return IOUtils.toByteArray(in);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the next chunk from the sequential decoder
+     *
+     * @return The chunk or null at the end of the input
+     */
+    protected byte[] readSequential() {
+        try {
+            byte[] chunk = new byte[batchSize];
+            int n = IOUtils.readFully(sequential, chunk);
+            return n == 0 ? null : n == chunk.length ? chunk : Arrays.copyOf(chunk, n);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected void submit() throws IOException {
+        while(pending.size() < maxPending && !isEof) {
+            CompletableFuture<byte[]> future;
+            int n = nextBatchLength();
+            if(n > 0) {
+                byte[] batch = Arrays.copyOfRange(buf, start, start + n);
+                start += n;
+                future = CompletableFuture.supplyAsync(() -> decode(batch), executor);
+            } else if(isSplittable) {
+                // All members have been submitted
+                break;
+            } else {
+                if(sequential == null) {
+                    sequential = decoder.apply(new SequenceInputStream(new ByteArrayInputStream(buf, start, end - start), raw));
+                    tail = CompletableFuture.completedFuture(null);
+                }
+                // Chain the reads, as the sequential decoder must not be used concurrently
+                tail = tail.thenApplyAsync(x -> readSequential(), executor);
+                future = tail;
+            }
+            pending.add(future);
+        }
+    }
+
+    /**
+     * Make the next decompressed chunk the current one
+     *
+     * @return false if there is no more data
+     */
+    protected boolean nextChunk() throws IOException {
+        submit();
+        CompletableFuture<byte[]> future = pending.poll();
+        if(future == null) {
+            isEof = true;
+        } else {
+            try {
+                current = ParallelStreamUtils.getUnchecked(future);
+            } catch(UncheckedIOException e) {
+                throw e.getCause();
+            }
+            currentPos = 0;
+
+            // The sequential decoder yields null at its end
+            isEof = current == null;
+        }
+        return !isEof;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+
+        while(!isEof && (current == null || currentPos >= current.length)) {
+            nextChunk();
+        }
+
+        int result = -1;
+        if(!isEof) {
+            result = Math.min(len, current.length - currentPos);
+            System.arraycopy(current, currentPos, b, off, result);
+            currentPos += result;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        isEof = true;
+        pending.forEach(f -> f.cancel(true));
+        pending.clear();
+        try {
+            if(ownsExecutor) {
+                executor.shutdownNow();
+            }
+        } finally {
+            // The sequential decoder may hold resources of its own, such as the native context of zstd
+            try {
+                if(sequential != null) {
+                    sequential.close();
+                }
+            } finally {
+                raw.close();
+            }
+        }
+    }
+}
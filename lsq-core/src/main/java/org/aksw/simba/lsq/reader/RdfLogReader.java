@@ -0,0 +1,202 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.lang.PipedRDFIterator;
+import org.apache.jena.riot.lang.PipedTriplesStream;
+import org.apache.jena.riot.tokens.Token;
+import org.apache.jena.riot.tokens.Tokenizer;
+import org.apache.jena.riot.tokens.TokenizerFactory;
+import org.apache.jena.sparql.core.Quad;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reader for query logs that have been RDFized before, such as the output of previous LSQ runs.
+ * Only the {@link LSQ#text} triples are of interest; each yields a record with the triple's subject and its text as the query.
+ *
+ * For the line based syntaxes N-Triples and N-Quads, lines are filtered by a plain substring search for
+ * the predicate IRI; only the few matching lines are tokenized and only their subject and object become nodes.
+ * As lines are independent, files can be parsed in parallel with {@link ChunkedLogReader} using {@link #parseLine(CharSequence)}.
+ * Note, that predicates written with unicode escapes are not recognized by the filter.
+ *
+ * Other syntaxes, such as Turtle and RDF Thrift, are parsed with Jena's streaming parser on a separate thread;
+ * triples are filtered by their predicate before they are handed over to the consumer.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class RdfLogReader {
+
+    public static final String TEXT_IRI_TOKEN = "<" + LSQ.Strs.text + ">";
+
+    public static boolean isLineBased(Lang lang) {
+        return Lang.NTRIPLES.equals(lang) || Lang.NQUADS.equals(lang);
+    }
+
+    public static boolean contains(CharSequence str, String pattern) {
+        int n = str.length() - pattern.length();
+        char first = pattern.charAt(0);
+        for(int i = 0; i <= n; ++i) {
+            if(str.charAt(i) == first) {
+                int j = 1;
+                while(j < pattern.length() && str.charAt(i + j) == pattern.charAt(j)) {
+                    ++j;
+                }
+                if(j == pattern.length()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public static Resource createRecord(Node subject, Node text) {
+        Resource result = CompactGraph.createModel().asRDFNode(subject).asResource()
+                .addLiteral(LSQ.query, text.getLiteralValue());
+        return result;
+    }
+
+    /**
+     * Parse an N-Triples or N-Quads line into a record if its predicate is {@link LSQ#text}
+     *
+     * @param line
+     * @return The record or null if the line does not carry a query text
+     */
+    public static Resource parseLine(CharSequence line) {
+        Resource result = null;
+        if(contains(line, TEXT_IRI_TOKEN)) {
+            Tokenizer tokenizer = TokenizerFactory.makeTokenizerString(line.toString());
+            try {
+                Token s = tokenizer.hasNext() ? tokenizer.next() : null;
+                Token p = tokenizer.hasNext() ? tokenizer.next() : null;
+                Token o = tokenizer.hasNext() ? tokenizer.next() : null;
+
+                // The IRI may also occur within a literal
+                if(o != null && p.isIRI() && LSQ.Strs.text.equals(p.getImage())) {
+                    result = createRecord(s.asNode(), o.asNode());
+                }
+            } finally {
+                tokenizer.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Create a stream of records from RDF data in the given syntax
+     *
+     * @param in
+     * @param lang
+     * @param baseIRI
+     * @return
+     */
+    public static Stream<Resource> createStream(InputStream in, Lang lang, String baseIRI) {
+        Stream<Resource> result;
+        if(isLineBased(lang)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            result = reader.lines()
+                    .map(RdfLogReader::parseLine)
+                    .filter(Objects::nonNull);
+        } else {
+            result = createParsedStream(in, lang, baseIRI);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the input on a separate thread, handing over only the {@link LSQ#text} triples.
+     * Quads are reduced to their triples. Parse errors are rethrown in the consuming thread.
+     */
+    public static Stream<Resource> createParsedStream(InputStream in, Lang lang, String baseIRI) {
+        Node p = LSQ.text.asNode();
+
+        // The parser also finishes its sink on errors; the end is only signalled once an error has been recorded
+        class FilteringSink extends PipedTriplesStream {
+            public FilteringSink(PipedRDFIterator<Triple> sink) {
+                super(sink);
+            }
+
+            @Override
+            public void triple(Triple triple) {
+                if(p.equals(triple.getPredicate())) {
+                    super.triple(triple);
+                }
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                triple(quad.asTriple());
+            }
+
+            @Override
+            public void finish() {
+            }
+
+            public void signalEnd() {
+                super.finish();
+            }
+        }
+
+        PipedRDFIterator<Triple> it = new PipedRDFIterator<>();
+        FilteringSink sink = new FilteringSink(it);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("lsq-rdf-parser-%d").setDaemon(true).build());
+        executor.submit(() -> {
+            try {
+                RDFDataMgr.parse(sink, in, baseIRI, lang);
+            } catch(Throwable e) {
+                error.set(e);
+            } finally {
+                sink.signalEnd();
+            }
+        });
+        executor.shutdown();
+
+        // Rethrow a parse error once the triples parsed before it have been consumed
+        Iterator<Triple> checkedIt = new AbstractIterator<Triple>() {
+            @Override
+            protected Triple computeNext() {
+                if(it.hasNext()) {
+                    return it.next();
+                }
+
+                Throwable e = error.get();
+                if(e != null) {
+                    throw e instanceof RiotException ? (RiotException)e : new RiotException(e);
+                }
+                return endOfData();
+            }
+        };
+
+        Stream<Resource> result = Streams.stream(checkedIt)
+                .map(t -> createRecord(t.getSubject(), t.getObject()))
+                .onClose(() -> {
+                    it.close();
+                    executor.shutdownNow();
+                });
+
+        return result;
+    }
+}
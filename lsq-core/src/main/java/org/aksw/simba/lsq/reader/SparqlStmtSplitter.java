@@ -0,0 +1,379 @@
+package org.aksw.simba.lsq.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Incrementally splits a sequence of SPARQL statements read from a {@link Reader} into the texts of the individual statements.
+ *
+ * Only one statement is buffered at a time. The splitter does not parse the statements but
+ * tracks the lexical structure of the input - strings, IRIs, comments and the nesting of brackets - and
+ * ends a statement
+ * <ul>
+ *   <li>at a ';' at the top level, which separates update requests, or</li>
+ *   <li>before a top level PREFIX, BASE, SELECT, CONSTRUCT, DESCRIBE or ASK keyword if the current statement already contains a query or update form, or</li>
+ *   <li>before a top level update keyword such as INSERT if the current statement already contains a query form.</li>
+ * </ul>
+ * Comments following the last token of a statement are attached to the next statement.
+ * Hence, a syntax error in one statement does not affect the others, and parsing can be deferred to
+ * (possibly concurrent) consumers of the returned texts.
+ * A line break within a short string literal is a syntax error, upon which the nesting is reset to the top level
+ * so that subsequent statements are recognized.
+ *
+ * Statements exceeding the maximum length are skipped with a warning; this bounds the memory consumption
+ * if for example a string literal is not terminated.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class SparqlStmtSplitter
+    extends AbstractIterator<String>
+{
+    private static final Logger logger = LoggerFactory.getLogger(SparqlStmtSplitter.class);
+
+    public static final int DEFAULT_MAX_STATEMENT_LENGTH = 16 * 1024 * 1024;
+
+    protected static final Set<String> queryForms = ImmutableSet.of("SELECT", "CONSTRUCT", "DESCRIBE", "ASK");
+    protected static final Set<String> updateForms = ImmutableSet.of("INSERT", "DELETE", "LOAD", "CLEAR", "CREATE", "DROP", "COPY", "MOVE", "ADD", "WITH");
+    protected static final Set<String> prologueKeywords = ImmutableSet.of("PREFIX", "BASE");
+
+    protected Reader reader;
+    protected int maxStatementLength;
+
+    // Input buffer; at most the last character read is ever pushed back
+    protected char[] chars = new char[8192];
+    protected int charsPos = 0;
+    protected int charsLen = 0;
+
+    // State of the current statement
+    protected StringBuilder buffer = new StringBuilder();
+    protected long statementOffset = 0;
+    // The end of the last token in the buffer; 0 if there is none yet
+    protected int codeEnd = 0;
+    protected boolean hasQueryForm = false;
+    protected boolean hasUpdateForm = false;
+    protected boolean isOversized = false;
+    protected int depth = 0;
+
+    // The last character read; used to recognize the start of keywords
+    protected int prev = -1;
+    protected long offset = 0;
+
+    public SparqlStmtSplitter(Reader reader) {
+        this(reader, DEFAULT_MAX_STATEMENT_LENGTH);
+    }
+
+    public SparqlStmtSplitter(Reader reader, int maxStatementLength) {
+        super();
+        this.reader = reader;
+        this.maxStatementLength = maxStatementLength;
+    }
+
+    @Override
+    protected String computeNext() {
+        String result;
+        try {
+            result = readStatement();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if(result == null) {
+            result = endOfData();
+        }
+        return result;
+    }
+
+    protected int read() throws IOException {
+        if(charsPos >= charsLen) {
+            int n = reader.read(chars, 0, chars.length);
+            charsPos = 0;
+            charsLen = Math.max(n, 0);
+        }
+
+        int result = -1;
+        if(charsPos < charsLen) {
+            result = chars[charsPos++];
+            ++offset;
+        }
+        return result;
+    }
+
+    /**
+     * Push back the character returned by the immediately preceding call to {@link #read()}
+     */
+    protected void unread(int c) {
+        if(c >= 0) {
+            --charsPos;
+            --offset;
+        }
+    }
+
+    protected void append(int c) {
+        if(buffer.length() < maxStatementLength) {
+            buffer.append((char)c);
+        } else {
+            isOversized = true;
+        }
+        prev = c;
+    }
+
+    protected void markToken() {
+        codeEnd = buffer.length();
+    }
+
+    /**
+     * End the current statement after its last token and start a new one.
+     * Any whitespace and comments after the last token become the start of the new statement.
+     *
+     * @return The text of the ended statement or null if it is empty or has been skipped
+     */
+    protected String endStatement() {
+        String result = null;
+        if(isOversized) {
+            logger.warn("Skipping statement at character offset " + statementOffset + " which exceeds the maximum length of " + maxStatementLength);
+        } else if(codeEnd > 0) {
+            result = buffer.substring(0, codeEnd).trim();
+        }
+
+        String remainder = isOversized ? "" : buffer.substring(codeEnd);
+        buffer.setLength(0);
+        buffer.append(remainder);
+
+        statementOffset = offset;
+        codeEnd = 0;
+        hasQueryForm = false;
+        hasUpdateForm = false;
+        isOversized = false;
+        depth = 0;
+
+        return result;
+    }
+
+    /**
+     * Read the next non-empty statement
+     *
+     * @return The statement's text or null if the end of the input has been reached
+     */
+    protected String readStatement() throws IOException {
+        String result = null;
+        while(result == null) {
+            int c = read();
+            if(c < 0) {
+                result = endStatement();
+                if(result == null) {
+                    break;
+                }
+                continue;
+            }
+
+            switch(c) {
+            case '#':
+                append(c);
+                readComment();
+                break;
+            case '"':
+            case '\'':
+                append(c);
+                if(!readString(c)) {
+                    depth = 0;
+                }
+                markToken();
+                break;
+            case '<':
+                append(c);
+                readIri();
+                markToken();
+                break;
+            case '{':
+            case '(':
+            case '[':
+                append(c);
+                ++depth;
+                markToken();
+                break;
+            case '}':
+            case ')':
+            case ']':
+                append(c);
+                depth = Math.max(0, depth - 1);
+                markToken();
+                break;
+            case ';':
+                if(depth == 0) {
+                    prev = c;
+                    result = endStatement();
+                } else {
+                    append(c);
+                }
+                break;
+            default:
+                if(isKeywordStart(c) && !isNameChar(prev)) {
+                    String word = readWord(c);
+                    String keyword = word.toUpperCase(Locale.ROOT);
+
+                    if(depth == 0) {
+                        boolean isQueryForm = queryForms.contains(keyword);
+                        boolean isUpdateForm = updateForms.contains(keyword);
+
+                        boolean isStatementStart =
+                                ((isQueryForm || prologueKeywords.contains(keyword)) && (hasQueryForm || hasUpdateForm)) ||
+                                (isUpdateForm && hasQueryForm);
+
+                        if(isStatementStart) {
+                            result = endStatement();
+                            statementOffset = offset - word.length();
+                        }
+
+                        hasQueryForm |= isQueryForm;
+                        hasUpdateForm |= isUpdateForm;
+                    }
+
+                    for(int i = 0; i < word.length(); ++i) {
+                        append(word.charAt(i));
+                    }
+                    markToken();
+                } else {
+                    append(c);
+                    if(!Character.isWhitespace(c)) {
+                        markToken();
+                    }
+                }
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    protected void readComment() throws IOException {
+        int c;
+        while((c = read()) >= 0) {
+            if(c == '\n' || c == '\r') {
+                unread(c);
+                break;
+            }
+            append(c);
+        }
+    }
+
+    /**
+     * Read the remainder of a string whose opening quote has already been read.
+     * As short strings must not contain line breaks, a line break ends such a string; this recovers from
+     * unterminated strings.
+     *
+     * @return false if the string was ended by a line break
+     */
+    protected boolean readString(int quote) throws IOException {
+        boolean result = true;
+        int c1 = read();
+        int c2 = c1 == quote ? read() : -1;
+
+        boolean isLong = c1 == quote && c2 == quote;
+        if(isLong) {
+            append(c1);
+            append(c2);
+
+            int numQuotes = 0;
+            int c;
+            while(numQuotes < 3 && (c = read()) >= 0) {
+                append(c);
+                if(c == '\\') {
+                    numQuotes = 0;
+                    c = read();
+                    if(c >= 0) {
+                        append(c);
+                    }
+                } else {
+                    numQuotes = c == quote ? numQuotes + 1 : 0;
+                }
+            }
+        } else if(c1 == quote) {
+            // Empty string
+            append(c1);
+            unread(c2);
+        } else {
+            unread(c1);
+
+            int c;
+            while((c = read()) >= 0) {
+                if(c == '\n' || c == '\r') {
+                    unread(c);
+                    result = false;
+                    break;
+                }
+
+                append(c);
+                if(c == quote) {
+                    break;
+                } else if(c == '\\') {
+                    c = read();
+                    if(c >= 0) {
+                        append(c);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Read the remainder of an IRI whose '&lt;' has already been read.
+     * If a character that is not allowed in IRIs is encountered, the '&lt;' was a comparison operator,
+     * and the character is left to be processed as usual.
+     */
+    protected void readIri() throws IOException {
+        int c;
+        while((c = read()) >= 0) {
+            if(c <= 0x20 || "<\"{}|^`\\".indexOf(c) >= 0) {
+                unread(c);
+                break;
+            }
+
+            append(c);
+            if(c == '>') {
+                break;
+            }
+        }
+    }
+
+    protected String readWord(int first) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append((char)first);
+        int c;
+        while((c = read()) >= 0 && isWordChar(c)) {
+            sb.append((char)c);
+        }
+        unread(c);
+        return sb.toString();
+    }
+
+    protected static boolean isKeywordStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Whether the character may be part of a keyword or prefixed name
+     */
+    protected static boolean isWordChar(int c) {
+        return c >= 0 && (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == ':');
+    }
+
+    /**
+     * Whether the character may be part of a keyword, variable, prefixed name or language tag.
+     * Keywords are only recognized if they are not preceded by such a character.
+     */
+    protected static boolean isNameChar(int c) {
+        return isWordChar(c) || c == '?' || c == '$' || c == '@' || c == '.';
+    }
+}
@@ -0,0 +1,56 @@
+package org.aksw.simba.lsq.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only view of a range of a byte array as a character sequence where each byte is one character.
+ * This is only correct for ASCII content; no copy of the data is made until {@link #toString()} is called.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class AsciiCharSequence
+    implements CharSequence
+{
+    protected byte[] bytes;
+    protected int offset;
+    protected int length;
+
+    public AsciiCharSequence(byte[] bytes, int offset, int length) {
+        super();
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+
+        char result = (char)(bytes[offset + index] & 0xff);
+        return result;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length);
+        }
+
+        CharSequence result = new AsciiCharSequence(bytes, offset + start, end - start);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        String result = new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        return result;
+    }
+}
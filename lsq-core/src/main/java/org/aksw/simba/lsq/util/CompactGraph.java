@@ -0,0 +1,88 @@
+package org.aksw.simba.lsq.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.atlas.lib.CacheFactory;
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.impl.ModelCom;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+
+/**
+ * A graph that keeps its triples in a plain list and answers find requests by scanning it.
+ *
+ * This is intended for the handful of triples that describe a single log record:
+ * Jena's default in-memory graph maintains three hash based indexes per graph, which for
+ * such small graphs amounts to kilobytes of overhead per record.
+ * The same holds for the node cache of each model, hence use {@link #createModel()} to obtain a model without one.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class CompactGraph
+    extends GraphBase
+{
+    protected List<Triple> triples;
+
+    public CompactGraph() {
+        this(8);
+    }
+
+    public CompactGraph(int initialCapacity) {
+        super();
+        this.triples = new ArrayList<>(initialCapacity);
+    }
+
+    /**
+     * Create a model backed by a fresh compact graph whose node cache is disabled
+     *
+     * @return
+     */
+    public static Model createModel() {
+        ModelCom result = new ModelCom(new CompactGraph());
+        result.setNodeCache(CacheFactory.createNullCache());
+        return result;
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        // Graphs have set semantics
+        if(!triples.contains(t)) {
+            triples.add(t);
+        }
+    }
+
+    @Override
+    public void performDelete(Triple t) {
+        triples.remove(t);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
+        List<Triple> matches = new ArrayList<>();
+        for(Triple t : triples) {
+            if(triplePattern.matches(t)) {
+                matches.add(t);
+            }
+        }
+
+        // Iterate a copy, so that callers may modify the graph while iterating the matches
+        ExtendedIterator<Triple> result = WrappedIterator.create(matches.iterator());
+        return result;
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return triples.size();
+    }
+
+    @Override
+    public void clear() {
+        triples.clear();
+        getEventManager().notifyEvent(this, GraphEvents.removeAll);
+    }
+}
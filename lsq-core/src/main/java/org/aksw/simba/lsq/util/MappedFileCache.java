@@ -0,0 +1,308 @@
+package org.aksw.simba.lsq.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent cache of byte arrays keyed by strings, which is backed by a single file.
+ *
+ * The file consists of a header of two longs - a magic number and the version of the cached data -
+ * followed by entries of the form [long lastUsed][int keyLength][int valueLength][key][value].
+ * On opening, the file is memory mapped and its keys are indexed in memory; values are only read upon lookup.
+ * New entries are appended to the file. Lookups update the time of last use of an entry in place.
+ *
+ * The cache is invalidated as a whole if its version differs from the requested one, such that cached data
+ * that depends on the code or vocabulary that produced it is never served to a different version.
+ * The size of the file is bounded: Entries that do not fit are not stored, and if the file exceeds
+ * its bound when it is opened, it is compacted to the most recently used entries.
+ *
+ * Instances are safe for use by multiple threads.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class MappedFileCache
+    implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileCache.class);
+
+    // "LSQCACH1" in ASCII
+    public static final long MAGIC = 0x4c53514341434831l;
+
+    protected static final int HEADER_SIZE = 16;
+    protected static final int ENTRY_HEADER_SIZE = 16;
+
+    // After compaction, the file is reduced to this fraction of its bound, so that there is room for new entries
+    protected static final double COMPACTION_RATIO = 0.75;
+
+    protected Path path;
+    protected FileChannel channel;
+    protected MappedByteBuffer mapped;
+    protected long maxSize;
+
+    protected Map<String, Long> keyToOffset = new ConcurrentHashMap<>();
+
+    // The end of the last entry; guarded by this
+    protected long size;
+
+    protected AtomicLong hits = new AtomicLong();
+    protected AtomicLong misses = new AtomicLong();
+
+    protected MappedFileCache(Path path, FileChannel channel, long maxSize) {
+        this.path = path;
+        this.channel = channel;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Open the cache file at the given path, creating it if it does not exist
+     *
+     * @param path
+     * @param version The version of the cached data; a file of a different version is cleared
+     * @param maxSize The bound on the size of the file in bytes
+     * @return
+     * @throws IOException
+     */
+    public static MappedFileCache open(Path path, long version, long maxSize) throws IOException {
+        if(maxSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The size of a cache file is limited to " + Integer.MAX_VALUE + " bytes, got " + maxSize);
+        }
+
+        if(Files.exists(path) && Files.size(path) > maxSize) {
+            compact(path, version, (long)(maxSize * COMPACTION_RATIO));
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedFileCache result = new MappedFileCache(path, channel, maxSize);
+        try {
+            result.init(version);
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return result;
+    }
+
+    protected void init(long version) throws IOException {
+        long fileSize = channel.size();
+
+        boolean isValid = false;
+        if(fileSize >= HEADER_SIZE && fileSize <= Integer.MAX_VALUE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            isValid = header.getLong(0) == MAGIC && header.getLong(8) == version;
+        }
+
+        if(!isValid) {
+            if(fileSize > 0) {
+                logger.info("Clearing cache " + path + " as it was created by a different version");
+            }
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(0, MAGIC).putLong(8, version);
+            writeFully(channel, header, 0);
+            fileSize = HEADER_SIZE;
+        }
+
+        mapped = channel.map(MapMode.READ_WRITE, 0, fileSize);
+
+        // Index the keys; a partially written entry at the end, such as after a crash, is discarded
+        long offset = HEADER_SIZE;
+        while(offset + ENTRY_HEADER_SIZE <= fileSize) {
+            int keyLength = mapped.getInt((int)offset + 8);
+            int valueLength = mapped.getInt((int)offset + 12);
+            long end = offset + ENTRY_HEADER_SIZE + keyLength + valueLength;
+            if(keyLength < 0 || valueLength < 0 || end > fileSize) {
+                break;
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer buf = mapped.duplicate();
+            buf.position((int)offset + ENTRY_HEADER_SIZE);
+            buf.get(keyBytes);
+            keyToOffset.put(new String(keyBytes, StandardCharsets.UTF_8), offset);
+
+            offset = end;
+        }
+
+        if(offset != fileSize) {
+            logger.warn("Discarding incomplete entry at the end of cache " + path);
+            channel.truncate(offset);
+        }
+        size = offset;
+
+        logger.info("Opened cache " + path + " with " + keyToOffset.size() + " entries in " + size + " bytes");
+    }
+
+    /**
+     * Reduce the cache file to its most recently used entries that fit into the given size.
+     * The entries are written to a temporary file which then replaces the cache file.
+     */
+    protected static void compact(Path path, long version, long targetSize) throws IOException {
+        Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try(MappedFileCache source = open(path, version, Integer.MAX_VALUE)) {
+            List<long[]> entries = new ArrayList<>(); // offset, lastUsed, length
+            for(long offset : source.keyToOffset.values()) {
+                int keyLength = source.mapped.getInt((int)offset + 8);
+                int valueLength = source.mapped.getInt((int)offset + 12);
+                entries.add(new long[] { offset, source.mapped.getLong((int)offset), ENTRY_HEADER_SIZE + keyLength + valueLength });
+            }
+            entries.sort(Comparator.<long[]>comparingLong(e -> e[1]).reversed());
+
+            try(FileChannel target = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putLong(0, MAGIC).putLong(8, version);
+                writeFully(target, header, 0);
+
+                long targetOffset = HEADER_SIZE;
+                int numRetained = 0;
+                for(long[] e : entries) {
+                    if(targetOffset + e[2] > targetSize) {
+                        break;
+                    }
+                    ByteBuffer buf = source.mapped.duplicate();
+                    buf.position((int)e[0]);
+                    buf.limit((int)(e[0] + e[2]));
+                    writeFully(target, buf, targetOffset);
+                    targetOffset += e[2];
+                    ++numRetained;
+                }
+                logger.info("Compacted cache " + path + " from " + entries.size() + " to " + numRetained + " most recently used entries");
+            }
+        }
+
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Look up the value of a key and mark the entry as used
+     *
+     * @param key
+     * @return The value or null if there is none
+     */
+    public byte[] get(String key) {
+        Long tmp = keyToOffset.get(key);
+        if(tmp == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+
+        long offset = tmp;
+        byte[] result;
+        try {
+            if(offset + ENTRY_HEADER_SIZE <= mapped.capacity()) {
+                // Entries of the mapped region are read from memory
+                int keyLength = mapped.getInt((int)offset + 8);
+                int valueLength = mapped.getInt((int)offset + 12);
+                result = new byte[valueLength];
+                ByteBuffer buf = mapped.duplicate();
+                buf.position((int)offset + ENTRY_HEADER_SIZE + keyLength);
+                buf.get(result);
+
+                mapped.putLong((int)offset, System.currentTimeMillis());
+            } else {
+                // Entries appended after opening are read from the file
+                ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+                readFully(channel, header, offset);
+                int keyLength = header.getInt(8);
+                ByteBuffer buf = ByteBuffer.allocate(header.getInt(12));
+                readFully(channel, buf, offset + ENTRY_HEADER_SIZE + keyLength);
+                result = buf.array();
+            }
+        } catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Add an entry unless the key is already present or the entry would exceed the bound on the size of the file
+     *
+     * @return true if the entry was added
+     */
+    public synchronized boolean put(String key, byte[] value) {
+        if(keyToOffset.containsKey(key)) {
+            return false;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = ENTRY_HEADER_SIZE + keyBytes.length + value.length;
+        if(size + length > maxSize) {
+            return false;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.putLong(System.currentTimeMillis()).putInt(keyBytes.length).putInt(value.length).put(keyBytes).put(value);
+        buf.flip();
+        try {
+            writeFully(channel, buf, size);
+        } catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        keyToOffset.put(key, size);
+        size += length;
+        return true;
+    }
+
+    public int getNumEntries() {
+        return keyToOffset.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    protected static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while(buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if(n < 0) {
+                throw new IOException("Unexpected end of file at offset " + pos);
+            }
+            pos += n;
+        }
+    }
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while(buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        logger.info("Closing cache " + path + " with " + keyToOffset.size() + " entries; " + hits.get() + " hits and " + misses.get() + " misses");
+        mapped.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,204 @@
+package org.aksw.simba.lsq.util;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A map from keys of one or two longs to a long value (or to nothing, for use as a set),
+ * stored in open addressing tables in off-heap memory.
+ * Keys are expected to be hashes, i.e. to have well distributed bits; the all-zero key marks empty slots and cannot be stored.
+ *
+ * The tables are split into segments with a lock each. Segments are doubled in size when they become half full,
+ * so the expected number of keys passed to the constructor only serves to avoid resizing; it is no bound.
+ * Once added, the value of a key never changes.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class OffHeapLongMap {
+    protected static final int NUM_SEGMENTS = 64;
+
+    // A direct buffer holds less than 2^31 bytes, so a segment is limited to 2^27 longs
+    protected static final int MAX_SEGMENT_LONGS = 1 << 27;
+
+    protected int keyLongs;
+    protected int longsPerEntry;
+    protected Segment[] segments;
+
+    /**
+     * @param expectedSize The expected number of keys
+     * @param keyLongs The number of longs of a key; 1 or 2
+     * @param hasValues Whether a value is stored with each key
+     */
+    public OffHeapLongMap(long expectedSize, int keyLongs, boolean hasValues) {
+        if(keyLongs != 1 && keyLongs != 2) {
+            throw new IllegalArgumentException("Keys must comprise 1 or 2 longs, got " + keyLongs);
+        }
+
+        this.keyLongs = keyLongs;
+        this.longsPerEntry = keyLongs + (hasValues ? 1 : 0);
+
+        // Tables are kept at most half full
+        long slotsPerSegment = Math.max(2 * expectedSize / NUM_SEGMENTS, 16);
+        int capacity = Integer.highestOneBit((int)Math.min(slotsPerSegment - 1, MAX_SEGMENT_LONGS / longsPerEntry / 2)) << 1;
+
+        segments = new Segment[NUM_SEGMENTS];
+        for(int i = 0; i < NUM_SEGMENTS; ++i) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Add a key with a value unless the key is present
+     *
+     * @param k1
+     * @param k2 Must be 0 for keys of one long
+     * @param value Ignored if the map has no values
+     * @return true if the key was absent before
+     */
+    public boolean putIfAbsent(long k1, long k2, long value) {
+        return getSegment(k1).putIfAbsent(k1, k2, value);
+    }
+
+    /**
+     * @return The value of the key or the default value if the key is absent or the map has no values
+     */
+    public long get(long k1, long k2, long defaultValue) {
+        return getSegment(k1).get(k1, k2, defaultValue);
+    }
+
+    public boolean containsKey(long k1, long k2) {
+        return getSegment(k1).containsKey(k1, k2);
+    }
+
+    protected Segment getSegment(long k1) {
+        // Keys may be narrower than 64 bits, so the segment is selected by the top 6 bits of a multiplicative hash of the key;
+        // the low bits of the key select the slot within the segment
+        return segments[(int)((k1 * 0x9E3779B97F4A7C15L) >>> 58)];
+    }
+
+    public long size() {
+        long result = 0;
+        for(Segment segment : segments) {
+            result += segment.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of bytes of off-heap memory allocated for the tables
+     */
+    public long getAllocatedBytes() {
+        long result = 0;
+        for(Segment segment : segments) {
+            result += segment.getAllocatedBytes();
+        }
+        return result;
+    }
+
+    protected class Segment {
+        protected LongBuffer table;
+        protected int capacity; // number of slots; a power of two
+        protected int size;
+
+        public Segment(int capacity) {
+            this.capacity = capacity;
+            this.table = allocate(capacity);
+        }
+
+        protected LongBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * longsPerEntry * 8).asLongBuffer();
+        }
+
+        /** Index of the slot that holds the key or of the empty slot where it belongs */
+        protected int findSlot(LongBuffer table, int capacity, long k1, long k2) {
+            int mask = capacity - 1;
+            int slot = (int)k1 & mask;
+            while(true) {
+                int i = slot * longsPerEntry;
+                long e1 = table.get(i);
+                long e2 = keyLongs == 2 ? table.get(i + 1) : 0;
+                if((e1 == 0 && e2 == 0) || (e1 == k1 && e2 == k2)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        protected void put(LongBuffer table, int slot, long k1, long k2, long value) {
+            int i = slot * longsPerEntry;
+            table.put(i, k1);
+            if(keyLongs == 2) {
+                table.put(i + 1, k2);
+            }
+            if(longsPerEntry > keyLongs) {
+                table.put(i + keyLongs, value);
+            }
+        }
+
+        protected boolean isOccupied(LongBuffer table, int slot) {
+            int i = slot * longsPerEntry;
+            return table.get(i) != 0 || (keyLongs == 2 && table.get(i + 1) != 0);
+        }
+
+        public synchronized boolean putIfAbsent(long k1, long k2, long value) {
+            int slot = findSlot(table, capacity, k1, k2);
+            boolean result = !isOccupied(table, slot);
+            if(result) {
+                put(table, slot, k1, k2, value);
+                ++size;
+                if(2 * size > capacity) {
+                    grow();
+                }
+            }
+            return result;
+        }
+
+        public synchronized long get(long k1, long k2, long defaultValue) {
+            int slot = findSlot(table, capacity, k1, k2);
+            long result = isOccupied(table, slot) && longsPerEntry > keyLongs
+                    ? table.get(slot * longsPerEntry + keyLongs)
+                    : defaultValue;
+            return result;
+        }
+
+        public synchronized boolean containsKey(long k1, long k2) {
+            int slot = findSlot(table, capacity, k1, k2);
+            boolean result = isOccupied(table, slot);
+            return result;
+        }
+
+        protected void grow() {
+            if((long)capacity * 2 * longsPerEntry > MAX_SEGMENT_LONGS) {
+                if(size == capacity - 1) {
+                    throw new IllegalStateException("Capacity of off-heap map exhausted with " + size + " entries in a segment");
+                }
+                // Continue with a higher load factor
+                return;
+            }
+
+            int newCapacity = capacity * 2;
+            LongBuffer newTable = allocate(newCapacity);
+            for(int slot = 0; slot < capacity; ++slot) {
+                if(isOccupied(table, slot)) {
+                    int i = slot * longsPerEntry;
+                    long e1 = table.get(i);
+                    long e2 = keyLongs == 2 ? table.get(i + 1) : 0;
+                    long value = longsPerEntry > keyLongs ? table.get(i + keyLongs) : 0;
+                    put(newTable, findSlot(newTable, newCapacity, e1, e2), e1, e2, value);
+                }
+            }
+
+            table = newTable;
+            capacity = newCapacity;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        public synchronized long getAllocatedBytes() {
+            return (long)capacity * longsPerEntry * 8;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package org.aksw.simba.lsq.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Utils for processing streams with thread pools while retaining the order of the items.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class ParallelStreamUtils {
+
+    /**
+     * Create a fixed size thread pool of daemon threads
+     *
+     * @param nameFormat Thread name format such as "lsq-worker-%d"
+     * @param numThreads
+     * @return
+     */
+    public static ExecutorService newFixedThreadPool(String nameFormat, int numThreads) {
+        ExecutorService result = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+                .setNameFormat(nameFormat)
+                .setDaemon(true)
+                .build());
+        return result;
+    }
+
+    /**
+     * Map the items of a stream by submitting them to an executor.
+     * At most maxPending items are in flight at any time, which bounds the memory consumption
+     * and provides backpressure on the source.
+     * The items of the returned stream are emitted in the order of the source stream.
+     *
+     * The source is consumed lazily by the thread that consumes the returned stream.
+     * Exceptions raised by fn are rethrown in that thread.
+     * Null results are passed on as they are.
+     *
+     * Closing the returned stream cancels pending tasks and closes the source; the executor is not shut down.
+     *
+     * @param in
+     * @param fn
+     * @param executor
+     * @param maxPending
+     * @return
+     */
+    public static <T, R> Stream<R> mapOrdered(Stream<T> in, Function<? super T, ? extends R> fn, ExecutorService executor, int maxPending) {
+        if(maxPending < 1) {
+            throw new IllegalArgumentException("At least one pending item required, got: " + maxPending);
+        }
+
+        Iterator<T> it = in.iterator();
+        Deque<Future<? extends R>> pending = new ArrayDeque<>();
+
+        Iterator<R> resultIt = new Iterator<R>() {
+            @Override
+            public boolean hasNext() {
+                while(pending.size() < maxPending && it.hasNext()) {
+                    T item = it.next();
+                    pending.add(executor.submit(() -> fn.apply(item)));
+                }
+
+                boolean result = !pending.isEmpty();
+                return result;
+            }
+
+            @Override
+            public R next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                Future<? extends R> head = pending.poll();
+                R result = getUnchecked(head);
+                return result;
+            }
+        };
+
+        Stream<R> result = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(resultIt, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    pending.forEach(f -> f.cancel(true));
+                    pending.clear();
+                    in.close();
+                });
+
+        return result;
+    }
+
+    /**
+     * Consume a stream on a dedicated thread which hands the items over to the consumer of the returned stream
+     * via a queue of the given capacity.
+     * This decouples (I/O bound) reading of the source from the processing of the items.
+     *
+     * Exceptions raised while reading are rethrown in the consuming thread.
+     * Closing the returned stream stops the reading thread, which in turn closes the source.
+     *
+     * @param in
+     * @param capacity
+     * @param threadName
+     * @return
+     */
+    public static <T> Stream<T> prefetch(Stream<T> in, int capacity, String threadName) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, got: " + capacity);
+        }
+
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(capacity);
+
+        Thread thread = new Thread(() -> {
+            try {
+                try {
+                    Iterator<T> it = in.iterator();
+                    while(it.hasNext()) {
+                        T item = it.next();
+                        queue.put(item == null ? NULL : item);
+                    }
+                    // Release the source before signalling its end
+                    in.close();
+                    queue.put(END);
+                } catch(InterruptedException e) {
+                    // Consumer closed the stream
+                } catch(Throwable e) {
+                    queue.put(new Failure(e));
+                }
+            } catch(InterruptedException e) {
+                // Consumer closed the stream
+            } finally {
+                in.close();
+            }
+        }, threadName);
+        thread.setDaemon(true);
+
+        Iterator<T> resultIt = new Iterator<T>() {
+            protected Object current = null;
+
+            @Override
+            public boolean hasNext() {
+                if(current == null) {
+                    try {
+                        current = queue.take();
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                if(current instanceof Failure) {
+                    Throwable cause = ((Failure)current).cause;
+                    if(cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    } else if(cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+
+                boolean result = current != END;
+                return result;
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                @SuppressWarnings("unchecked")
+                T result = current == NULL ? null : (T)current;
+                current = null;
+                return result;
+            }
+        };
+
+        thread.start();
+
+        Stream<T> result = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(resultIt, Spliterator.ORDERED), false)
+                .onClose(thread::interrupt);
+
+        return result;
+    }
+
+    /**
+     * Concatenate the streams opened for a list of sources in the order of the list.
+     * Sources are opened one after another by the consuming thread once the previous one has been exhausted and closed.
+     *
+     * Unlike {@link Stream#flatMap(Function)}, whose iterator buffers the whole stream of a source before
+     * emitting its first item, the items are passed on one by one; hence sources may be unbounded, such as followed logs.
+     *
+     * Closing the returned stream closes the open source.
+     *
+     * @param sources
+     * @param open Function that opens the stream of a source
+     * @return
+     */
+    public static <S, T> Stream<T> concat(List<S> sources, Function<? super S, ? extends Stream<T>> open) {
+        AtomicReference<Stream<T>> current = new AtomicReference<>();
+
+        Iterator<T> resultIt = new Iterator<T>() {
+            protected int nextSource = 0;
+            protected Iterator<T> headIt = null;
+
+            @Override
+            public boolean hasNext() {
+                boolean result;
+                while(true) {
+                    if(headIt == null) {
+                        if(nextSource >= sources.size()) {
+                            result = false;
+                            break;
+                        }
+
+                        Stream<T> s = open.apply(sources.get(nextSource++));
+                        current.set(s);
+                        headIt = s.iterator();
+                    }
+
+                    if(headIt.hasNext()) {
+                        result = true;
+                        break;
+                    }
+
+                    current.getAndSet(null).close();
+                    headIt = null;
+                }
+                return result;
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return headIt.next();
+            }
+        };
+
+        Stream<T> result = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(resultIt, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    Stream<T> s = current.getAndSet(null);
+                    if(s != null) {
+                        s.close();
+                    }
+                });
+
+        return result;
+    }
+
+    /**
+     * Concatenate the streams opened for a list of sources in the order of the list.
+     * Up to maxOpen sources are opened and read ahead concurrently, each on its own thread via {@link #prefetch(Stream, int, String)};
+     * a source is opened on its reading thread, and the next one once the consumer has exhausted and closed an earlier one.
+     *
+     * Closing the returned stream closes all open streams.
+     *
+     * @param sources
+     * @param open Function that opens the stream of a source
+     * @param maxOpen Maximum number of concurrently open sources
+     * @param capacity Queue capacity per open source
+     * @param threadNameFormat Name format for the reading threads which is passed the index of the source
+     * @return
+     */
+    public static <S, T> Stream<T> concatPrefetched(List<S> sources, Function<? super S, ? extends Stream<T>> open, int maxOpen, int capacity, String threadNameFormat) {
+        if(maxOpen < 1) {
+            throw new IllegalArgumentException("At least one open source required, got: " + maxOpen);
+        }
+
+        Deque<Stream<T>> opened = new ArrayDeque<>();
+
+        Iterator<T> resultIt = new Iterator<T>() {
+            protected int nextSource = 0;
+            protected Iterator<T> headIt = null;
+
+            @Override
+            public boolean hasNext() {
+                boolean result;
+                while(true) {
+                    while(opened.size() < maxOpen && nextSource < sources.size()) {
+                        S source = sources.get(nextSource);
+
+                        // Defer opening the source to the reading thread
+                        AtomicReference<Stream<T>> inner = new AtomicReference<>();
+                        Stream<T> lazy = StreamSupport.stream(() -> {
+                                Stream<T> s = open.apply(source);
+                                inner.set(s);
+                                return s.spliterator();
+                            }, Spliterator.ORDERED, false)
+                            .onClose(() -> {
+                                Stream<T> s = inner.get();
+                                if(s != null) {
+                                    s.close();
+                                }
+                            });
+
+                        opened.add(prefetch(lazy, capacity, String.format(threadNameFormat, nextSource)));
+                        ++nextSource;
+                    }
+
+                    if(opened.isEmpty()) {
+                        result = false;
+                        break;
+                    }
+
+                    if(headIt == null) {
+                        headIt = opened.peek().iterator();
+                    }
+
+                    if(headIt.hasNext()) {
+                        result = true;
+                        break;
+                    }
+
+                    opened.poll().close();
+                    headIt = null;
+                }
+                return result;
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return headIt.next();
+            }
+        };
+
+        Stream<T> result = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(resultIt, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    opened.forEach(Stream::close);
+                    opened.clear();
+                });
+
+        return result;
+    }
+
+    private static final Object NULL = new Object();
+    private static final Object END = new Object();
+
+    private static class Failure {
+        protected Throwable cause;
+
+        public Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * Wait for a future's value and unwrap any exception
+     *
+     * @param future
+     * @return
+     */
+    public static <T> T getUnchecked(Future<T> future) {
+        T result;
+        try {
+            result = future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        return result;
+    }
+}
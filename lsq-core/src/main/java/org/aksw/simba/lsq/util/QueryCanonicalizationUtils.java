@@ -0,0 +1,132 @@
+package org.aksw.simba.lsq.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVars;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpProject;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.graph.NodeTransform;
+import org.apache.jena.sparql.graph.NodeTransformLib;
+import org.apache.jena.sparql.util.FmtUtils;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Canonical forms of SPARQL queries, such that queries that only differ in the names of their variables,
+ * their prefix declarations, whitespace, the order of the triple patterns of their basic graph patterns
+ * or the order of the conditions of their filters have the same canonical form.
+ *
+ * The canonical form is the SSE serialization of the algebra of the query, which has no prefixes,
+ * preceded by the query form, the dataset and the template of construct queries.
+ * Triple patterns and filter conditions are sorted by their serialization with all variables replaced by
+ * the same placeholder; afterwards, the variables are renamed to ?v0, ?v1, ... in the order of their
+ * first occurrence. Patterns that only differ in their variables thus retain their order, which
+ * makes the canonical form independent of variable names but possibly not of the order of such patterns.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class QueryCanonicalizationUtils {
+    protected static final Var placeholder = Var.alloc("_");
+
+    protected static final NodeTransform toPlaceholder = node -> node.isVariable() ? placeholder : node;
+
+    /**
+     * Obtain the canonical form of a query
+     *
+     * @param query
+     * @return
+     */
+    public static String canonicalize(Query query) {
+        Op op = Algebra.compile(query);
+
+        op = Transformer.transform(new TransformCopy() {
+            @Override
+            public Op transform(OpBGP opBGP) {
+                List<Triple> triples = new ArrayList<>(opBGP.getPattern().getList());
+                triples.sort(Comparator.comparing(t -> FmtUtils.stringForTriple(NodeTransformLib.transform(toPlaceholder, t))));
+                return new OpBGP(BasicPattern.wrap(triples));
+            }
+
+            @Override
+            public Op transform(OpFilter opFilter, Op subOp) {
+                List<Expr> exprs = new ArrayList<>(opFilter.getExprs().getList());
+                exprs.sort(Comparator.comparing(e -> e.applyNodeTransform(toPlaceholder).toString()));
+                return OpFilter.filterDirect(new ExprList(exprs), subOp);
+            }
+        }, op);
+
+        Map<Var, Node> renames = new HashMap<>();
+        for(Var v : OpVars.mentionedVars(op)) {
+            renames.put(v, Var.alloc("v" + renames.size()));
+        }
+        NodeTransform rename = node -> node.isVariable()
+                ? renames.computeIfAbsent((Var)node, v -> Var.alloc("v" + renames.size()))
+                : node;
+
+        op = NodeTransformLib.transform(rename, op);
+
+        // The variables of SELECT * are in the order of their appearance in the query text
+        if(query.isQueryResultStar() && op instanceof OpProject) {
+            OpProject opProject = (OpProject)op;
+            List<Var> vars = new ArrayList<>(opProject.getVars());
+            vars.sort(Comparator.comparing(Var::getVarName));
+            op = new OpProject(opProject.getSubOp(), vars);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(query.isSelectType() ? "SELECT" : query.isConstructType() ? "CONSTRUCT" : query.isAskType() ? "ASK" : "DESCRIBE");
+        sb.append("\n");
+
+        if(query.hasDatasetDescription()) {
+            sb.append("FROM ").append(query.getGraphURIs().stream().sorted().collect(Collectors.toList())).append("\n");
+            sb.append("FROM NAMED ").append(query.getNamedGraphURIs().stream().sorted().collect(Collectors.toList())).append("\n");
+        }
+
+        if(query.isConstructType()) {
+            List<String> template = query.getConstructTemplate().getTriples().stream()
+                    .map(t -> FmtUtils.stringForTriple(NodeTransformLib.transform(rename, t)))
+                    .sorted()
+                    .collect(Collectors.toList());
+            sb.append(template).append("\n");
+        }
+
+        if(query.isDescribeType()) {
+            List<String> nodes = new ArrayList<>();
+            query.getResultURIs().forEach(node -> nodes.add(FmtUtils.stringForNode(node)));
+            query.getProjectVars().forEach(v -> nodes.add(FmtUtils.stringForNode(rename.apply(v))));
+            sb.append(nodes).append("\n");
+        }
+
+        sb.append(op);
+
+        String result = sb.toString();
+        return result;
+    }
+
+    /**
+     * The hash of a canonical form as 32 hex characters
+     */
+    public static String hash(String canonicalForm) {
+        String result = Hashing.murmur3_128().hashString(canonicalForm, StandardCharsets.UTF_8).toString();
+        return result;
+    }
+}
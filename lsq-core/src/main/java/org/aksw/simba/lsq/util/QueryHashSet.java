@@ -0,0 +1,98 @@
+package org.aksw.simba.lsq.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A set of strings, such as the queries seen so far, that only retains a 64 or 128 bit murmur3 hash of each string.
+ * Memory usage is thus independent of the length of the strings, at the cost of a false positive probability
+ * of about n^2 / 2^(bits + 1) for n distinct strings; for 128 bits this is negligible in practice,
+ * for 64 bits it is about 3 * 10^-4 for 10^8 strings.
+ *
+ * The hashes are the keys of an {@link OffHeapLongMap} without values.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class QueryHashSet {
+    protected static final HashFunction hashFunction = Hashing.murmur3_128();
+
+    protected int hashBits;
+    protected OffHeapLongMap hashes;
+
+    /**
+     * @param expectedSize The expected number of strings
+     * @param hashBits 64 or 128
+     */
+    public QueryHashSet(long expectedSize, int hashBits) {
+        if(hashBits != 64 && hashBits != 128) {
+            throw new IllegalArgumentException("Hash bits must be 64 or 128, got " + hashBits);
+        }
+
+        this.hashBits = hashBits;
+        this.hashes = new OffHeapLongMap(expectedSize, hashBits / 64, false);
+    }
+
+    /**
+     * Add a string
+     *
+     * @param str
+     * @return true if the string was not contained before
+     */
+    public boolean add(String str) {
+        long[] h = hash128(str);
+        return addHash(h[0], h[1]);
+    }
+
+    /**
+     * Add a string by its 128 bit hash as returned by {@link #hash128(String)}, such as one recorded in a log of seen queries.
+     * Sets of 64 bit hashes only retain the first half.
+     *
+     * @return true if the hash was not contained before
+     */
+    public boolean addHash(long h1, long h2) {
+        long k2 = key2(h1, h2);
+        boolean result = hashes.putIfAbsent(key1(h1, k2), k2, 0);
+        return result;
+    }
+
+    public boolean contains(String str) {
+        long[] h = hash128(str);
+        long k2 = key2(h[0], h[1]);
+        boolean result = hashes.containsKey(key1(h[0], k2), k2);
+        return result;
+    }
+
+    /**
+     * The 128 bit murmur3 hash of a string as two longs
+     */
+    public static long[] hash128(String str) {
+        HashCode hash = hashFunction.hashString(str, StandardCharsets.UTF_8);
+        ByteBuffer bytes = ByteBuffer.wrap(hash.asBytes());
+        return new long[] { bytes.getLong(), bytes.getLong() };
+    }
+
+    protected long key2(long h1, long h2) {
+        return hashBits == 128 ? h2 : 0;
+    }
+
+    protected long key1(long h1, long k2) {
+        // All-zero entries mark empty slots
+        return h1 == 0 && k2 == 0 ? 1 : h1;
+    }
+
+    public long size() {
+        return hashes.size();
+    }
+
+    /**
+     * @return The number of bytes of off-heap memory allocated for the tables
+     */
+    public long getAllocatedBytes() {
+        return hashes.getAllocatedBytes();
+    }
+}
@@ -0,0 +1,152 @@
+package org.aksw.simba.lsq.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.aksw.commons.util.strings.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Mints the ids of queries, from which the IRIs of queries and of their aspects (such as the remote and local
+ * executions) are derived.
+ *
+ * By default, an id is the hex representation of the first 64 bits of the murmur3 128 bit hash of the query string.
+ * All ids are registered together with the remaining 64 bits of their hash, so that collisions of ids
+ * are detected: A query whose id has already been registered for a different query is given the hex
+ * representation of its full 128 bit hash as its id instead. For a given order of the queries, ids are thus deterministic;
+ * callers that process queries concurrently need to request the ids in input order.
+ * The registry takes 16 bytes of off-heap memory per query at a load of at most 0.5.
+ * Newly registered ids can be reported to a listener, such that the registry can be restored with {@link #register(long, long)}
+ * when a run is resumed; otherwise, a query that was given the full hash before would get the short id after resuming.
+ *
+ * In legacy mode, ids are the first 8 hex characters of the md5 hash of the query string, as in earlier versions of LSQ.
+ * As these are only 32 bits long, collisions are expected for large logs; they are not resolved, in order to retain the ids.
+ * Ids are registered with further bits of the md5 hash only in order to count and log the collisions.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class QueryIdRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(QueryIdRegistry.class);
+
+    /**
+     * Notified with the key and value of each newly registered id
+     */
+    @FunctionalInterface
+    public static interface RegistrationListener {
+        void onRegistered(long key, long value);
+    }
+
+    protected static final HashFunction hashFunction = Hashing.murmur3_128();
+
+    protected boolean legacy;
+
+    // Maps the key of an id to the further hash bits of the query it was first minted for
+    protected OffHeapLongMap registeredIds;
+
+    // The pairs of keys and further hash bits of the queries that collided with a registered id
+    protected OffHeapLongMap collisions = new OffHeapLongMap(16, 2, false);
+
+    public QueryIdRegistry(boolean legacy) {
+        this(legacy, 1024);
+    }
+
+    /**
+     * @param legacy Whether to mint the 8 character md5 based ids
+     * @param expectedSize The expected number of distinct queries
+     */
+    public QueryIdRegistry(boolean legacy, long expectedSize) {
+        this.legacy = legacy;
+        this.registeredIds = new OffHeapLongMap(expectedSize, 1, true);
+    }
+
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    /**
+     * The number of distinct queries whose id had already been registered for a different query
+     */
+    public long getNumCollisions() {
+        return collisions.size();
+    }
+
+    /**
+     * Obtain the id of a query string and register it
+     *
+     * @param queryStr
+     * @return
+     */
+    public String getQueryId(String queryStr) {
+        return getQueryId(queryStr, null);
+    }
+
+    /**
+     * Obtain the id of a query string and register it
+     *
+     * @param queryStr
+     * @param listener Notified if the id is newly registered; may be null
+     * @return
+     */
+    public String getQueryId(String queryStr, RegistrationListener listener) {
+        String result;
+        long key;
+        long value;
+        if(legacy) {
+            String md5 = StringUtils.md5Hash(queryStr);
+            result = md5.substring(0, 8);
+            key = Long.parseLong(result, 16);
+            value = Long.parseUnsignedLong(md5.substring(8, 24), 16);
+        } else {
+            ByteBuffer hash = ByteBuffer.wrap(hashFunction.hashString(queryStr, StandardCharsets.UTF_8).asBytes());
+            key = hash.getLong();
+            value = hash.getLong();
+            result = toHex(key);
+        }
+
+        // The registered value identifies the query within the queries of the same id; key 0 marks empty slots
+        long k = key == 0 ? Long.MIN_VALUE : key;
+        if(registeredIds.putIfAbsent(k, 0, value)) {
+            if(listener != null) {
+                listener.onRegistered(k, value);
+            }
+        } else if(registeredIds.get(k, 0, value) != value) {
+            if(!legacy) {
+                result = result + toHex(value);
+            }
+
+            // Repetitions of a colliding query are no further collisions
+            if(collisions.putIfAbsent(k, value, 0)) {
+                if(collisions.size() == 1) {
+                    logger.warn(legacy
+                            ? "Query id " + result + " is shared by different queries; legacy query ids are not disambiguated"
+                            : "Query id collision resolved by using the full hash " + result);
+                } else {
+                    logger.debug("Query id collision for " + result);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Restore an id registration reported to a {@link RegistrationListener}
+     *
+     * @param key
+     * @param value
+     * @return true if the key had not been registered before
+     */
+    public boolean register(long key, long value) {
+        return registeredIds.putIfAbsent(key, 0, value);
+    }
+
+    protected static String toHex(long value) {
+        String str = Long.toHexString(value);
+        return "0000000000000000".substring(str.length()) + str;
+    }
+}
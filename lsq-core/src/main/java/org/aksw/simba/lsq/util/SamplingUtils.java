@@ -0,0 +1,99 @@
+package org.aksw.simba.lsq.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Utils for drawing samples from streams in a single pass.
+ *
+ * Reservoir sampling (Algorithm R) retains a uniform sample of n items from a stream of unknown length
+ * while holding no more than n items in memory. For a stratified sample, each stratum has a reservoir of its own.
+ * The sample is emitted in the order of the stream, and for a given seed it is deterministic.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class SamplingUtils {
+
+    /**
+     * A uniform sample of a single stratum
+     */
+    public static class Reservoir<T> {
+        protected int capacity;
+        protected long seen = 0;
+        protected List<Entry<Long, T>> items = new ArrayList<>();
+
+        public Reservoir(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public void offer(long index, T item, SplittableRandom random) {
+            ++seen;
+            if(items.size() < capacity) {
+                items.add(Maps.immutableEntry(index, item));
+            } else {
+                long j = random.nextLong(seen);
+                if(j < capacity) {
+                    items.set((int)j, Maps.immutableEntry(index, item));
+                }
+            }
+        }
+
+        public long getSeen() {
+            return seen;
+        }
+
+        public List<Entry<Long, T>> getItems() {
+            return items;
+        }
+    }
+
+    /**
+     * Draw a sample of at most n items per stratum. The input is consumed entirely when the
+     * first item of the returned stream is requested; closing the returned stream closes the input.
+     *
+     * @param stream
+     * @param n Sample size per stratum
+     * @param stratumFn Maps items to their stratum; null for a single stratum. Null keys form a stratum of their own.
+     * @param seed
+     * @return The sampled items in the order of the input
+     */
+    public static <T> Stream<T> sample(Stream<T> stream, int n, Function<? super T, ?> stratumFn, long seed) {
+        Stream<T> result = Stream.of(stream)
+                .flatMap(s -> sampleToList(s, n, stratumFn, seed).stream())
+                .onClose(stream::close);
+        return result;
+    }
+
+    public static <T> List<T> sampleToList(Stream<T> stream, int n, Function<? super T, ?> stratumFn, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<Object, Reservoir<T>> strata = new HashMap<>();
+
+        long index = 0;
+        Iterator<T> it = stream.iterator();
+        while(it.hasNext()) {
+            T item = it.next();
+            Object stratum = stratumFn == null ? null : stratumFn.apply(item);
+            strata.computeIfAbsent(stratum, k -> new Reservoir<>(n)).offer(index++, item, random);
+        }
+
+        List<T> result = strata.values().stream()
+                .flatMap(r -> r.getItems().stream())
+                .sorted(Comparator.comparing(Entry::getKey))
+                .map(Entry::getValue)
+                .collect(Collectors.toList());
+
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package org.aksw.simba.lsq.util;
+
+import java.util.function.Supplier;
+
+/**
+ * A gate that lets tasks running on different threads pass a critical section
+ * strictly in the order of the tickets bound to them.
+ *
+ * Tickets must be consecutive numbers starting from 0 and every bound ticket must pass the gate exactly once,
+ * either by calling {@link #runInTurn(Supplier)} or eventually {@link #unbind()}.
+ * Threads without a bound ticket pass the gate immediately, hence sequential processing is unaffected.
+ *
+ * This is used to make decisions that depend on the processing history - such as whether a query
+ * has already been executed - deterministic under parallel processing.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class SequentialGate {
+    protected long nextTicket = 0;
+    protected ThreadLocal<Long> boundTicket = new ThreadLocal<>();
+
+    /**
+     * Bind a ticket to the current thread
+     *
+     * @param ticket
+     */
+    public void bind(long ticket) {
+        boundTicket.set(ticket);
+    }
+
+    /**
+     * Pass the gate with the current thread's ticket if this did not happen yet.
+     * Must be called in a finally block by whoever bound the ticket.
+     */
+    public void unbind() {
+        if(boundTicket.get() != null) {
+            runInTurn(() -> null);
+        }
+    }
+
+    /**
+     * Wait until it is the current thread's turn, run the action and let the next ticket pass.
+     * If no ticket is bound, the action is run immediately.
+     *
+     * @param action
+     * @return The action's result
+     */
+    public <T> T runInTurn(Supplier<T> action) {
+        Long ticket = boundTicket.get();
+
+        T result;
+        if(ticket == null) {
+            result = action.get();
+        } else {
+            boundTicket.remove();
+
+            synchronized(this) {
+                try {
+                    while(nextTicket != ticket) {
+                        wait();
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+
+                try {
+                    result = action.get();
+                } finally {
+                    ++nextTicket;
+                    notifyAll();
+                }
+            }
+        }
+
+        return result;
+    }
+}
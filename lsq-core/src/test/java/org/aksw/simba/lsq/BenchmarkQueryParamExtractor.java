@@ -0,0 +1,113 @@
+package org.aksw.simba.lsq;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.aksw.simba.lsq.parser.Mapper;
+import org.aksw.simba.lsq.parser.QueryParamExtractor;
+import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+
+/**
+ * Compares the throughput of extracting the query from request paths with {@link QueryParamExtractor}
+ * against the former approach of decoding all parameters with URLEncodedUtils.
+ * Not run as part of the test suite; run the main method manually, optionally passing the number of rounds.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class BenchmarkQueryParamExtractor {
+
+    /** The former implementation of WebLogParser.extractQueryString */
+    public static String extractWithUrlEncodedUtils(String pathStr) {
+        pathStr = WebLogParser.encodeUnsafeCharacters(pathStr);
+        int queryStrOffset = pathStr.indexOf("?");
+
+        String result = null;
+        if(queryStrOffset >= 0) {
+            List<NameValuePair> qsArgs = URLEncodedUtils.parse(pathStr.substring(queryStrOffset + 1), StandardCharsets.UTF_8);
+            result = qsArgs.stream()
+                .filter(x -> x.getName().equals("query"))
+                .findFirst()
+                .map(x -> x.getValue())
+                .orElse(null);
+        }
+        return result;
+    }
+
+    public static class Result {
+        public long millis;
+
+        /** The total length of the extracted queries, which keeps the extraction from being eliminated */
+        public long checksum;
+    }
+
+    /**
+     * @return The elapsed time in milliseconds and the checksum of the extracted queries
+     */
+    public static Result run(Function<String, String> extractor, List<String> paths, int rounds) {
+        Result result = new Result();
+        long start = System.nanoTime();
+        for(int i = 0; i < rounds; ++i) {
+            for(String path : paths) {
+                String query = extractor.apply(path);
+                result.checksum += query == null ? 0 : query.length();
+            }
+        }
+        result.millis = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        Map<String, Mapper> registry = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+
+        for(String name : Arrays.asList("logs/combined.swdf.log", "logs/commonVirtuoso.dbpedia.20160411-1000.log")) {
+            String fmt = name.substring("logs/".length()).split("\\.", 2)[0];
+            Mapper mapper = registry.get(fmt);
+
+            List<String> paths = BenchmarkStringMapper.readLines(name).stream()
+                .map(line -> {
+                    Resource r = ModelFactory.createDefaultModel().createResource();
+                    mapper.parse(r, line);
+                    return r.hasProperty(LSQ.path) ? r.getProperty(LSQ.path).getString() : null;
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+            for(String path : paths) {
+                if(!Objects.equals(extractWithUrlEncodedUtils(path), QueryParamExtractor.extractQueryFromPath(path))) {
+                    throw new AssertionError("Extracted queries differ for " + path);
+                }
+            }
+
+            // Warm up
+            run(BenchmarkQueryParamExtractor::extractWithUrlEncodedUtils, paths, rounds / 4);
+            run(QueryParamExtractor::extractQueryFromPath, paths, rounds / 4);
+
+            Result oldResult = run(BenchmarkQueryParamExtractor::extractWithUrlEncodedUtils, paths, rounds);
+            Result newResult = run(QueryParamExtractor::extractQueryFromPath, paths, rounds);
+            long oldTime = oldResult.millis;
+            long newTime = newResult.millis;
+
+            long n = (long)paths.size() * rounds;
+            System.out.println(String.format("%s: %d paths - URLEncodedUtils: %d ms (%.0f paths/s), single pass: %d ms (%.0f paths/s), speedup: %.2f, checksums: %d / %d",
+                    name, n,
+                    oldTime, n * 1000.0 / oldTime,
+                    newTime, n * 1000.0 / newTime,
+                    oldTime / (double)newTime,
+                    oldResult.checksum, newResult.checksum));
+        }
+    }
+}
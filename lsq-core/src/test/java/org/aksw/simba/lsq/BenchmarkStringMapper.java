@@ -0,0 +1,83 @@
+package org.aksw.simba.lsq;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.aksw.simba.lsq.parser.FieldSpec;
+import org.aksw.simba.lsq.parser.Mapper;
+import org.aksw.simba.lsq.parser.StringMapper;
+import org.aksw.simba.lsq.parser.WebLogParser;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Compares the throughput of parsing log lines with compiled field scanners against regex matching only.
+ * Not run as part of the test suite; run the main method manually, optionally passing the number of rounds.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class BenchmarkStringMapper {
+
+    public static List<String> readLines(String name) throws Exception {
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(new ClassPathResource(name).getInputStream(), StandardCharsets.UTF_8))) {
+            return br.lines().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Parse all lines the given number of times into a shared model, which is cleared after each round
+     *
+     * @return The elapsed time in milliseconds
+     */
+    public static long run(Mapper mapper, List<String> lines, int rounds) {
+        Model model = ModelFactory.createDefaultModel();
+        long start = System.nanoTime();
+        for(int i = 0; i < rounds; ++i) {
+            for(String line : lines) {
+                mapper.parse(model.createResource(), line);
+            }
+            model.removeAll();
+        }
+        long result = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+        Map<String, Mapper> compiled = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+        Map<String, Mapper> regexOnly = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+        for(Mapper mapper : regexOnly.values()) {
+            for(FieldSpec fieldSpec : ((StringMapper)mapper).getFieldSpecs()) {
+                fieldSpec.setScanner(null);
+            }
+        }
+
+        for(String name : Arrays.asList("logs/combined.swdf.log", "logs/commonVirtuoso.dbpedia.20160411-1000.log")) {
+            String fmt = name.substring("logs/".length()).split("\\.", 2)[0];
+            List<String> lines = readLines(name);
+
+            // Warm up
+            run(regexOnly.get(fmt), lines, rounds / 4);
+            run(compiled.get(fmt), lines, rounds / 4);
+
+            long regexTime = run(regexOnly.get(fmt), lines, rounds);
+            long compiledTime = run(compiled.get(fmt), lines, rounds);
+
+            long n = (long)lines.size() * rounds;
+            System.out.println(String.format("%s: %d lines - regex: %d ms (%.0f lines/s), compiled: %d ms (%.0f lines/s), speedup: %.2f",
+                    name, n,
+                    regexTime, n * 1000.0 / regexTime,
+                    compiledTime, n * 1000.0 / compiledTime,
+                    regexTime / (double)compiledTime));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.aksw.simba.lsq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.parser.Mapper;
+import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.reader.BinaryLog;
+import org.aksw.simba.lsq.reader.BinaryLogWriter;
+import org.aksw.simba.lsq.reader.ChunkedLogReader;
+import org.aksw.simba.lsq.reader.LogFormatProber;
+import org.aksw.simba.lsq.reader.LogFormatProber.ProbeResult;
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.aksw.simba.lsq.vocab.PROV;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class TestBinaryLog {
+
+	protected static final List<Property> properties = Arrays.asList(
+			LSQ.sequenceId, LSQ.host, PROV.atTime, LSQ.statusCode, LSQ.numResponseBytes, LSQ.query, LSQ.processingError);
+
+	/** Render the relevant properties of the records, with literals in N-Triples syntax in order to cover the datatypes */
+	protected static List<String> toSummary(Stream<Resource> stream) {
+		try(Stream<Resource> s = stream) {
+			return s.map(r -> properties.stream()
+					.map(p -> r.hasProperty(p) ? r.getProperty(p).getObject().asNode().toString(false) : "-")
+					.collect(Collectors.joining(" ")))
+				.collect(Collectors.toList());
+		}
+	}
+
+	protected static Stream<Resource> parseLog(Path logFile) throws IOException {
+		Map<String, Mapper> registry = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+		Mapper mapper = registry.get("combined");
+
+		Function<CharSequence, Resource> lineParser = line -> {
+			Resource r = TestChunkedLogReader.parse(CompactGraph.createModel().createResource(), mapper, line);
+			WebLogParser.extractQuery(r);
+			return r;
+		};
+		return ChunkedLogReader.createStream(logFile, lineParser, null, 1, ChunkedLogReader.DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Records read back from a binary log, sequentially as well as in parallel, must be the same as those of the original log
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		Path logFile = new ClassPathResource("logs/combined.swdf.log").getFile().toPath();
+		List<String> expected = toSummary(parseLog(logFile));
+
+		// Small blocks in order to cover records spread over many blocks
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryLogWriter writer = new BinaryLogWriter(out, 512);
+		try(Stream<Resource> s = parseLog(logFile)) {
+			s.forEach(writer::send);
+		}
+		writer.close();
+		byte[] bytes = out.toByteArray();
+
+		Assert.assertEquals(expected.size(), writer.getNumRecords());
+		Assert.assertTrue(BinaryLog.hasMagic(bytes));
+		Assert.assertEquals(expected, toSummary(BinaryLog.createStream(new ByteArrayInputStream(bytes))));
+
+		Path binFile = Files.createTempFile("lsq-binary-log", ".lsqbin");
+		ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("test-reader-%d", 4);
+		try {
+			Files.write(binFile, bytes);
+			Assert.assertEquals(expected, toSummary(BinaryLog.createStream(binFile, null, 1)));
+			Assert.assertEquals(expected, toSummary(BinaryLog.createStream(binFile, executor, 8)));
+		} finally {
+			executor.shutdownNow();
+			Files.delete(binFile);
+		}
+	}
+
+	/**
+	 * The binary format must parse a sample of a binary log that ends within a record, and must not match a raw log
+	 */
+	@Test
+	public void testProbe() throws Exception {
+		Path logFile = new ClassPathResource("logs/combined.swdf.log").getFile().toPath();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryLogWriter writer = new BinaryLogWriter(out);
+		try(Stream<Resource> s = parseLog(logFile)) {
+			s.forEach(writer::send);
+		}
+		writer.close();
+		byte[] binarySample = Arrays.copyOf(out.toByteArray(), out.size() - 10);
+		byte[] rawSample = Files.readAllBytes(logFile);
+
+		Map<String, Function<InputStream, Stream<Resource>>> registry = TestLogFormatProber.createRegistry();
+		registry.put(BinaryLog.FORMAT_NAME, BinaryLog::createStream);
+
+		ProbeResult binaryResult = getResult(LogFormatProber.probe(registry, binarySample, x -> !x.hasProperty(LSQ.processingError), 4));
+		Assert.assertTrue(binaryResult.toString(), binaryResult.getSuccesses() > 0);
+		Assert.assertEquals(binaryResult.toString(), binaryResult.getRecords(), binaryResult.getSuccesses());
+
+		ProbeResult rawResult = getResult(LogFormatProber.probe(registry, rawSample, x -> !x.hasProperty(LSQ.processingError), 4));
+		Assert.assertEquals(rawResult.toString(), 0, rawResult.getSuccesses());
+	}
+
+	protected static ProbeResult getResult(List<ProbeResult> report) {
+		return report.stream().filter(r -> r.getFormat().equals(BinaryLog.FORMAT_NAME)).findFirst().get();
+	}
+}
@@ -0,0 +1,182 @@
+package org.aksw.simba.lsq;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.parser.LinePreFilter;
+import org.aksw.simba.lsq.parser.Mapper;
+import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.reader.ChunkedLogReader;
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import com.google.common.collect.Streams;
+
+public class TestChunkedLogReader {
+
+	private static final PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+
+	public static Resource parse(Mapper mapper, CharSequence line) {
+		return parse(ModelFactory.createDefaultModel().createResource(), mapper, line);
+	}
+
+	public static Resource parse(Resource r, Mapper mapper, CharSequence line) {
+		boolean parsed;
+		try {
+			parsed = mapper.parse(r, line) != 0;
+		} catch(Exception e) {
+			parsed = false;
+		}
+		if(!parsed) {
+			r.addLiteral(LSQ.processingError, "Failed to parse log line");
+		}
+		return r;
+	}
+
+	/**
+	 * Chunked parsing with small chunks must yield the same records and sequence ids as sequential parsing.
+	 * The records of the chunked reader are backed by compact graphs, those of the sequential parser by default models.
+	 */
+	@Test
+	public void testChunkedReaderMatchesSequentialReader() throws Exception {
+		Map<String, Mapper> logFmtRegistry = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+
+		ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("test-reader-%d", 4);
+		try {
+			for(org.springframework.core.io.Resource r : resolver.getResources("/logs/*.log")) {
+				String rName = r.getFilename();
+				Mapper mapper = logFmtRegistry.get(rName.split("\\.", 2)[0]);
+				if(mapper == null) {
+					continue;
+				}
+
+				Function<CharSequence, Resource> lineParser = line -> parse(CompactGraph.createModel().createResource(), mapper, line);
+
+				List<Resource> expected;
+				try(BufferedReader br = new BufferedReader(new InputStreamReader(r.getInputStream(), StandardCharsets.UTF_8))) {
+					expected = Streams.mapWithIndex(br.lines().map(line -> parse(mapper, line)),
+							(x, i) -> x.addLiteral(LSQ.sequenceId, i))
+						.collect(Collectors.toList());
+				}
+
+				Path path = r.getFile().toPath();
+
+				// Check parallel and sequential parsing
+				for(ExecutorService e : Arrays.asList(executor, null)) {
+					List<Resource> actual;
+					try(Stream<Resource> stream = ChunkedLogReader.createStream(path, lineParser, e, 3, 512)) {
+						actual = stream.collect(Collectors.toList());
+					}
+
+					Assert.assertEquals(rName, expected.size(), actual.size());
+					for(int i = 0; i < expected.size(); ++i) {
+						Assert.assertTrue(rName + " #" + i, expected.get(i).getModel().isIsomorphicWith(actual.get(i).getModel()));
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The default pre-filters must not drop any line that yields a query;
+	 * the remaining records must keep the sequence ids of their lines
+	 */
+	@Test
+	public void testPreFilterRetainsQueries() throws Exception {
+		Map<String, String> logPatterns = WebLogParser.loadPatterns(RDFDataMgr.loadModel("default-log-formats.ttl"));
+		Map<String, Mapper> logFmtRegistry = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+
+		for(org.springframework.core.io.Resource r : resolver.getResources("/logs/*.log")) {
+			String rName = r.getFilename();
+			String fmtName = rName.split("\\.", 2)[0];
+			Mapper mapper = logFmtRegistry.get(fmtName);
+			if(mapper == null) {
+				continue;
+			}
+
+			Function<CharSequence, Resource> lineParser = line -> {
+				Resource x = parse(CompactGraph.createModel().createResource(), mapper, line);
+				WebLogParser.extractQuery(x);
+				return x;
+			};
+
+			Path path = r.getFile().toPath();
+			List<Resource> expected;
+			try(Stream<Resource> stream = ChunkedLogReader.createStream(path, lineParser, null, 3, 512)) {
+				expected = stream.filter(x -> x.hasProperty(LSQ.query)).collect(Collectors.toList());
+			}
+
+			LinePreFilter preFilter = new LinePreFilter(LinePreFilter.getDefaultPatterns(logPatterns.get(fmtName)));
+			List<Resource> actual;
+			try(Stream<Resource> stream = ChunkedLogReader.createStream(path, preFilter, lineParser, null, 3, 512)) {
+				actual = stream.filter(x -> x.hasProperty(LSQ.query)).collect(Collectors.toList());
+			}
+
+			Assert.assertEquals(rName, expected.size(), actual.size());
+			for(int i = 0; i < expected.size(); ++i) {
+				Assert.assertTrue(rName + " #" + i, expected.get(i).getModel().isIsomorphicWith(actual.get(i).getModel()));
+			}
+		}
+	}
+
+	/**
+	 * The default pre-filter of the sparql formats must let SPARQL updates pass, as they yield records as well
+	 */
+	@Test
+	public void testPreFilterPassesUpdates() {
+		Map<String, String> logPatterns = WebLogParser.loadPatterns(RDFDataMgr.loadModel("default-log-formats.ttl"));
+		LinePreFilter preFilter = new LinePreFilter(LinePreFilter.getDefaultPatterns(logPatterns.get("sparql2")));
+
+		for(String line : Arrays.asList(
+				"INSERT DATA { <s> <p> <o> }",
+				"delete where { ?s ?p ?o }",
+				"WITH <g> DELETE { ?s ?p ?o } WHERE { ?s ?p ?o }",
+				"LOAD <http://example.org/data.ttl>",
+				"CLEAR GRAPH <g>",
+				"CREATE GRAPH <g>",
+				"DROP ALL",
+				"Select * { ?s ?p ?o }")) {
+			Assert.assertTrue(line, preFilter.test(line));
+		}
+		Assert.assertFalse(preFilter.test("# a comment"));
+	}
+
+	/**
+	 * Lines of memory mapped buffers must be the same as those of a BufferedReader
+	 */
+	@Test
+	public void testMappedLinesMatchBufferedReader() throws Exception {
+		String str = "first\r\nsecond\rthird\n\nfourth \u00e4\u20ac\nlast";
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+
+		List<String> expected;
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8))) {
+			expected = br.lines().collect(Collectors.toList());
+		}
+
+		List<String> actual = new ArrayList<>();
+		ChunkedLogReader.forEachLine(bytes, 0, bytes.length, line -> actual.add(line.toString()));
+
+		Assert.assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,144 @@
+package org.aksw.simba.lsq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.aksw.simba.lsq.reader.CompressionUtils;
+import org.aksw.simba.lsq.reader.ParallelDecompressingInputStream;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCompressionUtils {
+
+	@FunctionalInterface
+	public static interface Compressor {
+		OutputStream apply(OutputStream out) throws IOException;
+	}
+
+	public static byte[] createData() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 20000; ++i) {
+			sb.append("127.0.0.1 - - [16/May/2014:00:29:09 +0100] \"GET /sparql?query=" + i + " HTTP/1.1\" 200 " + (i * 31 % 977) + "\n");
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compress each chunk of the data as an independent member
+	 */
+	public static byte[] compressMembers(byte[] data, int chunkSize, Compressor compressor) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		for(int i = 0; i < data.length; i += chunkSize) {
+			ByteArrayOutputStream member = new ByteArrayOutputStream();
+			try(OutputStream out = compressor.apply(member)) {
+				out.write(data, i, Math.min(chunkSize, data.length - i));
+			}
+			member.writeTo(result);
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 * Write a BGZF block as bgzip does: a gzip member with the member size in the 'BC' extra subfield
+	 */
+	public static void writeBgzfBlock(ByteArrayOutputStream out, byte[] data, int off, int len) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data, off, len);
+		deflater.finish();
+		byte[] cdata = new byte[len + 1024];
+		int clen = deflater.deflate(cdata);
+		deflater.end();
+
+		CRC32 crc = new CRC32();
+		crc.update(data, off, len);
+
+		int bsize = 18 + clen + 8 - 1;
+		byte[] header = { 0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0, (byte)bsize, (byte)(bsize >>> 8) };
+		out.write(header, 0, header.length);
+		out.write(cdata, 0, clen);
+		writeIntLe(out, (int)crc.getValue());
+		writeIntLe(out, len);
+	}
+
+	public static void writeIntLe(ByteArrayOutputStream out, int v) {
+		for(int i = 0; i < 4; ++i) {
+			out.write(v >>> (8 * i));
+		}
+	}
+
+	public static void assertDecompresses(byte[] expected, byte[] compressed, String codec) throws IOException {
+		Assert.assertEquals(codec, CompressionUtils.detect(new ByteArrayInputStream(compressed)));
+
+		// Small batches and members exercise both the parallel and the sequential path
+		ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("test-decompress-%d", 3);
+		for(int maxMemberSize : new int[] { 8 * 1024, 1024 * 1024 }) {
+			try(InputStream in = new ParallelDecompressingInputStream(new ByteArrayInputStream(compressed),
+					CompressionUtils.getMemberScanner(codec), CompressionUtils.createDecoder(codec), executor, false, 4, 4096, maxMemberSize)) {
+				Assert.assertArrayEquals(codec, expected, IOUtils.toByteArray(in));
+			}
+		}
+		executor.shutdownNow();
+
+		try(InputStream in = CompressionUtils.decompress(new ByteArrayInputStream(compressed), 4)) {
+			Assert.assertArrayEquals(codec, expected, IOUtils.toByteArray(in));
+		}
+	}
+
+	@Test
+	public void testDecompressMembers() throws IOException {
+		byte[] data = createData();
+
+		ByteArrayOutputStream bgzf = new ByteArrayOutputStream();
+		for(int i = 0; i < data.length; i += 60000) {
+			writeBgzfBlock(bgzf, data, i, Math.min(60000, data.length - i));
+		}
+		writeBgzfBlock(bgzf, data, 0, 0);
+		assertDecompresses(data, bgzf.toByteArray(), CompressorStreamFactory.GZIP);
+
+		assertDecompresses(data, compressMembers(data, 50000, GZIPOutputStream::new), CompressorStreamFactory.GZIP);
+		assertDecompresses(data, compressMembers(data, 50000, BZip2CompressorOutputStream::new), CompressorStreamFactory.BZIP2);
+		assertDecompresses(data, compressMembers(data, 50000, ZstdCompressorOutputStream::new), CompressorStreamFactory.ZSTANDARD);
+
+		// A single member that exceeds the maximum member size
+		assertDecompresses(data, compressMembers(data, data.length, ZstdCompressorOutputStream::new), CompressorStreamFactory.ZSTANDARD);
+	}
+
+	@Test
+	public void testBzip2ScanResumes() throws IOException {
+		byte[] data = createData();
+		byte[] first = compressMembers(Arrays.copyOf(data, 50000), 50000, BZip2CompressorOutputStream::new);
+		byte[] both = compressMembers(Arrays.copyOf(data, 100000), 50000, BZip2CompressorOutputStream::new);
+
+		// Feed the region in small increments as the reader does while it fills its buffer
+		int scanned = 0;
+		int n = -1;
+		for(int len = 16; n < 0; len += 100) {
+			n = CompressionUtils.bzip2StreamLength(both, 0, Math.min(len, both.length), false, scanned);
+			scanned = len;
+		}
+		Assert.assertEquals(first.length, n);
+	}
+
+	@Test
+	public void testUncompressedInputIsPassedThrough() throws IOException {
+		byte[] data = createData();
+		Assert.assertNull(CompressionUtils.detect(new ByteArrayInputStream(data)));
+		try(InputStream in = CompressionUtils.decompress(new ByteArrayInputStream(data), 4)) {
+			Assert.assertArrayEquals(data, IOUtils.toByteArray(in));
+		}
+	}
+}
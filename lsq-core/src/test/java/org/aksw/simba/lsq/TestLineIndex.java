@@ -0,0 +1,88 @@
+package org.aksw.simba.lsq;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.reader.ChunkedLogReader;
+import org.aksw.simba.lsq.reader.LineIndex;
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Range;
+
+public class TestLineIndex {
+
+	protected static String toSummary(Stream<Resource> stream) {
+		try(Stream<Resource> s = stream) {
+			return s.map(r -> r.getProperty(LSQ.sequenceId).getLong() + " " + r.getProperty(LSQ.query).getString())
+					.collect(Collectors.joining("\n"));
+		}
+	}
+
+	/**
+	 * Reading a range of lines via the index must yield the same records and sequence ids as
+	 * reading the whole file and retaining the lines of the range, regardless of the line terminators
+	 */
+	@Test
+	public void testRangeMatchesFullRead() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		String[] terminators = { "\n", "\r\n", "\r" };
+		for(int i = 0; i < 1000; ++i) {
+			sb.append("line ").append(i).append(terminators[i % terminators.length]);
+		}
+
+		Path logFile = Files.createTempFile("lsq-line-index", ".log");
+		Path indexFile = LineIndex.getDefaultIndexPath(logFile);
+		ExecutorService executor = ParallelStreamUtils.newFixedThreadPool("test-reader-%d", 4);
+		try {
+			Files.write(logFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+			Assert.assertEquals(1000, LineIndex.build(logFile, indexFile));
+
+			Function<CharSequence, Resource> lineParser = line -> CompactGraph.createModel().createResource()
+					.addLiteral(LSQ.query, line.toString());
+
+			List<Resource> all;
+			try(Stream<Resource> s = ChunkedLogReader.createStream(logFile, lineParser, null, 3, 64)) {
+				all = s.collect(Collectors.toList());
+			}
+
+			try(LineIndex index = LineIndex.open(indexFile)) {
+				Assert.assertTrue(index.isValidFor(logFile));
+				Assert.assertEquals(1000, index.getNumLines());
+
+				for(ExecutorService e : new ExecutorService[] { null, executor }) {
+					for(long[] range : new long[][] { {0, 10}, {123, 456}, {997, 100}, {1000, 5} }) {
+						Range<Long> byteRange = index.getByteRange(range[0], range[1]);
+						long firstLine = Math.min(range[0], index.getNumLines());
+
+						String expected = toSummary(all.stream().skip(range[0]).limit(range[1]));
+						String actual = toSummary(ChunkedLogReader.createStream(logFile, byteRange, firstLine, null, lineParser, e, 3, 64));
+						Assert.assertEquals(expected, actual);
+					}
+				}
+			}
+
+			// Appending to the log renders the index stale
+			Files.write(logFile, "line 1000\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+			try(LineIndex index = LineIndex.open(indexFile)) {
+				Assert.assertFalse(index.isValidFor(logFile));
+			}
+		} finally {
+			executor.shutdownNow();
+			Files.deleteIfExists(indexFile);
+			Files.delete(logFile);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.aksw.simba.lsq;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.core.LsqConfigImpl;
+import org.aksw.simba.lsq.core.LsqUtils;
+import org.aksw.simba.lsq.reader.LogFollower;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLogFollower {
+
+	protected static void append(Path path, String str) throws IOException {
+		Files.write(path, str.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Appended lines must be returned once complete, also across truncation and rotation of the file
+	 */
+	@Test(timeout = 10000)
+	public void testFollowAppendTruncateRotate() throws IOException {
+		Path dir = Files.createTempDirectory("lsq-follow");
+		Path log = dir.resolve("access.log");
+		append(log, "a\nb\npart");
+
+		try(LogFollower follower = new LogFollower(log, 10)) {
+			Assert.assertEquals("a", follower.next());
+			Assert.assertEquals("b", follower.next());
+
+			append(log, "ial\r\n");
+			Assert.assertEquals("partial", follower.next());
+
+			// Truncation in place, as done by copytruncate
+			Files.write(log, "c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+			Assert.assertEquals("c", follower.next());
+
+			// Rotation: Lines written to the old file before the new one appears must not be lost
+			Path rotated = dir.resolve("access.log.1");
+			Files.move(log, rotated);
+			append(rotated, "d\n");
+			append(log, "e\n");
+			Assert.assertEquals("d", follower.next());
+			Assert.assertEquals("e", follower.next());
+		}
+	}
+
+	/**
+	 * The reader of a followed log must emit records while the log is still growing,
+	 * rather than waiting for the end of the (endless) input
+	 */
+	@Test(timeout = 10000)
+	public void testReaderEmitsWhileFollowing() throws Exception {
+		String line = "127.0.0.1 - - [16/May/2014:00:29:09 +0100] \"GET /sparql?query=SELECT+*+%7B+%3Fs+%3Fp+%3Fo+%7D HTTP/1.0\" 200 32039 \"-\" \"-\"\n";
+
+		Path dir = Files.createTempDirectory("lsq-follow");
+		Path log = dir.resolve("access.log");
+		append(log, line);
+
+		// Keep the log growing until the records have been read
+		AtomicBoolean done = new AtomicBoolean(false);
+		Thread appender = new Thread(() -> {
+			try {
+				while(!done.get()) {
+					append(log, line);
+					Thread.sleep(50);
+				}
+			} catch(Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		appender.setDaemon(true);
+		appender.start();
+
+		LsqConfigImpl config = new LsqConfigImpl()
+			.setInQueryLogFiles(Collections.singletonList(log.toString()))
+			.setInQueryLogFormat("combined")
+			.setFollow(true);
+		LsqUtils.applyDefaults(config);
+
+		try(Stream<Resource> stream = LsqUtils.createReader(config)) {
+			Iterator<Resource> it = stream.iterator();
+			for(int i = 0; i < 3; ++i) {
+				Resource r = it.next();
+				Assert.assertEquals(i, r.getProperty(LSQ.sequenceId).getLong());
+			}
+			Assert.assertTrue(appender.isAlive());
+		} finally {
+			done.set(true);
+			appender.join();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.aksw.simba.lsq;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.parser.Mapper;
+import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.reader.LogFormatProber;
+import org.aksw.simba.lsq.reader.LogFormatProber.ProbeResult;
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+public class TestLogFormatProber {
+
+	private static final PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+
+	public static Map<String, Function<InputStream, Stream<Resource>>> createRegistry() {
+		Map<String, Mapper> logFmtRegistry = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+
+		Map<String, Function<InputStream, Stream<Resource>>> result = new HashMap<>();
+		logFmtRegistry.forEach((name, mapper) -> result.put(name, in ->
+			new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines()
+				.map(line -> TestChunkedLogReader.parse(CompactGraph.createModel().createResource(), mapper, line))));
+
+		return result;
+	}
+
+	/**
+	 * The format named by a test log's filename must be among the best matches of the probe
+	 */
+	@Test
+	public void testProbeFindsFormatOfTestLogs() throws Exception {
+		Map<String, Function<InputStream, Stream<Resource>>> registry = createRegistry();
+
+		for(org.springframework.core.io.Resource r : resolver.getResources("/logs/*.log")) {
+			String rName = r.getFilename();
+			String expectedFormat = rName.split("\\.", 2)[0];
+			if(!registry.containsKey(expectedFormat)) {
+				continue;
+			}
+
+			byte[] sample;
+			try(InputStream in = r.getInputStream()) {
+				sample = LogFormatProber.readSample(in, LogFormatProber.DEFAULT_SAMPLE_LINES, LogFormatProber.DEFAULT_MAX_SAMPLE_BYTES);
+			}
+
+			List<ProbeResult> report = LogFormatProber.probe(registry, sample, x -> !x.hasProperty(LSQ.processingError), 4);
+			Assert.assertEquals(registry.size(), report.size());
+
+			long bestSuccesses = report.get(0).getSuccesses();
+			ProbeResult actual = report.stream().filter(x -> x.getFormat().equals(expectedFormat)).findFirst().get();
+
+			Assert.assertTrue(rName + ": " + report, bestSuccesses > 0);
+			Assert.assertEquals(rName + ": " + report, bestSuccesses, actual.getSuccesses());
+		}
+	}
+
+	@Test
+	public void testReadSampleStopsAfterLastLine() throws Exception {
+		InputStream in = new ByteArrayInputStream("a\nbb\nccc\n".getBytes(StandardCharsets.UTF_8));
+
+		byte[] sample = LogFormatProber.readSample(in, 2, 1024);
+		Assert.assertEquals("a\nbb\n", new String(sample, StandardCharsets.UTF_8));
+		Assert.assertEquals('c', in.read());
+	}
+}
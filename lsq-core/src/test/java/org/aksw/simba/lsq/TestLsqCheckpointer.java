@@ -0,0 +1,85 @@
+package org.aksw.simba.lsq;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.aksw.simba.lsq.core.LsqCheckpoint;
+import org.aksw.simba.lsq.core.LsqCheckpointer;
+import org.aksw.simba.lsq.util.CompactGraph;
+import org.aksw.simba.lsq.util.QueryHashSet;
+import org.aksw.simba.lsq.util.QueryIdRegistry;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLsqCheckpointer {
+
+	/**
+	 * Output written after the last checkpoint must be discarded on resume,
+	 * and the seen queries must be those of the committed records only
+	 */
+	@Test
+	public void testResumeDiscardsUncommittedOutput() throws Exception {
+		Path dir = Files.createTempDirectory("lsq-checkpoint");
+		Path outFile = dir.resolve("out.txt");
+		Path checkpointFile = dir.resolve("out.txt.checkpoint");
+		List<String> inputs = Collections.singletonList("log.txt");
+
+		List<Resource> records = LongStream.range(0, 10)
+				.mapToObj(i -> CompactGraph.createModel().createResource().addLiteral(LSQ.sequenceId, i))
+				.collect(Collectors.toList());
+
+		FileOutputStream out = LsqCheckpointer.openOutput(outFile.toFile(), null);
+		PrintStream printOut = new PrintStream(out);
+		LsqCheckpointer checkpointer = new LsqCheckpointer(checkpointFile, 4, inputs, true, false, null, out, printOut::flush);
+
+		// Simulate a crash after the 6th result
+		List<Resource> tracked = checkpointer.track(records.stream()).collect(Collectors.toList());
+		for(int i = 0; i < 6; ++i) {
+			checkpointer.onQuerySeen(tracked.get(i), "q" + i);
+			checkpointer.onQueryIdRegistered(tracked.get(i), new long[] { i + 1, 100 + i });
+			printOut.println("result " + i);
+			checkpointer.onItemDone();
+		}
+		printOut.flush();
+		checkpointer.close();
+
+		LsqCheckpoint checkpoint = LsqCheckpoint.load(checkpointFile);
+		Assert.assertEquals(4, checkpoint.getRecords());
+		Assert.assertEquals(4, checkpoint.getInputRecords());
+		Assert.assertEquals(3, checkpoint.getLastSequenceId());
+		Assert.assertEquals(inputs, checkpoint.getInputs());
+		Assert.assertTrue(checkpoint.isCanonicalizeQueries());
+
+		// The log holds fixed size hashes rather than the query texts
+		Assert.assertEquals(4 * LsqCheckpointer.SEEN_QUERY_RECORD_SIZE, checkpoint.getSeenQueriesLength());
+		QueryHashSet seenQueries = new QueryHashSet(16, 128);
+		Assert.assertEquals(4, LsqCheckpointer.loadSeenQueries(checkpointFile, checkpoint, seenQueries));
+		Assert.assertEquals(4, seenQueries.size());
+		for(int i = 0; i < 6; ++i) {
+			Assert.assertEquals(i < 4, seenQueries.contains("q" + i));
+		}
+
+		// Likewise, only the query ids registered for the committed records are restored
+		Assert.assertFalse(checkpoint.isLegacyQueryIds());
+		Assert.assertEquals(4 * LsqCheckpointer.QUERY_ID_RECORD_SIZE, checkpoint.getQueryIdsLength());
+		QueryIdRegistry queryIds = new QueryIdRegistry(false);
+		Assert.assertEquals(4, LsqCheckpointer.loadQueryIds(checkpointFile, checkpoint, queryIds));
+		for(int i = 0; i < 6; ++i) {
+			Assert.assertEquals(i >= 4, queryIds.register(i + 1, 100 + i));
+		}
+
+		LsqCheckpointer.openOutput(outFile.toFile(), checkpoint).close();
+		Assert.assertEquals(Arrays.asList("result 0", "result 1", "result 2", "result 3"),
+				Files.readAllLines(outFile, StandardCharsets.UTF_8));
+	}
+}
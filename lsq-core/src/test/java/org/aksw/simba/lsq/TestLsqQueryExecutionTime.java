@@ -114,6 +114,8 @@ public class TestLsqQueryExecutionTime {
 			.setRdfizerQueryStructuralFeaturesEnabled(true)
 			.setRdfizerQueryExecutionEnabled(true)
 			.setDeterministicPseudoTimestamps(true)
+			// The expected output uses the md5 based query ids
+			.setLegacyQueryIds(true)
 			//.setc
 			//.setBenchmarkEndpointDescription(new SparqlServiceReference("http://dbpedia.org/sparql"))
 			;
@@ -16,6 +16,7 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFFormat;
+import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,7 +55,8 @@ public class TestLsqWebServerAccessLogParser {
 //    				}
 
     				Resource x = ModelFactory.createDefaultModel().createResource();
-    				mapper.parse(x, line);
+    				// Failures are reported by the return value rather than by an exception
+    				Assert.assertTrue("Failed to parse line of " + rName + ": " + line, mapper.parse(x, line) != 0);
 
 //    				RDFDataMgr.write(System.out, x.getModel(), RDFFormat.TURTLE);
 //
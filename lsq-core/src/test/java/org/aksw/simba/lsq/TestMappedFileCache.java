@@ -0,0 +1,82 @@
+package org.aksw.simba.lsq;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.aksw.simba.lsq.util.MappedFileCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMappedFileCache {
+
+	protected static byte[] value(int i) {
+		return ("value-" + i).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Entries must survive reopening the cache with the same version, and be discarded with a different one
+	 */
+	@Test
+	public void testPersistenceAndVersion() throws Exception {
+		Path file = Files.createTempFile("lsq-cache", ".bin");
+		try {
+			try(MappedFileCache cache = MappedFileCache.open(file, 1, 1024 * 1024)) {
+				for(int i = 0; i < 100; ++i) {
+					Assert.assertTrue(cache.put("key-" + i, value(i)));
+				}
+				Assert.assertFalse(cache.put("key-0", value(1)));
+				Assert.assertArrayEquals(value(42), cache.get("key-42"));
+				Assert.assertNull(cache.get("key-100"));
+			}
+
+			try(MappedFileCache cache = MappedFileCache.open(file, 1, 1024 * 1024)) {
+				Assert.assertEquals(100, cache.getNumEntries());
+				for(int i = 0; i < 100; ++i) {
+					Assert.assertArrayEquals(value(i), cache.get("key-" + i));
+				}
+			}
+
+			try(MappedFileCache cache = MappedFileCache.open(file, 2, 1024 * 1024)) {
+				Assert.assertEquals(0, cache.getNumEntries());
+				Assert.assertNull(cache.get("key-0"));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Entries beyond the bound must not be stored, and reopening with a smaller bound must retain the most recently used entries
+	 */
+	@Test
+	public void testEviction() throws Exception {
+		Path file = Files.createTempFile("lsq-cache", ".bin");
+		try {
+			try(MappedFileCache cache = MappedFileCache.open(file, 1, 4096)) {
+				int i = 0;
+				while(cache.put("key-" + i, value(i))) {
+					++i;
+				}
+				Assert.assertTrue(i > 10);
+				Assert.assertTrue(Files.size(file) <= 4096);
+			}
+
+			// Mark two entries as used
+			try(MappedFileCache cache = MappedFileCache.open(file, 1, 4096)) {
+				Thread.sleep(10);
+				Assert.assertNotNull(cache.get("key-3"));
+				Assert.assertNotNull(cache.get("key-7"));
+			}
+
+			try(MappedFileCache cache = MappedFileCache.open(file, 1, 1024)) {
+				Assert.assertTrue(Files.size(file) <= 1024);
+				Assert.assertTrue(cache.getNumEntries() > 2);
+				Assert.assertArrayEquals(value(3), cache.get("key-3"));
+				Assert.assertArrayEquals(value(7), cache.get("key-7"));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package org.aksw.simba.lsq;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.util.ParallelStreamUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestParallelStreamUtils {
+
+	/**
+	 * The items of concurrently read sources must be emitted in the order of the sources,
+	 * and no more than the given number of sources may be open at any time
+	 */
+	@Test
+	public void testConcatPrefetchedRetainsOrder() {
+		List<Integer> sources = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7);
+		AtomicInteger numOpen = new AtomicInteger();
+		AtomicInteger maxNumOpen = new AtomicInteger();
+
+		List<String> expected = sources.stream()
+				.flatMap(s -> IntStream.range(0, 1000).mapToObj(i -> s + "-" + i))
+				.collect(Collectors.toList());
+
+		List<String> actual;
+		try(Stream<String> stream = ParallelStreamUtils.concatPrefetched(sources, s -> {
+				maxNumOpen.accumulateAndGet(numOpen.incrementAndGet(), Math::max);
+				return IntStream.range(0, 1000).mapToObj(i -> s + "-" + i)
+						.onClose(numOpen::decrementAndGet);
+			}, 3, 16, "test-input-%d")) {
+			actual = stream.collect(Collectors.toList());
+		}
+
+		Assert.assertEquals(expected, actual);
+		Assert.assertTrue("Open sources: " + maxNumOpen.get(), maxNumOpen.get() <= 3);
+	}
+
+	/**
+	 * Iterating the concatenation of unbounded sources must yield items without exhausting the first source
+	 * (as the iterator of flatMap would do), and closing it must close the open source
+	 */
+	@Test(timeout = 10000)
+	public void testConcatIsLazy() {
+		List<Integer> sources = Arrays.asList(0, 1);
+		AtomicInteger numOpen = new AtomicInteger();
+
+		try(Stream<String> stream = ParallelStreamUtils.concat(sources, s -> {
+				numOpen.incrementAndGet();
+				return Stream.iterate(0, i -> i + 1).map(i -> s + "-" + i)
+						.onClose(numOpen::decrementAndGet);
+			})) {
+			Iterator<String> it = stream.map(String::toUpperCase).iterator();
+			Assert.assertEquals("0-0", it.next());
+			Assert.assertEquals("0-1", it.next());
+			Assert.assertEquals(1, numOpen.get());
+		}
+		Assert.assertEquals(0, numOpen.get());
+	}
+}
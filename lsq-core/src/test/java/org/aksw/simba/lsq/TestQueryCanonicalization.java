@@ -0,0 +1,56 @@
+package org.aksw.simba.lsq;
+
+import org.aksw.simba.lsq.util.QueryCanonicalizationUtils;
+import org.apache.jena.query.QueryFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestQueryCanonicalization {
+
+	protected static String canonicalize(String queryStr) {
+		return QueryCanonicalizationUtils.canonicalize(QueryFactory.create(queryStr));
+	}
+
+	protected static void assertSame(String a, String b) {
+		Assert.assertEquals(canonicalize(a), canonicalize(b));
+	}
+
+	protected static void assertDifferent(String a, String b) {
+		Assert.assertNotEquals(canonicalize(a), canonicalize(b));
+	}
+
+	@Test
+	public void testVariablesPrefixesAndOrder() {
+		assertSame(
+				"PREFIX foaf: <http://xmlns.com/foaf/0.1/> SELECT ?s ?n { ?s a foaf:Person ; foaf:name ?n FILTER(lang(?n) = 'en') FILTER(?s != <http://ex.org/x>) } ORDER BY ?n LIMIT 10",
+				"SELECT  ?person ?name\nWHERE {\n  ?person <http://xmlns.com/foaf/0.1/name> ?name .\n  ?person a <http://xmlns.com/foaf/0.1/Person>\n  FILTER(?person != <http://ex.org/x>) FILTER(lang(?name) = 'en')\n}\nORDER BY ?name\nLIMIT 10");
+
+		assertSame(
+				"SELECT * { ?s <http://ex.org/p> ?o . ?o <http://ex.org/q> ?x }",
+				"SELECT * { ?b <http://ex.org/q> ?c . ?a <http://ex.org/p> ?b }");
+
+		assertSame(
+				"SELECT ?x (COUNT(?y) AS ?c) { ?x <http://ex.org/p> ?y } GROUP BY ?x",
+				"SELECT ?a (COUNT(?b) AS ?n) { ?a <http://ex.org/p> ?b } GROUP BY ?a");
+
+		assertSame(
+				"PREFIX ex: <http://ex.org/> CONSTRUCT { ?s ex:q ?o } { ?s ex:p ?o }",
+				"CONSTRUCT { ?a <http://ex.org/q> ?b } { ?a <http://ex.org/p> ?b }");
+	}
+
+	@Test
+	public void testDifferences() {
+		assertDifferent(
+				"SELECT ?s { ?s <http://ex.org/p> ?o }",
+				"SELECT ?o { ?s <http://ex.org/p> ?o }");
+		assertDifferent(
+				"SELECT * { ?s <http://ex.org/p> ?o }",
+				"SELECT DISTINCT * { ?s <http://ex.org/p> ?o }");
+		assertDifferent(
+				"SELECT * { ?s <http://ex.org/p> ?o }",
+				"ASK { ?s <http://ex.org/p> ?o }");
+		assertDifferent(
+				"SELECT * { ?s <http://ex.org/p> ?o . ?o <http://ex.org/p> ?x }",
+				"SELECT * { ?s <http://ex.org/p> ?o . ?s <http://ex.org/p> ?x }");
+	}
+}
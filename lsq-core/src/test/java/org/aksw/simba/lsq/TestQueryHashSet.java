@@ -0,0 +1,52 @@
+package org.aksw.simba.lsq;
+
+import java.util.stream.IntStream;
+
+import org.aksw.simba.lsq.util.QueryHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestQueryHashSet {
+
+	protected static void check(int hashBits) {
+		// Start small in order to cover growing the segments
+		QueryHashSet set = new QueryHashSet(10, hashBits);
+		long initialBytes = set.getAllocatedBytes();
+
+		int n = 100000;
+		for(int i = 0; i < n; ++i) {
+			Assert.assertTrue(set.add("SELECT * { ?s ?p " + i + " }"));
+		}
+		for(int i = 0; i < n; ++i) {
+			Assert.assertFalse(set.add("SELECT * { ?s ?p " + i + " }"));
+			Assert.assertTrue(set.contains("SELECT * { ?s ?p " + i + " }"));
+		}
+		Assert.assertFalse(set.contains("SELECT * { ?s ?p " + n + " }"));
+		Assert.assertEquals(n, set.size());
+		Assert.assertTrue(set.getAllocatedBytes() > initialBytes);
+	}
+
+	@Test
+	public void test128() {
+		check(128);
+	}
+
+	@Test
+	public void test64() {
+		check(64);
+	}
+
+	/**
+	 * Concurrent additions of the same strings must report each string as new exactly once
+	 */
+	@Test
+	public void testConcurrentAdd() {
+		QueryHashSet set = new QueryHashSet(1000, 128);
+		long numNew = IntStream.range(0, 400000).parallel()
+				.filter(i -> set.add("q" + (i % 50000)))
+				.count();
+
+		Assert.assertEquals(50000, numNew);
+		Assert.assertEquals(50000, set.size());
+	}
+}
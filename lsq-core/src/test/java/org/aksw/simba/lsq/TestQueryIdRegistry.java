@@ -0,0 +1,79 @@
+package org.aksw.simba.lsq;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.aksw.commons.util.strings.StringUtils;
+import org.aksw.simba.lsq.util.QueryIdRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestQueryIdRegistry {
+
+	@Test
+	public void testIds() {
+		QueryIdRegistry registry = new QueryIdRegistry(false);
+		String id = registry.getQueryId("SELECT * { ?s ?p ?o }");
+		Assert.assertTrue(id, id.matches("[0-9a-f]{16}"));
+		Assert.assertEquals(id, registry.getQueryId("SELECT * { ?s ?p ?o }"));
+		Assert.assertEquals(id, new QueryIdRegistry(false).getQueryId("SELECT * { ?s ?p ?o }"));
+
+		Set<String> ids = new HashSet<>();
+		int n = 300000;
+		for(int i = 0; i < n; ++i) {
+			ids.add(registry.getQueryId("SELECT * { ?s ?p " + i + " }"));
+		}
+		Assert.assertEquals(n, ids.size());
+		Assert.assertEquals(0, registry.getNumCollisions());
+	}
+
+	/**
+	 * Registrations reported to a listener restore a registry such that queries keep their ids,
+	 * including those disambiguated by their full hash
+	 */
+	@Test
+	public void testRestoreRegistrations() {
+		List<long[]> registrations = new ArrayList<>();
+		QueryIdRegistry registry = new QueryIdRegistry(false);
+		String id = registry.getQueryId("SELECT * { ?s ?p ?o }", (k, v) -> registrations.add(new long[] { k, v }));
+		registry.getQueryId("SELECT * { ?s ?p ?o }", (k, v) -> Assert.fail("Repeated registration"));
+		Assert.assertEquals(1, registrations.size());
+
+		// A different query with the same key must be given the full hash after restoring
+		long[] registration = registrations.get(0);
+		QueryIdRegistry restored = new QueryIdRegistry(false);
+		Assert.assertTrue(restored.register(registration[0], registration[1] + 1));
+		Assert.assertFalse(restored.register(registration[0], registration[1]));
+
+		String disambiguatedId = restored.getQueryId("SELECT * { ?s ?p ?o }");
+		Assert.assertTrue(disambiguatedId, disambiguatedId.matches("[0-9a-f]{32}"));
+		Assert.assertTrue(disambiguatedId.startsWith(id));
+		Assert.assertEquals(1, restored.getNumCollisions());
+	}
+
+	/**
+	 * Legacy ids must remain the md5 based ones; collisions among them, which are expected
+	 * for this number of queries, must be detected
+	 */
+	@Test
+	public void testLegacyIds() {
+		QueryIdRegistry registry = new QueryIdRegistry(true);
+		Assert.assertEquals(StringUtils.md5Hash("SELECT * { ?s ?p ?o }").substring(0, 8), registry.getQueryId("SELECT * { ?s ?p ?o }"));
+
+		Set<String> ids = new HashSet<>();
+		int n = 300000;
+		for(int i = 0; i < n; ++i) {
+			ids.add(registry.getQueryId("SELECT * { ?s ?p " + i + " }"));
+		}
+		Assert.assertEquals(n - ids.size(), registry.getNumCollisions());
+		Assert.assertTrue(registry.getNumCollisions() > 0);
+
+		// Repetitions of the queries are no further collisions
+		for(int i = 0; i < n; ++i) {
+			registry.getQueryId("SELECT * { ?s ?p " + i + " }");
+		}
+		Assert.assertEquals(n - ids.size(), registry.getNumCollisions());
+	}
+}
@@ -0,0 +1,129 @@
+package org.aksw.simba.lsq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.aksw.simba.lsq.reader.ChunkedLogReader;
+import org.aksw.simba.lsq.reader.RdfLogReader;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRdfLogReader {
+
+	protected static Model createLog(int n) {
+		Model result = ModelFactory.createDefaultModel();
+		for(int i = 0; i < n; ++i) {
+			result.createResource("http://example.org/q" + i)
+				.addLiteral(LSQ.text, "SELECT * { ?s ?p " + i + " }")
+				.addLiteral(LSQ.sequenceId, i)
+				// The predicate IRI within a literal must not yield a record
+				.addProperty(LSQ.host, "<" + LSQ.Strs.text + ">");
+		}
+		return result;
+	}
+
+	protected static String toSummary(Stream<Resource> stream) {
+		try(Stream<Resource> s = stream) {
+			return s.map(r -> r.getURI() + " " + r.getProperty(LSQ.query).getString())
+					.sorted()
+					.collect(Collectors.joining("\n"));
+		}
+	}
+
+	protected static String expected(int n) {
+		return IntStream.range(0, n)
+				.mapToObj(i -> "http://example.org/q" + i + " SELECT * { ?s ?p " + i + " }")
+				.sorted()
+				.collect(Collectors.joining("\n"));
+	}
+
+	/**
+	 * All supported syntaxes must yield exactly the records of the lsq:text triples
+	 */
+	@Test
+	public void testSyntaxes() {
+		Model model = createLog(100);
+		for(RDFFormat fmt : new RDFFormat[] { RDFFormat.NTRIPLES, RDFFormat.NQUADS, RDFFormat.TURTLE, RDFFormat.RDF_THRIFT }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			RDFDataMgr.write(out, model, fmt);
+
+			Lang lang = fmt.getLang();
+			String actual = toSummary(RdfLogReader.createStream(new ByteArrayInputStream(out.toByteArray()), lang, "http://example.org/"));
+			Assert.assertEquals(lang.getName(), expected(100), actual);
+		}
+	}
+
+	/**
+	 * Parse errors in the streaming parser must surface in the consuming thread
+	 */
+	@Test(expected = RuntimeException.class)
+	public void testTurtleParseError() {
+		byte[] data = "<http://example.org/q0> <http://lsq.aksw.org/vocab#text> \"SELECT\" .\n this is not turtle".getBytes(StandardCharsets.UTF_8);
+		toSummary(RdfLogReader.createStream(new ByteArrayInputStream(data), Lang.TURTLE, "http://example.org/"));
+	}
+
+	/**
+	 * The parser thread finishes the pipe as it fails; the error must nonetheless be reported rather than
+	 * a premature end of the records. As this depends on the timing of the threads, it is checked repeatedly.
+	 */
+	@Test
+	public void testParseErrorIsNotLost() {
+		byte[] data = "<http://example.org/q0> <http://lsq.aksw.org/vocab#text> \"SELECT\" .\n this is not turtle".getBytes(StandardCharsets.UTF_8);
+		for(int i = 0; i < 200; ++i) {
+			try {
+				toSummary(RdfLogReader.createStream(new ByteArrayInputStream(data), Lang.TURTLE, "http://example.org/"));
+				Assert.fail("Parse error not reported in run " + i);
+			} catch(RuntimeException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testParallelNTriples() throws IOException {
+		Model model = createLog(5000);
+		Path file = Files.createTempFile("lsq-rdf-log", ".nt");
+		try {
+			try(java.io.OutputStream out = Files.newOutputStream(file)) {
+				RDFDataMgr.write(out, model, RDFFormat.NTRIPLES);
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<Resource> records;
+				try(Stream<Resource> stream = ChunkedLogReader.createStream(file, RdfLogReader::parseLine, executor, 8, 4096)) {
+					records = stream.collect(Collectors.toList());
+				}
+
+				Assert.assertEquals(expected(5000), toSummary(records.stream()));
+				// Sequence ids are the indices of the lsq:text lines
+				List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+				for(Resource r : records) {
+					int lineIndex = (int)r.getProperty(LSQ.sequenceId).getLong();
+					Assert.assertTrue(lines.get(lineIndex).contains(RdfLogReader.TEXT_IRI_TOKEN));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
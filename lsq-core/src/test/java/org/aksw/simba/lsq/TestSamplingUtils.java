@@ -0,0 +1,87 @@
+package org.aksw.simba.lsq;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.aksw.simba.lsq.core.LsqUtils;
+import org.aksw.simba.lsq.parser.Mapper;
+import org.aksw.simba.lsq.parser.WebLogParser;
+import org.aksw.simba.lsq.util.SamplingUtils;
+import org.aksw.simba.lsq.vocab.LSQ;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class TestSamplingUtils {
+
+	/**
+	 * A sample must be reproducible for a seed and retain the order of the input
+	 */
+	@Test
+	public void testReservoirSample() {
+		List<Integer> a = SamplingUtils.sample(IntStream.range(0, 100000).boxed(), 100, null, 42).collect(Collectors.toList());
+		List<Integer> b = SamplingUtils.sample(IntStream.range(0, 100000).boxed(), 100, null, 42).collect(Collectors.toList());
+
+		Assert.assertEquals(100, a.size());
+		Assert.assertEquals(a, b);
+		Assert.assertEquals(a, a.stream().sorted().collect(Collectors.toList()));
+
+		// Each half of a uniform sample of the input holds roughly half of the items
+		long lowerHalf = a.stream().filter(i -> i < 50000).count();
+		Assert.assertTrue("Items from the lower half: " + lowerHalf, lowerHalf > 25 && lowerHalf < 75);
+	}
+
+	@Test
+	public void testStratifiedSample() {
+		Function<Integer, Object> stratumFn = i -> i % 3;
+		List<Integer> sample = SamplingUtils.sample(IntStream.range(0, 10000).boxed(), 10, stratumFn, 0).collect(Collectors.toList());
+
+		Map<Object, Long> counts = sample.stream().collect(Collectors.groupingBy(stratumFn, Collectors.counting()));
+		Assert.assertEquals(3, counts.size());
+		counts.values().forEach(count -> Assert.assertEquals(10, count.longValue()));
+
+		// Strata smaller than the sample size are retained entirely
+		List<Integer> small = SamplingUtils.sample(IntStream.range(0, 5).boxed(), 10, stratumFn, 0).collect(Collectors.toList());
+		Assert.assertEquals(IntStream.range(0, 5).boxed().collect(Collectors.toList()), small);
+	}
+
+	/**
+	 * Raw web log records carry their query only within the request path;
+	 * sampling by query must nonetheless yield a stratum per distinct query
+	 */
+	@Test
+	public void testStratifiedSampleByQueryOfWebLogRecords() throws Exception {
+		Mapper mapper = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl")).get("combined");
+
+		List<Resource> records;
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(new ClassPathResource("logs/combined.swdf.log").getInputStream(), StandardCharsets.UTF_8))) {
+			records = br.lines().map(line -> LsqUtils.parseLogLine(mapper, line)).collect(Collectors.toList());
+		}
+
+		Assert.assertTrue(records.stream().noneMatch(r -> r.hasProperty(LSQ.query)));
+
+		Function<Resource, Object> stratumFn = LsqUtils.createSampleStratumFunction("query");
+		Set<Object> queries = records.stream()
+				.map(stratumFn)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toSet());
+		Assert.assertTrue("Distinct queries: " + queries.size(), queries.size() > 1);
+
+		List<Resource> sample = SamplingUtils.sample(records.stream(), 1, stratumFn, 0).collect(Collectors.toList());
+		Set<Object> sampledQueries = sample.stream().map(stratumFn).filter(Objects::nonNull).collect(Collectors.toSet());
+		Assert.assertEquals(queries, sampledQueries);
+
+		// Determining the stratum must not alter the records
+		Assert.assertTrue(records.stream().noneMatch(r -> r.hasProperty(LSQ.query)));
+	}
+}
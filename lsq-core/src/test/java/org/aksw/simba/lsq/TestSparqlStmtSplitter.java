@@ -0,0 +1,54 @@
+package org.aksw.simba.lsq;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aksw.simba.lsq.reader.SparqlStmtSplitter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestSparqlStmtSplitter {
+
+	public static List<String> split(String str) {
+		return Lists.newArrayList(new SparqlStmtSplitter(new StringReader(str)));
+	}
+
+	@Test
+	public void testSplitQueries() {
+		List<String> expected = Arrays.asList(
+				"PREFIX ex: <http://ex.org/select#ask>\nSELECT ?select { ?s ex:ask \"SELECT\" . { SELECT * { ?s ?p ?o } } }",
+				"# A comment with SELECT\nASK { ?s ?p '''multi\nline SELECT ''' FILTER(?s<?p && ?p > 1) }",
+				"CONSTRUCT WHERE { ?s ?p \"unterminated }",
+				"INSERT DATA { <a> <b> <c> }",
+				"DELETE { ?s ?p ?o } INSERT { ?s ?p 1 } WHERE { ?s ?p ?o }",
+				"DESCRIBE <x>",
+				"BASE <http://ex.org/> SELECT * {}");
+
+		String input = expected.get(0) + "\n\n"
+				+ expected.get(1) + " "
+				+ expected.get(2) + "\n"
+				+ expected.get(3) + " ;\n"
+				+ expected.get(4) + ";;\n"
+				+ expected.get(5) + "\n"
+				+ expected.get(6) + "\n# trailing comment\n";
+
+		Assert.assertEquals(expected, split(input));
+	}
+
+	@Test
+	public void testSkipOversizedStatements() {
+		List<String> actual = Lists.newArrayList(new SparqlStmtSplitter(new StringReader(
+				"SELECT * { ?s ?p \"\"\"unterminated } SELECT * {}"
+				+ " ; ASK {}"), 20));
+
+		// The unterminated long string swallows the remainder of the input
+		Assert.assertEquals(Arrays.asList(), actual);
+
+		actual = Lists.newArrayList(new SparqlStmtSplitter(new StringReader(
+				"SELECT * { ?s ?p ?o . ?o ?p ?s } ASK {}"), 20));
+		Assert.assertEquals(Arrays.asList("ASK {}"), actual);
+	}
+}
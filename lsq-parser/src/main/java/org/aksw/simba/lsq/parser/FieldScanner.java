@@ -0,0 +1,469 @@
+package org.aksw.simba.lsq.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A matcher for the simple regular expressions that make up the fields of log formats,
+ * such as "[^\\s\"]*", "\\S+", "-|\\d{3}" or quoted literals.
+ *
+ * Supported are alternatives of sequences of characters, predefined classes (\s, \S, \d, \D, \w, \W, '.') and
+ * bracket classes with optional quantifiers, where only the last element of a sequence may vary in length.
+ * Under this restriction greedy matching without backtracking yields the same result as {@link java.util.regex.Pattern}.
+ * Matching walks the input once and does not allocate.
+ *
+ * Note, that as with regexes a leading '^' only anchors the first alternative, e.g. "^-|\\d{3}" means "(^-)|(\\d{3})".
+ *
+ * {@link #compile(String)} returns null for any other expression, in which case the regex has to be used.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class FieldScanner {
+    protected String regex;
+
+    // Alternatives in order of preference, each being a sequence of atoms
+    protected Atom[][] alternatives;
+
+    // Whether the alternative at the same index starts with '^'
+    protected boolean[] anchors;
+
+    protected FieldScanner(String regex, Atom[][] alternatives, boolean[] anchors) {
+        super();
+        this.regex = regex;
+        this.alternatives = alternatives;
+        this.anchors = anchors;
+    }
+
+    /**
+     * Whether all alternatives start with '^' and thus the expression only matches at the start of a region
+     */
+    public boolean isAnchored() {
+        boolean result = true;
+        for(boolean anchor : anchors) {
+            result &= anchor;
+        }
+        return result;
+    }
+
+    /**
+     * Match the expression at the start of a region
+     *
+     * @return The end of the match or -1 if there is none
+     */
+    public int matchAt(CharSequence str, int start, int end) {
+        int result = matchAt(str, start, start, end);
+        return result;
+    }
+
+    /**
+     * Match the expression at the given position of a region.
+     * Anchored alternatives are only considered if the position is the start of the region.
+     *
+     * @return The end of the match or -1 if there is none
+     */
+    public int matchAt(CharSequence str, int regionStart, int pos, int end) {
+        int result = -1;
+        for(int i = 0; i < alternatives.length; ++i) {
+            if(!anchors[i] || pos == regionStart) {
+                result = matchSequence(alternatives[i], str, pos, end);
+                if(result >= 0) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the leftmost position in the region at which the expression matches,
+     * i.e. the same position as {@link java.util.regex.Matcher#find()} on the region.
+     *
+     * @return The start of the match or -1 if there is none
+     */
+    public int find(CharSequence str, int start, int end) {
+        int result = -1;
+        int last = isAnchored() ? start : end;
+        for(int i = start; i <= last; ++i) {
+            if(matchAt(str, start, i, end) >= 0) {
+                result = i;
+                break;
+            }
+        }
+        return result;
+    }
+
+    protected static int matchSequence(Atom[] sequence, CharSequence str, int start, int end) {
+        int result = start;
+        for(Atom atom : sequence) {
+            result = atom.match(str, result, end);
+            if(result < 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return regex;
+    }
+
+    /**
+     * Compile a regular expression
+     *
+     * @param regex
+     * @return The scanner or null if the expression is not supported
+     */
+    public static FieldScanner compile(String regex) {
+        FieldScanner result;
+        try {
+            result = new Parser(regex).parse();
+        } catch(UnsupportedOperationException e) {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * A character class with a number of repetitions
+     */
+    protected static class Atom {
+        protected CharClass charClass;
+        protected int min;
+        protected int max;
+
+        public Atom(CharClass charClass, int min, int max) {
+            super();
+            this.charClass = charClass;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Greedily match as many repetitions as possible
+         *
+         * @return The end of the match or -1 if there are less than min repetitions
+         */
+        public int match(CharSequence str, int start, int end) {
+            int pos = start;
+            int n = 0;
+            while(n < max && pos < end) {
+                char c = str.charAt(pos);
+                int cp = c;
+                int len = 1;
+                // Regexes match on code points
+                if(Character.isHighSurrogate(c) && pos + 1 < end && Character.isLowSurrogate(str.charAt(pos + 1))) {
+                    cp = Character.toCodePoint(c, str.charAt(pos + 1));
+                    len = 2;
+                }
+
+                if(!charClass.matches(cp)) {
+                    break;
+                }
+
+                pos += len;
+                ++n;
+            }
+
+            int result = n >= min ? pos : -1;
+            return result;
+        }
+    }
+
+    /**
+     * A set of code points with a lookup table for ASCII characters
+     */
+    protected static class CharClass {
+        protected boolean[] ascii = new boolean[128];
+
+        // Whether all non-ASCII code points are members, as is the case for \S, \D and \W
+        protected boolean allNonAscii = false;
+        protected List<int[]> nonAsciiRanges = new ArrayList<>();
+
+        protected boolean negated = false;
+
+        public boolean matches(int cp) {
+            boolean result;
+            if(cp < 128) {
+                result = ascii[cp];
+            } else {
+                result = allNonAscii;
+                for(int i = 0; !result && i < nonAsciiRanges.size(); ++i) {
+                    int[] range = nonAsciiRanges.get(i);
+                    result = cp >= range[0] && cp <= range[1];
+                }
+            }
+
+            result = result != negated;
+            return result;
+        }
+
+        public void add(int lo, int hi) {
+            for(int i = lo; i <= hi && i < 128; ++i) {
+                ascii[i] = true;
+            }
+
+            if(hi >= 128) {
+                nonAsciiRanges.add(new int[] { Math.max(lo, 128), hi });
+            }
+        }
+
+        /**
+         * Add one of the predefined classes s, S, d, D, w, W. Without the UNICODE_CHARACTER_CLASS flag
+         * the lowercase ones only contain ASCII characters.
+         */
+        public void addPredefined(char c) {
+            boolean isComplement = Character.isUpperCase(c);
+            char base = Character.toLowerCase(c);
+            for(int i = 0; i < 128; ++i) {
+                boolean isMember;
+                switch(base) {
+                case 's': isMember = i == ' ' || i == '\t' || i == '\n' || i == 0x0B || i == '\f' || i == '\r'; break;
+                case 'd': isMember = i >= '0' && i <= '9'; break;
+                case 'w': isMember = (i >= 'a' && i <= 'z') || (i >= 'A' && i <= 'Z') || (i >= '0' && i <= '9') || i == '_'; break;
+                default: throw new UnsupportedOperationException("Unsupported class: \\" + c);
+                }
+
+                ascii[i] |= isMember != isComplement;
+            }
+
+            allNonAscii |= isComplement;
+        }
+
+        public static CharClass of(int cp) {
+            CharClass result = new CharClass();
+            result.add(cp, cp);
+            return result;
+        }
+
+        /**
+         * The class of '.', which matches anything but line terminators
+         */
+        public static CharClass dot() {
+            CharClass result = new CharClass();
+            result.add('\n', '\n');
+            result.add('\r', '\r');
+            result.add(0x85, 0x85);
+            result.add(0x2028, 0x2029);
+            result.negated = true;
+            return result;
+        }
+    }
+
+    /**
+     * Recursive descent parser for the supported subset of the regex syntax.
+     * Raises {@link UnsupportedOperationException} on anything else.
+     */
+    protected static class Parser {
+        protected String regex;
+        protected int pos = 0;
+
+        public Parser(String regex) {
+            super();
+            this.regex = regex;
+        }
+
+        public FieldScanner parse() {
+            List<Atom[]> alternatives = new ArrayList<>();
+            List<Boolean> anchors = new ArrayList<>();
+
+            List<Atom> sequence = new ArrayList<>();
+            anchors.add(parseAnchor());
+            while(pos < regex.length()) {
+                char c = regex.charAt(pos);
+                if(c == '|') {
+                    ++pos;
+                    alternatives.add(toSequence(sequence));
+                    sequence = new ArrayList<>();
+                    anchors.add(parseAnchor());
+                } else if(c == '\\' && regex.startsWith("\\Q", pos)) {
+                    // Quoted literal; it must not be followed by a quantifier
+                    pos += 2;
+                    int e = regex.indexOf("\\E", pos);
+                    String literal = e < 0 ? regex.substring(pos) : regex.substring(pos, e);
+                    for(int cp : literal.codePoints().toArray()) {
+                        sequence.add(new Atom(CharClass.of(cp), 1, 1));
+                    }
+                    pos = e < 0 ? regex.length() : e + 2;
+                } else {
+                    CharClass charClass = parseAtom();
+                    sequence.add(parseQuantifier(charClass));
+                }
+            }
+            alternatives.add(toSequence(sequence));
+
+            boolean[] anchorArr = new boolean[anchors.size()];
+            for(int i = 0; i < anchorArr.length; ++i) {
+                anchorArr[i] = anchors.get(i);
+            }
+
+            FieldScanner result = new FieldScanner(regex, alternatives.toArray(new Atom[0][]), anchorArr);
+            return result;
+        }
+
+        protected boolean parseAnchor() {
+            boolean result = regex.startsWith("^", pos);
+            if(result) {
+                ++pos;
+            }
+            return result;
+        }
+
+        protected Atom[] toSequence(List<Atom> sequence) {
+            // Without backtracking, only the last atom may vary in length
+            for(int i = 0; i < sequence.size() - 1; ++i) {
+                Atom atom = sequence.get(i);
+                if(atom.min != atom.max) {
+                    throw new UnsupportedOperationException("Variable length element before end of sequence");
+                }
+            }
+
+            Atom[] result = sequence.toArray(new Atom[0]);
+            return result;
+        }
+
+        protected CharClass parseAtom() {
+            CharClass result;
+            int cp = regex.codePointAt(pos);
+            pos += Character.charCount(cp);
+            switch(cp) {
+            case '\\':
+                result = parseEscape(new CharClass());
+                break;
+            case '[':
+                result = parseBracketClass();
+                break;
+            case '.':
+                result = CharClass.dot();
+                break;
+            case '(': case ')': case '*': case '+': case '?': case '{': case '}': case '^': case '$':
+                throw new UnsupportedOperationException("Unsupported construct: " + (char)cp);
+            default:
+                result = CharClass.of(cp);
+                break;
+            }
+            return result;
+        }
+
+        /**
+         * Parse the escape sequence following a backslash and add it to the given class
+         */
+        protected CharClass parseEscape(CharClass charClass) {
+            if(pos >= regex.length()) {
+                throw new UnsupportedOperationException("Trailing backslash");
+            }
+
+            int cp = regex.codePointAt(pos);
+            pos += Character.charCount(cp);
+            if("sSdDwW".indexOf(cp) >= 0) {
+                charClass.addPredefined((char)cp);
+            } else if(Character.isLetterOrDigit(cp)) {
+                throw new UnsupportedOperationException("Unsupported escape: \\" + new String(Character.toChars(cp)));
+            } else {
+                charClass.add(cp, cp);
+            }
+            return charClass;
+        }
+
+        protected CharClass parseBracketClass() {
+            CharClass result = new CharClass();
+            if(regex.startsWith("^", pos)) {
+                result.negated = true;
+                ++pos;
+            }
+
+            // A ']' at the start of a class is a literal
+            boolean isFirst = true;
+            while(true) {
+                if(pos >= regex.length()) {
+                    throw new UnsupportedOperationException("Unclosed character class");
+                }
+
+                int cp = regex.codePointAt(pos);
+                if(cp == ']' && !isFirst) {
+                    ++pos;
+                    break;
+                }
+                isFirst = false;
+
+                if(cp == '[' || regex.startsWith("&&", pos)) {
+                    throw new UnsupportedOperationException("Nested character classes are not supported");
+                }
+
+                pos += Character.charCount(cp);
+                if(cp == '\\') {
+                    if(pos < regex.length() && "sSdDwW".indexOf(regex.charAt(pos)) >= 0) {
+                        parseEscape(result);
+                        continue;
+                    }
+
+                    // Escaped literal which may start a range
+                    parseEscape(new CharClass());
+                    cp = regex.codePointBefore(pos);
+                }
+
+                // Range such as a-z; a '-' before the closing bracket is a literal
+                if(regex.startsWith("-", pos) && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                    ++pos;
+                    int hi = regex.codePointAt(pos);
+                    if(hi == '\\' || hi == '[') {
+                        throw new UnsupportedOperationException("Unsupported range bound");
+                    }
+                    pos += Character.charCount(hi);
+                    if(hi < cp) {
+                        throw new UnsupportedOperationException("Illegal range");
+                    }
+                    result.add(cp, hi);
+                } else {
+                    result.add(cp, cp);
+                }
+            }
+
+            return result;
+        }
+
+        protected Atom parseQuantifier(CharClass charClass) {
+            int min = 1;
+            int max = 1;
+            if(pos < regex.length()) {
+                char c = regex.charAt(pos);
+                switch(c) {
+                case '*': min = 0; max = Integer.MAX_VALUE; ++pos; break;
+                case '+': min = 1; max = Integer.MAX_VALUE; ++pos; break;
+                case '?': min = 0; max = 1; ++pos; break;
+                case '{': {
+                    int e = regex.indexOf('}', pos);
+                    if(e < 0) {
+                        throw new UnsupportedOperationException("Unclosed quantifier");
+                    }
+                    String[] bounds = regex.substring(pos + 1, e).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0]);
+                        max = bounds.length == 1
+                                ? min
+                                : bounds[1].isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(bounds[1]);
+                    } catch(NumberFormatException ex) {
+                        throw new UnsupportedOperationException("Invalid quantifier", ex);
+                    }
+                    if(bounds.length > 2 || min > max) {
+                        throw new UnsupportedOperationException("Invalid quantifier");
+                    }
+                    pos = e + 1;
+                    break;
+                }
+                default:
+                    break;
+                }
+
+                // Reluctant and possessive quantifiers are not supported
+                if(pos < regex.length() && (min != 1 || max != 1) && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+                    throw new UnsupportedOperationException("Unsupported quantifier");
+                }
+            }
+
+            Atom result = new Atom(charClass, min, max);
+            return result;
+        }
+    }
+}
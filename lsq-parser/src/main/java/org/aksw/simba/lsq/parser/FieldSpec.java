@@ -15,6 +15,9 @@ public class FieldSpec {
 
     protected Pattern pattern;
 
+    // Compiled form of the pattern; null if the pattern is not supported by the scanner
+    protected FieldScanner scanner;
+
     protected Converter<String, String> normalizer;
     protected RDFDatatype rdfTypeMapper;
     protected Mapper mapper;
@@ -51,8 +54,21 @@ public class FieldSpec {
         return pattern;
     }
 
+    /**
+     * Set the pattern of this field. This also compiles the pattern into a scanner if possible.
+     */
     public FieldSpec setPattern(Pattern pattern) {
         this.pattern = pattern;
+        this.scanner = pattern == null ? null : FieldScanner.compile(pattern.pattern());
+        return this;
+    }
+
+    public FieldScanner getScanner() {
+        return scanner;
+    }
+
+    public FieldSpec setScanner(FieldScanner scanner) {
+        this.scanner = scanner;
         return this;
     }
 
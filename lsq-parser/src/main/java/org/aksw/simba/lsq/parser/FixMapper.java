@@ -25,18 +25,39 @@ public class FixMapper
 
     @Override
     public int parse(Resource r, String lexicalForm) {
-        boolean isPrefixMatch = lexicalForm.startsWith(prefix);
-        boolean isSuffixMatch = lexicalForm.endsWith(suffix);
+        int result = parse(r, (CharSequence)lexicalForm);
+        return result;
+    }
 
-        boolean isAccepted = isPrefixMatch && isSuffixMatch;
+    @Override
+    public int parse(Resource r, CharSequence lexicalForm) {
+        int result;
+        if(delegate == null) {
+            result = 0;
+        } else {
+            int n = lexicalForm.length();
+            boolean isPrefixMatch = regionMatches(lexicalForm, 0, prefix);
+            boolean isSuffixMatch = n >= suffix.length() && regionMatches(lexicalForm, n - suffix.length(), suffix);
 
-        int result = isAccepted && delegate != null
-                ? delegate.parse(r, lexicalForm.substring(prefix.length(), lexicalForm.length() - suffix.length()))
+            boolean isAccepted = isPrefixMatch && isSuffixMatch;
+
+            result = isAccepted
+                ? delegate.parse(r, lexicalForm.subSequence(prefix.length(), n - suffix.length()))
                 : 0;
+        }
 
         return result;
     }
 
+    public static boolean regionMatches(CharSequence cs, int offset, String str) {
+        int n = str.length();
+        boolean result = offset + n <= cs.length();
+        for(int i = 0; result && i < n; ++i) {
+            result = cs.charAt(offset + i) == str.charAt(i);
+        }
+        return result;
+    }
+
     @Override
     public String unparse(Resource r) {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,145 @@
+package org.aksw.simba.lsq.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cheap test whether a log line may carry a SPARQL query, applied before any decoding or regex matching.
+ *
+ * A line passes if it contains any of the filter's ASCII patterns, ignoring the case of letters.
+ * The typical pattern for web server logs is 'query=', as SPARQL requests carry their query as a parameter
+ * of that name, whereas static assets, HTML pages and health checks do not.
+ * Lines with URL encoded or plain queries, such as in the %encsparql and %sparql fields, must contain a query form keyword
+ * or the keyword of a SPARQL update operation, as updates yield (error) records as well.
+ *
+ * As the filter only drops lines that cannot contain a query, it never changes the set of extracted queries;
+ * it may let through lines that still turn out to be no query.
+ *
+ * The numbers of passed and dropped lines are counted for reporting; filters are thread-safe.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class LinePreFilter {
+    public static final List<String> QUERY_PARAM_PATTERNS = Arrays.asList("query=");
+    public static final List<String> QUERY_KEYWORD_PATTERNS = Arrays.asList("select", "ask", "construct", "describe",
+            "insert", "delete", "load", "clear", "create", "drop", "copy", "move", "add", "with");
+
+    protected List<String> patterns;
+
+    // Patterns as bytes with letters in lower case
+    protected byte[][] bytePatterns;
+
+    protected LongAdder passed = new LongAdder();
+    protected LongAdder dropped = new LongAdder();
+
+    public LinePreFilter(List<String> patterns) {
+        if(patterns.isEmpty()) {
+            throw new IllegalArgumentException("A pre-filter needs at least one pattern");
+        }
+
+        this.patterns = patterns;
+        this.bytePatterns = patterns.stream()
+                .map(p -> p.toLowerCase().getBytes(StandardCharsets.US_ASCII))
+                .toArray(byte[][]::new);
+    }
+
+    /**
+     * Derive the patterns of the pre-filter for a web log format from the format's pattern
+     *
+     * @param logPattern The pattern of the format, such as "%h %l %u %t \"%r\" %>s %b"
+     * @return The patterns or null if no lines can be ruled out
+     */
+    public static List<String> getDefaultPatterns(String logPattern) {
+        List<String> result;
+        if(logPattern.contains("%sparql") || logPattern.contains("%encsparql")) {
+            result = QUERY_KEYWORD_PATTERNS;
+        } else if(logPattern.contains("%r") || logPattern.contains("%U") || logPattern.contains("%q")) {
+            result = QUERY_PARAM_PATTERNS;
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    protected static int toLower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    protected boolean matches(byte[] bytes, int start, int end) {
+        for(byte[] pattern : bytePatterns) {
+            int first = pattern[0];
+            int n = end - pattern.length;
+            for(int i = start; i <= n; ++i) {
+                if(toLower(bytes[i]) == first) {
+                    int j = 1;
+                    while(j < pattern.length && toLower(bytes[i + j]) == pattern[j]) {
+                        ++j;
+                    }
+                    if(j == pattern.length) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    protected boolean matches(CharSequence line) {
+        int end = line.length();
+        for(byte[] pattern : bytePatterns) {
+            int first = pattern[0];
+            int n = end - pattern.length;
+            for(int i = 0; i <= n; ++i) {
+                if(toLower(line.charAt(i)) == first) {
+                    int j = 1;
+                    while(j < pattern.length && toLower(line.charAt(i + j)) == pattern[j]) {
+                        ++j;
+                    }
+                    if(j == pattern.length) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    protected boolean count(boolean result) {
+        (result ? passed : dropped).increment();
+        return result;
+    }
+
+    /**
+     * Test the line held by bytes[start, end)
+     */
+    public boolean test(byte[] bytes, int start, int end) {
+        return count(matches(bytes, start, end));
+    }
+
+    /**
+     * Test a line that has already been decoded
+     */
+    public boolean test(CharSequence line) {
+        return count(matches(line));
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LinePreFilter " + patterns + " [passed=" + getPassed() + ", dropped=" + getDropped() + "]";
+    }
+}
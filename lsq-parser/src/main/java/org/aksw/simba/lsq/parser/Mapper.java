@@ -11,5 +11,19 @@ public interface Mapper {
 	 * @return The number of properties parsed from the string
 	 */
     int parse(Resource r, String lexicalForm);
+
+    /**
+     * Parse from a character sequence, such as a view on a buffer.
+     * Implementations override this method in order to avoid materializing strings
+     * for the parts of the input that do not end up in the resource.
+     *
+     * @param r
+     * @param lexicalForm
+     * @return The number of properties parsed from the character sequence
+     */
+    default int parse(Resource r, CharSequence lexicalForm) {
+        return parse(r, lexicalForm.toString());
+    }
+
     String unparse(Resource r);
 }
\ No newline at end of file
@@ -21,6 +21,13 @@ public class MapperConverter
         return result;
     }
 
+    @Override
+    public int parse(Resource r, CharSequence lexicalForm) {
+        // The converter operates on strings
+        int result = parse(r, lexicalForm.toString());
+        return result;
+    }
+
     @Override
     public String unparse(Resource r) {
         String str = super.unparse(r);
@@ -18,6 +18,12 @@ public class MapperDelegate
         return result;
     }
 
+    @Override
+    public int parse(Resource r, CharSequence lexicalForm) {
+        int result = delegate.parse(r, lexicalForm);
+        return result;
+    }
+
     @Override
     public String unparse(Resource r) {
         String result = delegate.unparse(r);
@@ -17,6 +17,12 @@ public class NestedPropertyMapper
 
     @Override
     public int parse(Resource r, String lexicalForm) {
+        int result = parse(r, (CharSequence)lexicalForm);
+        return result;
+    }
+
+    @Override
+    public int parse(Resource r, CharSequence lexicalForm) {
         Resource subR;
         Statement stmt = r.getProperty(property);
         if(stmt != null) {
@@ -0,0 +1,75 @@
+package org.aksw.simba.lsq.parser;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.AtomicLongMap;
+
+/**
+ * Thread-safe counters of the lines a {@link StringMapper} failed to parse, keyed by the id of the
+ * field at which parsing failed. Failures are cheap to record, as no exception is involved.
+ * For diagnostics, up to a configurable number of failing lines is logged; the default is to log none.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class ParseFailureStats {
+    private static final Logger logger = LoggerFactory.getLogger(ParseFailureStats.class);
+
+    protected AtomicLongMap<String> fieldToFailures = AtomicLongMap.create();
+
+    protected volatile long maxLoggedFailures = 0;
+    protected AtomicLong numLoggedFailures = new AtomicLong();
+
+    /**
+     * Record that parsing a line failed at a field
+     *
+     * @param fieldId The id of the field that did not match or whose value could not be converted
+     * @param line The line
+     * @param offset The offset within the line at which the field was expected
+     */
+    public void onFailure(String fieldId, CharSequence line, int offset) {
+        fieldToFailures.incrementAndGet(fieldId);
+
+        if(numLoggedFailures.get() < maxLoggedFailures && numLoggedFailures.getAndIncrement() < maxLoggedFailures) {
+            logger.warn("Field '" + fieldId + "' does not match at offset " + offset + " of line: " + line);
+        }
+    }
+
+    public long getMaxLoggedFailures() {
+        return maxLoggedFailures;
+    }
+
+    /**
+     * Set the number of failing lines to log from now on
+     */
+    public ParseFailureStats setMaxLoggedFailures(long maxLoggedFailures) {
+        this.maxLoggedFailures = maxLoggedFailures;
+        this.numLoggedFailures.set(0);
+        return this;
+    }
+
+    public long getNumFailures() {
+        return fieldToFailures.sum();
+    }
+
+    /**
+     * @return A snapshot of the number of failures per field id, ordered by the field ids
+     */
+    public Map<String, Long> getFailureCounts() {
+        return new TreeMap<>(fieldToFailures.asMap());
+    }
+
+    /**
+     * The number of failures per field id since a snapshot was taken with {@link #getFailureCounts()}
+     */
+    public Map<String, Long> getFailureCountsSince(Map<String, Long> snapshot) {
+        Map<String, Long> result = getFailureCounts();
+        snapshot.forEach((fieldId, count) -> result.computeIfPresent(fieldId, (k, v) -> v - count == 0 ? null : v - count));
+        return result;
+    }
+}
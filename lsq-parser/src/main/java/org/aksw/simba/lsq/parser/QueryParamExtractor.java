@@ -0,0 +1,202 @@
+package org.aksw.simba.lsq.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extraction of individual parameters, such as the SPARQL query, from the query strings of request paths.
+ *
+ * The query string is scanned once; parameters are separated by '&amp;' or ';' as with
+ * {@link org.apache.http.client.utils.URLEncodedUtils#parse(String, java.nio.charset.Charset)}, and only the values of
+ * the requested parameter are URL decoded. Decoding happens in a per-thread buffer which is reused across calls,
+ * and values without escapes are returned as plain substrings.
+ * Malformed escapes are retained literally and invalid UTF-8 sequences are replaced, as with URLEncodedUtils.
+ * Unescaped non-ASCII chars, which URLEncodedUtils truncates to single bytes, are retained.
+ *
+ * @author Claus Stadler
+ *
+ */
+public class QueryParamExtractor {
+    public static final String QUERY = "query";
+    public static final String DEFAULT_GRAPH_URI = "default-graph-uri";
+    public static final String NAMED_GRAPH_URI = "named-graph-uri";
+
+    // Buffer for the UTF-8 bytes of decoded values
+    private static final ThreadLocal<byte[]> localBuffer = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    /**
+     * Extract the SPARQL query from a request path such as /sparql?query=...
+     *
+     * @param path
+     * @return The decoded query or null if there is none
+     */
+    public static String extractQueryFromPath(CharSequence path) {
+        return extractFromPath(path, QUERY);
+    }
+
+    /**
+     * Extract the first value of a parameter from the query string of a path, i.e. the part after the first '?'
+     */
+    public static String extractFromPath(CharSequence path, String paramName) {
+        String result = null;
+        if(path != null) {
+            int offset = indexOf(path, '?', 0, path.length());
+            result = offset < 0 ? null : extract(path, offset + 1, path.length(), paramName);
+        }
+        return result;
+    }
+
+    /**
+     * Extract the first value of a parameter from a query string such as "query=...&amp;format=json"
+     *
+     * @param queryString
+     * @param paramName
+     * @return The decoded value; null if there is no such parameter or its first occurrence lacks a value
+     */
+    public static String extract(CharSequence queryString, String paramName) {
+        return queryString == null ? null : extract(queryString, 0, queryString.length(), paramName);
+    }
+
+    public static String extract(CharSequence str, int start, int end, String paramName) {
+        int i = start;
+        while(i <= end) {
+            int paramEnd = findParamEnd(str, i, end);
+            int eq = indexOf(str, '=', i, paramEnd);
+            int nameEnd = eq < 0 ? paramEnd : eq;
+
+            if(isName(str, i, nameEnd, paramName)) {
+                return eq < 0 ? null : decode(str, eq + 1, paramEnd);
+            }
+            i = paramEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Extract all values of a parameter, such as those of a repeated default-graph-uri parameter.
+     * Occurrences without a value are skipped.
+     */
+    public static List<String> extractAll(CharSequence queryString, String paramName) {
+        List<String> result = new ArrayList<>();
+        if(queryString != null) {
+            int end = queryString.length();
+            int i = 0;
+            while(i <= end) {
+                int paramEnd = findParamEnd(queryString, i, end);
+                int eq = indexOf(queryString, '=', i, paramEnd);
+                if(eq >= 0 && isName(queryString, i, eq, paramName)) {
+                    result.add(decode(queryString, eq + 1, paramEnd));
+                }
+                i = paramEnd + 1;
+            }
+        }
+        return result;
+    }
+
+    protected static int findParamEnd(CharSequence str, int start, int end) {
+        int i = start;
+        while(i < end) {
+            char c = str.charAt(i);
+            if(c == '&' || c == ';') {
+                break;
+            }
+            ++i;
+        }
+        return i;
+    }
+
+    protected static int indexOf(CharSequence str, char c, int start, int end) {
+        for(int i = start; i < end; ++i) {
+            if(str.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Test whether str[start, end) is the given name; names with escapes are decoded first
+     */
+    protected static boolean isName(CharSequence str, int start, int end, String name) {
+        boolean result;
+        if(indexOf(str, '%', start, end) >= 0 || indexOf(str, '+', start, end) >= 0) {
+            result = name.equals(decode(str, start, end));
+        } else if(end - start != name.length()) {
+            result = false;
+        } else {
+            result = true;
+            for(int i = 0; result && i < name.length(); ++i) {
+                result = str.charAt(start + i) == name.charAt(i);
+            }
+        }
+        return result;
+    }
+
+    protected static int hexValue(char c) {
+        return c >= '0' && c <= '9' ? c - '0'
+            : c >= 'a' && c <= 'f' ? c - 'a' + 10
+            : c >= 'A' && c <= 'F' ? c - 'A' + 10
+            : -1;
+    }
+
+    /**
+     * URL decode str[start, end): '+' becomes a space and %XX escapes are decoded as UTF-8
+     */
+    public static String decode(CharSequence str, int start, int end) {
+        if(indexOf(str, '%', start, end) < 0 && indexOf(str, '+', start, end) < 0) {
+            return str.subSequence(start, end).toString();
+        }
+
+        // Each char yields at most 3 bytes in UTF-8
+        int maxBytes = (end - start) * 3;
+        byte[] buf = localBuffer.get();
+        if(buf.length < maxBytes) {
+            buf = new byte[Math.max(maxBytes, buf.length * 2)];
+            localBuffer.set(buf);
+        }
+
+        int n = 0;
+        int i = start;
+        while(i < end) {
+            char c = str.charAt(i);
+            if(c == '+') {
+                buf[n++] = ' ';
+                ++i;
+            } else if(c == '%' && i + 2 < end) {
+                int hi = hexValue(str.charAt(i + 1));
+                int lo = hexValue(str.charAt(i + 2));
+                if(hi >= 0 && lo >= 0) {
+                    buf[n++] = (byte)((hi << 4) | lo);
+                    i += 3;
+                } else {
+                    // As with URLEncodedUtils, a malformed escape is retained together with the two chars that follow it
+                    buf[n++] = '%';
+                    n = appendUtf8(str.subSequence(i + 1, i + 3), buf, n);
+                    i += 3;
+                }
+            } else if(c < 0x80) {
+                buf[n++] = (byte)c;
+                ++i;
+            } else {
+                // Surrogate pairs are encoded together
+                int len = Character.charCount(Character.codePointAt(str, i));
+                n = appendUtf8(str.subSequence(i, i + len), buf, n);
+                i += len;
+            }
+        }
+
+        return new String(buf, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append the UTF-8 encoding of the given chars to buf
+     *
+     * @return The new number of bytes in buf
+     */
+    protected static int appendUtf8(CharSequence chars, byte[] buf, int n) {
+        byte[] bytes = chars.toString().getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, buf, n, bytes.length);
+        return n + bytes.length;
+    }
+}
@@ -1,68 +1,46 @@
 package org.aksw.simba.lsq.parser;
 
-import java.text.DateFormat;
-import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.Locale;
 
 import org.aksw.jena_sparql_api.sparql.ext.datatypes.RDFDatatypeDelegate;
 import org.apache.jena.datatypes.xsd.XSDDateTime;
 import org.apache.jena.datatypes.xsd.impl.XSDDateTimeType;
 
+/**
+ * An xsd:dateTime datatype whose lexical forms follow a custom date format, such as that of web server logs.
+ * Parsing and unparsing are thread-safe; see {@link TimestampParser}.
+ */
 public class RDFDatatypeDateFormat
     extends RDFDatatypeDelegate
 {
-    protected Class<?> clazz;
-    protected DateFormat dateFormat;
+    protected TimestampParser timestampParser;
 
-    public RDFDatatypeDateFormat(DateFormat dateFormat) {
+    public RDFDatatypeDateFormat(DateTimeFormatter dateFormat) {
+        this(new TimestampParser(dateFormat));
+    }
+
+    public RDFDatatypeDateFormat(TimestampParser timestampParser) {
         super(new XSDDateTimeType("dateTime"));
-        this.clazz = Date.class;
-        this.dateFormat = dateFormat;
+        this.timestampParser = timestampParser;
     }
 
     @Override
     public Class<?> getJavaClass() {
-        return clazz;
+        return XSDDateTime.class;
     }
 
     public String unparse(Object value) {
         XSDDateTime dt = (XSDDateTime)value;
-        Calendar cal = dt.asCalendar();
-
-        //Calendar cal = (Calendar)value;
-//      Calendar cal = new GregorianCalendar();
-//      cal.setTime(date);
-        //Date date = (Date) value;
-        Date date = cal.getTime();
-      String result = dateFormat.format(date);
-//        XSDDateTime tmp = new XSDDateTime(cal);
-//        String result = super.unparse(tmp);
+        String result = timestampParser.format(dt);
         return result;
     }
 
     @Override
     public Object parse(String lexicalForm) {
         try {
-
-            //DateTimeFormatter f = DateTimeFormatter.ofPattern("dd MM uuuu HH:mm:ss.SSS X");
-            //OffsetDateTime odt = OffsetDateTime.parse ( input , f );
-
-            Date date = dateFormat.parse(lexicalForm);
-            //Object tmp = super.parse(lexicalForm);
-            //XSDDateTime xsd = (XSDDateTime) tmp;
-            //Calendar cal = xsd.asCalendar();
-            Calendar calendar = new GregorianCalendar();//Calendar.getInstance();
-            calendar.setTime(date);
-
-            return calendar;
-            //Date result = calendar.getTime();
-            //return result;
+            return timestampParser.parse(lexicalForm);
         } catch(Exception e) {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+}
@@ -36,6 +36,30 @@ public class StringMapper
 
     protected AtomicLongMap<String> fieldTypeToIndex = AtomicLongMap.create();
 
+    protected ParseFailureStats failureStats = new ParseFailureStats();
+
+    /**
+     * The counters of the lines this mapper failed to parse
+     */
+    public ParseFailureStats getFailureStats() {
+        return failureStats;
+    }
+
+    /**
+     * A mapper with the same fields that records its failures in the given stats.
+     * Inputs that are parsed concurrently with a shared mapper thereby get failure counts of their own.
+     *
+     * @param failureStats
+     * @return
+     */
+    public StringMapper withFailureStats(ParseFailureStats failureStats) {
+        StringMapper result = new StringMapper();
+        result.fieldSpecs = fieldSpecs;
+        result.fieldTypeToIndex = fieldTypeToIndex;
+        result.failureStats = failureStats;
+        return result;
+    }
+
     public void skipPattern(String str) {
         String fieldName = allocateFieldId("ignored");
         Pattern p = Pattern.compile("^" + str);
@@ -188,33 +212,82 @@ public class StringMapper
     }
 
     public int parse(Resource r, String str) {
+        int result = parse(r, (CharSequence)str);
+        return result;
+    }
 
-        String remaining = str;
+    public List<FieldSpec> getFieldSpecs() {
+        return fieldSpecs;
+    }
+
+    /**
+     * Parse a character sequence by matching the field patterns against successive regions of it.
+     * Fields whose pattern could be compiled into a {@link FieldScanner} are matched in a single pass without
+     * backtracking; the others fall back to regex matching.
+     * Fields are passed on to their mappers as views on the input, hence strings
+     * are only created by those mappers that produce values.
+     *
+     * If a mandatory field does not match or its mapper rejects its value, parsing stops and 0 is returned;
+     * the failure is recorded in the {@link #getFailureStats() failure stats} rather than thrown.
+     * Properties of the fields before the failing one may have been added to the resource.
+     *
+     * @return 1 if the whole sequence was parsed, 0 otherwise
+     */
+    @Override
+    public int parse(Resource r, CharSequence str) {
+
+        int remainingStart = 0;
+        int end = str.length();
+
+        // A single matcher is reused for all fields that need regex matching
+        Matcher m = null;
 
         for(FieldSpec fieldSpec : fieldSpecs) { //String fieldValue : pattern) {
             String fieldId = fieldSpec.getFieldId();
 
-            String contrib = null;
             //boolean isField = fieldToPattern.containsKey(fieldValue);
             //if(isField) {
                 //Pattern pattern = fieldToPattern.get(fieldValue);
             Pattern pattern = fieldSpec.getPattern();
-            Matcher m = pattern.matcher(remaining);
-            if(m.find()) {
-                contrib = m.group();
+            FieldScanner scanner = fieldSpec.getScanner();
+
+            int matchStart;
+            int matchEnd;
+            if(scanner != null) {
+                matchStart = scanner.isAnchored() ? remainingStart : scanner.find(str, remainingStart, end);
+                matchEnd = matchStart < 0 ? -1 : scanner.matchAt(str, remainingStart, matchStart, end);
+            } else {
+                m = m == null ? pattern.matcher(str) : m.usePattern(pattern);
+                m.region(remainingStart, end);
+                boolean isMatch = m.find();
+                matchStart = isMatch ? m.start() : -1;
+                matchEnd = isMatch ? m.end() : -1;
+            }
+
+            if(matchEnd >= 0) {
+                CharSequence contrib = str.subSequence(matchStart, matchEnd);
 
-                logger.trace("Contribution: " + fieldId + " -> " + contrib);
+                if(logger.isTraceEnabled()) {
+                    logger.trace("Contribution: " + fieldId + " -> " + contrib);
+                }
 
                 Mapper mapper = fieldSpec.getMapper();
                 if(mapper != null) {
-                    mapper.parse(r, contrib);
+                    try {
+                        mapper.parse(r, contrib);
+                    } catch(RuntimeException e) {
+                        // Values the field's pattern admits may still be invalid, such as malformed timestamps
+                        failureStats.onFailure(getFailureId(fieldSpec), str, matchStart);
+                        return 0;
+                    }
                 }
 
-                remaining = remaining.substring(m.end());
+                remainingStart = matchEnd;
             } else {
                 boolean optional = fieldSpec.isOptional();
                 if(!optional) {
-                    throw new RuntimeException("Field '" + fieldId + "' with pattern '" + pattern + "' does not match '" + remaining + "'");
+                    failureStats.onFailure(getFailureId(fieldSpec), str, remainingStart);
+                    return 0;
                 }
             }
 //            } else {
@@ -229,6 +302,15 @@ public class StringMapper
         return 1;
     }
 
+    /**
+     * The id under which failures of a field are counted; literal parts of the pattern have no field id
+     */
+    protected static String getFailureId(FieldSpec fieldSpec) {
+        String fieldId = fieldSpec.getFieldId();
+        String result = fieldId != null ? fieldId : "literal " + fieldSpec.getPattern();
+        return result;
+    }
+
     public String unparse(Resource r) {
         StringBuilder sb = new StringBuilder();
         for(FieldSpec fieldSpec : fieldSpecs) {
@@ -0,0 +1,134 @@
+package org.aksw.simba.lsq.parser;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.jena.datatypes.xsd.XSDDateTime;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Thread-safe parser for the timestamps of log records based on an immutable {@link DateTimeFormatter}.
+ *
+ * Consecutive records of a log mostly share the same timestamp string, because timestamps
+ * have a resolution of seconds. Hence, parsed timestamps are kept in a small direct mapped cache keyed by the raw string.
+ * Each slot holds an immutable entry, so concurrent parsers at worst overwrite each other's entries.
+ *
+ * Timestamps without an offset are interpreted in the system's default time zone, and month and day names are English,
+ * as is the case in web server logs. The default zone is applied to such timestamps only rather than set as the formatter's
+ * override zone, because on Java 8 an override zone takes precedence over a parsed offset (JDK-8033662).
+ *
+ * @author Claus Stadler
+ *
+ */
+public class TimestampParser {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    protected DateTimeFormatter formatter;
+
+    // Whether the format has no offset or zone, such that timestamps refer to the default time zone
+    protected boolean isLocal;
+
+    protected AtomicReferenceArray<Entry<String, XSDDateTime>> cache;
+    protected int mask;
+
+    public TimestampParser(DateTimeFormatter formatter) {
+        this(formatter, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param formatter
+     * @param cacheSize The number of cache slots; rounded up to a power of two
+     */
+    public TimestampParser(DateTimeFormatter formatter, int cacheSize) {
+        int n = Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1;
+
+        this.formatter = formatter;
+        this.isLocal = isLocal(formatter);
+        this.cache = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    /**
+     * Whether a formatter can format local date-times, i.e. its format has neither an offset nor a zone
+     */
+    protected static boolean isLocal(DateTimeFormatter formatter) {
+        boolean result;
+        try {
+            formatter.format(LocalDateTime.of(2000, 1, 1, 0, 0));
+            result = true;
+        } catch(DateTimeException e) {
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * Create a formatter from a pattern in the syntax of {@link DateTimeFormatter}, which for the
+     * patterns of log formats is largely the same as that of {@link java.text.SimpleDateFormat}
+     */
+    public static DateTimeFormatter createFormatter(String pattern) {
+        return DateTimeFormatter.ofPattern(pattern, Locale.ENGLISH);
+    }
+
+    public static TimestampParser ofPattern(String pattern) {
+        return new TimestampParser(createFormatter(pattern));
+    }
+
+    /**
+     * Parse a timestamp
+     *
+     * @param str
+     * @return
+     * @throws java.time.format.DateTimeParseException if the string does not match the format
+     */
+    public XSDDateTime parse(String str) {
+        // Spread the hash bits, as timestamps of the same second differ in few characters only
+        int h = str.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+
+        Entry<String, XSDDateTime> e = cache.get(slot);
+        XSDDateTime result;
+        if(e != null && e.getKey().equals(str)) {
+            result = e.getValue();
+        } else {
+            TemporalAccessor parsed = formatter.parseBest(str, ZonedDateTime::from, LocalDateTime::from);
+            ZonedDateTime zdt = parsed instanceof LocalDateTime
+                    ? ((LocalDateTime)parsed).atZone(ZoneId.systemDefault())
+                    : (ZonedDateTime)parsed;
+            result = new XSDDateTime(GregorianCalendar.from(zdt));
+            cache.set(slot, Maps.immutableEntry(str, result));
+        }
+        return result;
+    }
+
+    /**
+     * Format a timestamp. Formats with an offset render the timestamp in the offset of the given date time,
+     * which is UTC for the normalized values of {@link XSDDateTime}; formats without one render it in the default time zone.
+     */
+    public String format(XSDDateTime dateTime) {
+        ZonedDateTime zdt = ((GregorianCalendar)dateTime.asCalendar()).toZonedDateTime();
+        if(isLocal) {
+            zdt = zdt.withZoneSameInstant(ZoneId.systemDefault());
+        }
+        String result = formatter.format(zdt);
+        return result;
+    }
+
+    public DateTimeFormatter getFormatter() {
+        return formatter;
+    }
+
+    @Override
+    public String toString() {
+        return "TimestampParser [" + formatter + "]";
+    }
+}
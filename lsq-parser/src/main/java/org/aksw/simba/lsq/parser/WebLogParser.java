@@ -1,18 +1,13 @@
 package org.aksw.simba.lsq.parser;
 
-import java.net.URI;
-import java.nio.charset.StandardCharsets;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collections;
-import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.BiConsumer;
@@ -23,8 +18,6 @@ import java.util.stream.Collectors;
 import org.aksw.commons.util.strings.StringUtils;
 import org.aksw.simba.lsq.vocab.LSQ;
 import org.aksw.simba.lsq.vocab.PROV;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.jena.datatypes.RDFDatatype;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Property;
@@ -41,13 +34,26 @@ import com.google.common.collect.Maps;
 public class WebLogParser {
 
     public static Map<String, Mapper> loadRegistry(Model model) {
+        Map<String, Mapper> result = loadPatterns(model).entrySet().stream()
+            .collect(Collectors.toMap(
+                    Entry::getKey,
+                    e -> create(e.getValue())
+            ));
+
+        return result;
+    }
+
+    /**
+     * Load the patterns of the web access log formats in the model by their names
+     */
+    public static Map<String, String> loadPatterns(Model model) {
         List<Resource> rs = model.listResourcesWithProperty(RDF.type, LSQ.WebAccessLogFormat).toList();
 
-        Map<String, Mapper> result = rs.stream()
+        Map<String, String> result = rs.stream()
             .filter(r -> r.hasProperty(LSQ.pattern))
             .collect(Collectors.toMap(
                     r -> r.getLocalName(),
-                    r -> create(r.getProperty(LSQ.pattern).getString())
+                    r -> r.getProperty(LSQ.pattern).getString()
             ));
 
         return result;
@@ -100,9 +106,9 @@ public class WebLogParser {
         result.put("l", (m, x) -> m.ignoreField("\\S+", "-"));
         result.put("u", (m, x) -> m.addField(LSQ.user, "\\S+", String.class));
         result.put("t", (m, x) -> {
-            DateFormat dateFormat = x == null
+            DateTimeFormatter dateFormat = x == null
                     ? apacheDateFormat
-                    : new SimpleDateFormat(x);
+                    : TimestampParser.createFormatter(x);
 
             RDFDatatype rdfDatatype = new RDFDatatypeDateFormat(dateFormat);
 
@@ -113,9 +119,9 @@ public class WebLogParser {
 
         // custom extension for dates without '[]'
         result.put("C", (m, x) -> {
-            DateFormat dateFormat = x == null
+            DateTimeFormatter dateFormat = x == null
                     ? apacheDateFormat
-                    : new SimpleDateFormat(x);
+                    : TimestampParser.createFormatter(x);
 
             RDFDatatype rdfDatatype = new RDFDatatypeDateFormat(dateFormat);
 
@@ -278,10 +284,10 @@ public class WebLogParser {
     public static final Pattern requestParser = Pattern.compile(requestParserStr);
 
     // 17/Apr/2011:06:47:47 +0200
-    public static final DateFormat apacheDateFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z");
+    public static final DateTimeFormatter apacheDateFormat = TimestampParser.createFormatter("dd/MMM/yyyy:HH:mm:ss Z");
 
     // 30/Apr/2010 00:00:00 -0600
-    public static final DateFormat virtuosoDateFormat = new SimpleDateFormat("dd/MMM/yyyy HH:mm:ss Z");
+    public static final DateTimeFormatter virtuosoDateFormat = TimestampParser.createFormatter("dd/MMM/yyyy HH:mm:ss Z");
 
 /*
     private String hostname;
@@ -294,15 +300,15 @@ public class WebLogParser {
 */
 
     protected PatternMatcher patternMatcher;
-    protected DateFormat dateFormat;
+    protected TimestampParser timestampParser;
 
-    public WebLogParser(Pattern pattern, DateFormat dateFormat) {
+    public WebLogParser(Pattern pattern, DateTimeFormatter dateFormat) {
         this(new PatternMatcherImpl(pattern), dateFormat);
     }
 
-    public WebLogParser(PatternMatcher patternMatcher, DateFormat dateFormat) {
+    public WebLogParser(PatternMatcher patternMatcher, DateTimeFormatter dateFormat) {
         this.patternMatcher = patternMatcher;
-        this.dateFormat = dateFormat;
+        this.timestampParser = new TimestampParser(dateFormat);
     }
 
     public static String encodeUnsafeCharacters(String uri) {
@@ -348,40 +354,17 @@ public class WebLogParser {
             Optional.ofNullable(m.get(pathStr)).ifPresent(o -> inout.addLiteral(LSQ.path, o));
             Optional.ofNullable(m.get("verb")).ifPresent(o -> inout.addLiteral(LSQ.verb, o));
 
-            if(pathStr != null) {
-
-                pathStr = encodeUnsafeCharacters(pathStr);
-
-
-                // Parse the path and extract sparql query string if present
-                String mockUri = "http://example.org/" + pathStr;
-                try {
-                    URI uri = new URI(mockUri);
-                    List<NameValuePair> qsArgs = URLEncodedUtils.parse(uri, StandardCharsets.UTF_8.name());
-                    String queryStr = qsArgs.stream()
-                        .filter(x -> x.getName().equals("query"))
-                        .findFirst()
-                        .map(x -> x.getValue())
-                        .orElse(null);
-
-                    if(queryStr != null) {
-                        inout.addLiteral(LSQ.query, queryStr);
-                    }
-                } catch (Exception e) {
-                    //System.out.println(mockUri.substring(244));
-                    logger.warn("Could not parse URI: " + mockUri, e);
-                }
+            // Extract the sparql query string from the path if present
+            String queryStr = QueryParamExtractor.extractQueryFromPath(pathStr);
+            if(queryStr != null) {
+                inout.addLiteral(LSQ.query, queryStr);
             }
 
             String timestampStr = m.get("time");
             if(timestampStr != null) {
-                Date date;
                 try {
-                    date = dateFormat.parse(timestampStr);
-                    Calendar cal = new GregorianCalendar();
-                    cal.setTime(date);
-                    inout.addLiteral(PROV.atTime, cal);
-                } catch (ParseException e) {
+                    inout.addLiteral(PROV.atTime, timestampParser.parse(timestampStr));
+                } catch (DateTimeParseException e) {
                     inout.addLiteral(LSQ.processingError, "Failed to parse timestamp: " + timestampStr);
                 }
             }
@@ -394,52 +377,53 @@ public class WebLogParser {
 
 
     public static void extractQuery(Resource r) {
+        String queryStr = extractQueryFromRequest(r);
+        if(queryStr != null) {
+            r.addLiteral(LSQ.query, queryStr);
+        }
+    }
+
+    /**
+     * Get the query of a log record without modifying the record:
+     * its lsq:query if present, otherwise the one that {@link #extractQuery(Resource)} would add.
+     *
+     * @param r
+     * @return The query string or null if the record has none
+     */
+    public static String getQuery(Resource r) {
+        String result = r.hasProperty(LSQ.query)
+                ? r.getProperty(LSQ.query).getString()
+                : extractQueryFromRequest(r);
+        return result;
+    }
+
+    /**
+     * Extract the query from the path or the query string of a log record's request
+     */
+    protected static String extractQueryFromRequest(Resource r) {
         List<Function<Resource, String>> extractors = Arrays.asList(
                 x -> x.hasProperty(LSQ.path) ? extractQueryString(x.getProperty(LSQ.path).getString()) : null,
                 x -> x.hasProperty(LSQ.queryString) ? extractQueryString2(x.getProperty(LSQ.queryString).getString()) : null
         );
 
-        extractors.stream()
+        String result = extractors.stream()
             .map(e -> e.apply(r))
             .filter(s -> s != null)
             .findFirst()
-            .ifPresent(s -> r.addLiteral(LSQ.query, s));
+            .orElse(null);
+        return result;
     }
 
+    /**
+     * Extract the decoded value of the query parameter from a query string
+     */
     public static String extractQueryString2(String uri) {
-        List<NameValuePair> qsArgs = URLEncodedUtils.parse(uri, StandardCharsets.UTF_8);
-        String result = qsArgs.stream()
-            .filter(x -> x.getName().equals("query"))
-            .findFirst()
-            .map(x -> x.getValue())
-            .orElse(null);
-        return result;
+        return QueryParamExtractor.extract(uri, QueryParamExtractor.QUERY);
     }
 
     // TODO extract the query also from referrer fields
     public static String extractQueryString(String pathStr) {
-        String result = null;
-
-        if(pathStr != null) {
-
-            pathStr = encodeUnsafeCharacters(pathStr);
-
-
-            // Parse the path and extract sparql query string if present
-            //String mockUri = "http://example.org/" + pathStr;
-            try {
-                //URI uri = new URI(pathStr);
-                int queryStrOffset = pathStr.indexOf("?");
-
-                result = queryStrOffset >= 0 ? extractQueryString2(pathStr.substring(queryStrOffset + 1)) : null;
-            } catch (Exception e) {
-                //System.out.println(mockUri.substring(244));
-                logger.warn("Could not parse URI: " + pathStr, e);
-                //logger.warn("Could not parse URI: " + mockUri, e);
-            }
-        }
-
-        return result;
+        return QueryParamExtractor.extractQueryFromPath(pathStr);
     }
 
 }
@@ -0,0 +1,90 @@
+package org.aksw.simba.lsq.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFieldScanner {
+
+    /**
+     * Check that the scanner finds the same matches as the regex it was compiled from
+     */
+    public static void assertSameMatches(Pattern pattern, FieldScanner scanner, String str) {
+        for(int start = 0; start <= str.length(); ++start) {
+            Matcher m = pattern.matcher(str);
+            m.region(start, str.length());
+
+            boolean isMatch = m.find();
+            int expectedStart = isMatch ? m.start() : -1;
+            int expectedEnd = isMatch ? m.end() : -1;
+
+            int actualStart = scanner.isAnchored() ? start : scanner.find(str, start, str.length());
+            int actualEnd = actualStart < 0 ? -1 : scanner.matchAt(str, start, actualStart, str.length());
+            if(actualEnd < 0) {
+                actualStart = -1;
+            }
+
+            String msg = pattern + " on '" + str + "' from " + start;
+            Assert.assertEquals(msg, expectedStart, actualStart);
+            Assert.assertEquals(msg, expectedEnd, actualEnd);
+        }
+    }
+
+    @Test
+    public void testDefaultLogFormatPatterns() {
+        Map<String, Mapper> logFmtRegistry = WebLogParser.loadRegistry(RDFDataMgr.loadModel("default-log-formats.ttl"));
+
+        List<Pattern> patterns = new ArrayList<>();
+        for(Mapper mapper : logFmtRegistry.values()) {
+            for(FieldSpec fieldSpec : ((StringMapper)mapper).getFieldSpecs()) {
+                // All patterns of the default formats are expected to be supported
+                Assert.assertNotNull("No scanner for " + fieldSpec.getPattern(), fieldSpec.getScanner());
+                patterns.add(fieldSpec.getPattern());
+            }
+        }
+
+        List<String> inputs = new ArrayList<>(Arrays.asList(
+                "127.0.0.1 - - [16/May/2014:00:29:09 +0100] \"GET /sparql?query=x HTTP/1.1\" 200 1234 \"-\" \"agent\"",
+                "- 404 -",
+                "2017-06-12 00:00:00\tx",
+                "\u00e4\u20ac \ud83d\ude00\"]x",
+                ""));
+
+        Random random = new Random(0);
+        String alphabet = " \t\"[]-?09az:/\u00e4\ud83d\ude00\n";
+        for(int i = 0; i < 200; ++i) {
+            StringBuilder sb = new StringBuilder();
+            int n = random.nextInt(12);
+            for(int j = 0; j < n; ++j) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            inputs.add(sb.toString());
+        }
+
+        for(Pattern pattern : patterns) {
+            FieldScanner scanner = FieldScanner.compile(pattern.pattern());
+            for(String input : inputs) {
+                assertSameMatches(pattern, scanner, input);
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedPatterns() {
+        for(String regex : Arrays.asList("(a|b)", "a*b", "\\S+?", "x$", "\\t", "[a[b]]")) {
+            Assert.assertNull(regex, FieldScanner.compile(regex));
+        }
+
+        for(String regex : Arrays.asList("^[^]]*", "^-|\\d{3}", "\\Q\"\\E", "^[a-c\\-]{2,}", "^.*")) {
+            Assert.assertNotNull(regex, FieldScanner.compile(regex));
+        }
+    }
+}
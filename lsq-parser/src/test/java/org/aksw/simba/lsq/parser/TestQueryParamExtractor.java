@@ -0,0 +1,71 @@
+package org.aksw.simba.lsq.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestQueryParamExtractor {
+
+    /** The former extraction via URLEncodedUtils, which serves as the reference */
+    public static String extractWithUrlEncodedUtils(String queryString, String name) {
+        List<NameValuePair> args = URLEncodedUtils.parse(queryString, StandardCharsets.UTF_8);
+        return args.stream()
+            .filter(x -> x.getName().equals(name))
+            .findFirst()
+            .map(x -> x.getValue())
+            .orElse(null);
+    }
+
+    @Test
+    public void testExtraction() {
+        String path = "/sparql?default-graph-uri=http%3A%2F%2Fdbpedia.org&query=SELECT+*+%7B+%3Fs+%3Fp+%22%C3%A4%22+%7D&format=json";
+
+        Assert.assertEquals("SELECT * { ?s ?p \"ä\" }", QueryParamExtractor.extractQueryFromPath(path));
+        Assert.assertEquals("http://dbpedia.org", QueryParamExtractor.extractFromPath(path, QueryParamExtractor.DEFAULT_GRAPH_URI));
+        Assert.assertNull(QueryParamExtractor.extractFromPath(path, QueryParamExtractor.NAMED_GRAPH_URI));
+        Assert.assertNull(QueryParamExtractor.extractQueryFromPath("/sparql"));
+
+        // Unlike with URLEncodedUtils, unescaped non-ASCII chars are retained
+        Assert.assertEquals("\u00e4 \u00e4", QueryParamExtractor.extract("query=\u00e4+%C3%A4", "query"));
+
+        Assert.assertEquals(Arrays.asList("a", "b c"), QueryParamExtractor.extractAll("default-graph-uri=a&x=1;default-graph-uri=b+c", "default-graph-uri"));
+    }
+
+    /**
+     * Random ASCII query strings, including malformed escapes, must yield the same values as URLEncodedUtils
+     */
+    @Test
+    public void testMatchesUrlEncodedUtils() {
+        String alphabet = "query=&;%+aZ09-{}";
+        String[] fragments = { "%41", "%c3%a4", "%C3", "%zz", "%4", "query", "query=", "qu%65ry=", "=" };
+        Random random = new Random(0);
+
+        for(int i = 0; i < 20000; ++i) {
+            StringBuilder sb = new StringBuilder();
+            int n = random.nextInt(20);
+            for(int j = 0; j < n; ++j) {
+                if(random.nextInt(4) == 0) {
+                    sb.append(fragments[random.nextInt(fragments.length)]);
+                } else {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            String str = sb.toString();
+
+            Assert.assertEquals(str, extractWithUrlEncodedUtils(str, "query"), QueryParamExtractor.extract(str, "query"));
+
+            List<String> expectedAll = URLEncodedUtils.parse(str, StandardCharsets.UTF_8).stream()
+                    .filter(x -> x.getName().equals("query") && x.getValue() != null)
+                    .map(NameValuePair::getValue)
+                    .collect(Collectors.toList());
+            Assert.assertEquals(str, expectedAll, QueryParamExtractor.extractAll(str, "query"));
+        }
+    }
+}
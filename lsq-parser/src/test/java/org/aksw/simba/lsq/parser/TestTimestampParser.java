@@ -0,0 +1,83 @@
+package org.aksw.simba.lsq.parser;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.jena.datatypes.xsd.XSDDateTime;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTimestampParser {
+
+    @Test
+    public void testApacheTimestamp() {
+        TimestampParser parser = new TimestampParser(WebLogParser.apacheDateFormat);
+
+        XSDDateTime dt = parser.parse("16/May/2014:00:29:09 +0100");
+        Literal l = ResourceFactory.createTypedLiteral(dt);
+        Assert.assertEquals("2014-05-15T23:29:09Z", l.getLexicalForm());
+
+        // Repeated timestamps are served from the cache
+        Assert.assertSame(dt, parser.parse("16/May/2014:00:29:09 +0100"));
+
+        // Formatting renders the normalized timestamp in UTC and retains the instant
+        Assert.assertEquals("15/May/2014:23:29:09 +0000", parser.format(dt));
+        XSDDateTime roundtrip = parser.parse(parser.format(dt));
+        Assert.assertEquals(dt.asCalendar().getTimeInMillis(), roundtrip.asCalendar().getTimeInMillis());
+    }
+
+    /**
+     * The parsed offset determines the instant, not the default time zone of the host
+     */
+    @Test
+    public void testOffsetOtherThanDefaultZone() {
+        Instant instant = OffsetDateTime.of(2011, 4, 17, 6, 47, 47, 0, ZoneOffset.ofHours(2)).toInstant();
+        ZoneOffset offset = ZoneId.systemDefault().getRules().getOffset(instant).equals(ZoneOffset.ofHours(-7))
+                ? ZoneOffset.ofHours(5)
+                : ZoneOffset.ofHours(-7);
+        String str = WebLogParser.apacheDateFormat.format(instant.atOffset(offset));
+
+        TimestampParser parser = new TimestampParser(WebLogParser.apacheDateFormat);
+        Assert.assertEquals(instant.toEpochMilli(), parser.parse(str).asCalendar().getTimeInMillis());
+        Assert.assertEquals(instant.toEpochMilli(), new TimestampParser(WebLogParser.virtuosoDateFormat)
+                .parse(WebLogParser.virtuosoDateFormat.format(instant.atOffset(offset))).asCalendar().getTimeInMillis());
+    }
+
+    @Test
+    public void testTimestampWithoutOffset() {
+        TimestampParser parser = TimestampParser.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        long expected = LocalDateTime.of(2019, 1, 2, 3, 4, 5).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Assert.assertEquals(expected, parser.parse("2019-01-02 03:04:05").asCalendar().getTimeInMillis());
+        Assert.assertEquals("2019-01-02 03:04:05", parser.format(parser.parse("2019-01-02 03:04:05")));
+    }
+
+    /**
+     * A parser shared by several threads must yield the same results as sequential parsing, despite the cache's slots being overwritten
+     */
+    @Test
+    public void testConcurrentParsing() {
+        TimestampParser parser = new TimestampParser(WebLogParser.apacheDateFormat, 4);
+        List<String> strs = IntStream.range(0, 10000)
+                .mapToObj(i -> String.format("%02d/Apr/2011:06:%02d:%02d +0200", 1 + i % 28, (i / 60) % 60, i % 60))
+                .collect(Collectors.toList());
+
+        List<Long> expected = strs.stream()
+                .map(s -> new TimestampParser(WebLogParser.apacheDateFormat).parse(s).asCalendar().getTimeInMillis())
+                .collect(Collectors.toList());
+
+        List<Long> actual = strs.parallelStream()
+                .map(s -> parser.parse(s).asCalendar().getTimeInMillis())
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(expected, actual);
+    }
+}
@@ -37,4 +37,49 @@ public class TestWebLogParser {
 
         Assert.assertEquals(expected, actual);
     }
+
+    /**
+     * Lines that do not conform to the format yield 0 and are counted at the field where parsing failed
+     */
+    @Test
+    public void testParseFailuresAreCounted() {
+        StringMapper mapper = StringMapper.create("%h %l %u %t \"%r\" %>s %b", WebLogParser.createWebServerLogStringMapperConfig()::get);
+        ParseFailureStats stats = mapper.getFailureStats();
+
+        Resource x = ModelFactory.createDefaultModel().createResource();
+        Assert.assertEquals(1, mapper.parse(x, "127.0.0.1 - - [06/Nov/2016:05:12:49 +0100] \"GET /sparql?query=ASK{} HTTP/1.1\" 200 3623"));
+        Assert.assertEquals(0, stats.getNumFailures());
+
+        // A status code with letters and a timestamp which matches the pattern but is not a date
+        Assert.assertEquals(0, mapper.parse(ModelFactory.createDefaultModel().createResource(), "127.0.0.1 - - [06/Nov/2016:05:12:49 +0100] \"GET / HTTP/1.1\" 2x0 3623"));
+        Assert.assertEquals(0, mapper.parse(ModelFactory.createDefaultModel().createResource(), "127.0.0.1 - - [yesterday] \"GET / HTTP/1.1\" 200 3623"));
+
+        Map<String, Long> counts = stats.getFailureCounts();
+        Assert.assertEquals(2, stats.getNumFailures());
+        Assert.assertEquals(Long.valueOf(1), counts.get("atTime[0]"));
+        Assert.assertEquals(counts.toString(), 2, counts.size());
+
+        Map<String, Long> snapshot = stats.getFailureCounts();
+        mapper.parse(ModelFactory.createDefaultModel().createResource(), "garbage");
+        Assert.assertEquals(1, stats.getFailureCountsSince(snapshot).size());
+    }
+
+    /**
+     * Views of a shared mapper count the failures of their input separately
+     */
+    @Test
+    public void testFailureStatsPerInput() {
+        StringMapper mapper = StringMapper.create("%h %l %u %t \"%r\" %>s %b", WebLogParser.createWebServerLogStringMapperConfig()::get);
+        StringMapper a = mapper.withFailureStats(new ParseFailureStats());
+        StringMapper b = mapper.withFailureStats(new ParseFailureStats());
+
+        Assert.assertEquals(1, a.parse(ModelFactory.createDefaultModel().createResource(), "127.0.0.1 - - [06/Nov/2016:05:12:49 +0100] \"GET /sparql?query=ASK{} HTTP/1.1\" 200 3623"));
+        Assert.assertEquals(0, a.parse(ModelFactory.createDefaultModel().createResource(), "garbage"));
+        Assert.assertEquals(0, b.parse(ModelFactory.createDefaultModel().createResource(), "garbage"));
+        Assert.assertEquals(0, b.parse(ModelFactory.createDefaultModel().createResource(), "more garbage"));
+
+        Assert.assertEquals(1, a.getFailureStats().getNumFailures());
+        Assert.assertEquals(2, b.getFailureStats().getNumFailures());
+        Assert.assertEquals(0, mapper.getFailureStats().getNumFailures());
+    }
 }
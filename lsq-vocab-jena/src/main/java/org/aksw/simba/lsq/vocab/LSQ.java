@@ -297,6 +297,10 @@ public class LSQ {
     public static final Property tpId = property("tpId");
     public static final Property tpVarId = property("tpVarId");
 
+    // Hash of the canonical form of a query; queries that only differ in variable names, prefixes or
+    // the order of their triple patterns and filters share it
+    public static final Property canonicalHash = property("canonicalHash");
+
     //public static final Property
 
     //lsqv:resultSize